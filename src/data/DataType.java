@@ -1,5 +1,7 @@
 package data;
 
+import java.util.Random;
+
 /**
  * @author Luca Mattei, Valerio Mezzoprete
  */
@@ -33,7 +35,28 @@ public abstract class DataType
      * metodo che crea un'istanza random del randomize
      * @return una stringa randomizzata deldata type
      */
-    public abstract String randomize();
+    public String randomize() { return randomize(new Random()); }
+
+    /**
+     * metodo che crea un valore random del data type usando il generatore in input,
+     * cosi con lo stesso seme vengono generati gli stessi valori
+     * @param r generatore di numeri casuali da utilizzare
+     * @return una stringa randomizzata del data type
+     */
+    public abstract String randomize(Random r);
+
+    /**
+     * metodo che ritorna la lunghezza massima in caratteri di un valore del data type
+     * @return numero massimo di caratteri di un valore
+     */
+    public abstract int getMaxLength();
+
+    /**
+     * metodo che ritorna la lunghezza massima in byte di un valore del data type codificato in UTF-8,
+     * uguale a quella in caratteri per i tipi che contengono solo caratteri ASCII
+     * @return numero massimo di byte di un valore
+     */
+    public int getMaxBytes() { return getMaxLength(); }
 
     @Override
     public boolean equals(Object o)
@@ -12,10 +12,12 @@ public final class Date extends DataType
     public Date() { super("date", false); }
 
     @Override
-    public String randomize() {
-        Random r = new Random();
-        Month mese = Month.randomMonth();
+    public String randomize(Random r) {
+        Month mese = Month.randomMonth(r);
         return (r.nextInt(9) + 1) + (r.nextInt(9) + 1) + (r.nextInt(9) + 1) + (r.nextInt(9) + 1) + "-" +
                 mese.getMonth() + "-" + (r.nextInt(mese.getMaxDay()) + 1);
     }
+
+    @Override
+    public int getMaxLength() { return 10; }
 }
\ No newline at end of file
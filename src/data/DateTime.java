@@ -12,11 +12,13 @@ public final class DateTime extends DataType
     public DateTime() { super("datetime", false); }
 
     @Override
-    public String randomize() {
-        Random r = new Random();
-        Month mese = Month.randomMonth();
+    public String randomize(Random r) {
+        Month mese = Month.randomMonth(r);
         return (r.nextInt(9) + 1) + (r.nextInt(9) + 1) + (r.nextInt(9) + 1) + (r.nextInt(9) + 1) + "-" +
                 mese.getMonth() + "-" + (r.nextInt(mese.getMaxDay()) + 1) +
                 " " + r.nextInt(24) + ":" + r.nextInt(60) + ":" + r.nextInt(60);
     }
+
+    @Override
+    public int getMaxLength() { return 19; }
 }
\ No newline at end of file
@@ -26,9 +26,20 @@ public final class Decimal extends DataType
         this.precision = precision;
     }
 
+    /**
+     * metodo getter
+     * @return numero totale di cifre
+     */
+    public int getDigits() { return digits; }
+
+    /**
+     * metodo getter
+     * @return numero di cifre dopo la virgola
+     */
+    public int getPrecision() { return precision; }
+
     @Override
-    public String randomize() {
-        Random r = new Random();
+    public String randomize(Random r) {
         StringBuilder out = new StringBuilder();
         for (int i = 0; i < digits - precision; i++)
             out.append(r.nextInt(9) + 1);
@@ -38,6 +49,9 @@ public final class Decimal extends DataType
         return out.toString();
     }
 
+    @Override
+    public int getMaxLength() { return digits + 1; }
+
     @Override
     public String toString() { return super.toString() + "(" + digits + ", " + precision + ")"; }
 }
\ No newline at end of file
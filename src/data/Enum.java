@@ -1,7 +1,11 @@
 package data;
 
+import utility.AliasTable;
+
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
@@ -12,6 +16,11 @@ public final class Enum extends DataType
 {
     List<String> values;
 
+    /**
+     * tabella degli alias per l'estrazione pesata, null se l'estrazione è uniforme
+     */
+    private AliasTable weights;
+
     public Enum(List<String> values) {
         super("enum", false);
         this.values = new ArrayList<>(values);
@@ -19,8 +28,36 @@ public final class Enum extends DataType
 
     public Enum(String[] values) { this(Arrays.asList(values)); }
 
+    /**
+     * costruttore di un enum i cui valori vengono generati con probabilità proporzionale al loro peso
+     * @param values valori dell'enum
+     * @param weights peso di ogni valore
+     */
+    public Enum(List<String> values, double[] weights) {
+        this(values);
+        if (weights.length != values.size())
+            throw new IllegalArgumentException("il numero di pesi deve essere uguale al numero di valori dell'enum");
+        this.weights = new AliasTable(weights);
+    }
+
+    public Enum(String[] values, double[] weights) { this(Arrays.asList(values), weights); }
+
+    /**
+     * metodo getter
+     * @return la lista dei valori dell'enum
+     */
+    public List<String> getValues() { return Collections.unmodifiableList(values); }
+
+    @Override
+    public String randomize(Random r) {
+        return values.get(weights == null ? r.nextInt(values.size()) : weights.sample(r));
+    }
+
+    @Override
+    public int getMaxLength() { return values.stream().mapToInt(v -> v.codePointCount(0, v.length())).max().orElse(0); }
+
     @Override
-    public String randomize() { return values.get(new Random().nextInt(values.size())); }
+    public int getMaxBytes() { return values.stream().mapToInt(v -> v.getBytes(StandardCharsets.UTF_8).length).max().orElse(0); }
 
     @Override
     public String toString() {
@@ -16,12 +16,20 @@ public final class Int extends DataType
         this.decimals = decimals;
     }
 
+    /**
+     * metodo getter
+     * @return numero di cifre dei valori generati
+     */
+    public int getDecimals() { return decimals; }
+
     @Override
-    public String randomize() {
+    public String randomize(Random r) {
         StringBuilder out = new StringBuilder();
-        Random r = new Random();
         for (int i = 0; i < decimals; i++)
             out.append(r.nextInt(9) + 1);
         return out.toString();
     }
+
+    @Override
+    public int getMaxLength() { return decimals; }
 }
\ No newline at end of file
@@ -12,8 +12,10 @@ public class Time extends DataType
     public Time() { super("time", false); }
 
     @Override
-    public String randomize() {
-        Random r = new Random();
+    public String randomize(Random r) {
         return (r.nextInt(23) + 1) + ":" + (r.nextInt(59) + 1) + ":" + (r.nextInt(59) + 1) + "." + (r.nextInt(9999998) + 1);
     }
+
+    @Override
+    public int getMaxLength() { return 16; }
 }
\ No newline at end of file
@@ -16,15 +16,23 @@ public final class VarChar extends DataType
     }
 
     @Override
-    public String randomize(){
+    public String randomize(Random r) {
         String s = "abcdefghijklmnopqrstuvwxyz";
-        Random r = new Random();
         StringBuilder out = new StringBuilder();
         for (int i = 0; i < characters; i++)
             out.append(s.charAt(r.nextInt(s.length())));
         return out.toString();
     }
 
+    @Override
+    public int getMaxLength() { return characters; }
+
+    /**
+     * @return lunghezza massima in byte, un carattere utf8mb4 occupa fino a 4 byte
+     */
+    @Override
+    public int getMaxBytes() { return 4 * characters; }
+
     @Override
     public String toString() { return super.toString() + "(" + characters + ")"; }
 }
\ No newline at end of file
@@ -0,0 +1,314 @@
+package db;
+
+import data.DataType;
+import data.Decimal;
+import data.Int;
+import query.Select;
+import utility.Action;
+import utility.Granularity;
+import utility.Timing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Classe che descrive una tabella di aggregati mantenuta dai trigger: per ogni gruppo salva il numero di righe
+ * e alcune somme calcolate sul join tra una tabella di base e altre tabelle, come farebbe una select con group by.
+ * I trigger after insert, update e delete sulla tabella di base aggiornano solo il gruppo delle righe modificate,
+ * quindi leggere gli aggregati costa quanto il numero di gruppi e non quanto il numero di righe.
+ * Le tabelle in join sono considerate dimensioni che non cambiano: una modifica su di esse non aggiorna gli aggregati,
+ * per ricalcolarli si usa il backfill. I gruppi rimasti senza righe restano con count a 0 e vengono scartati da getSelect.
+ * Le colonne di raggruppamento formano la primary key della tabella, quindi non devono contenere null.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class AggregateTable {
+
+    /**
+     * Classe builder interna alla classe AggregateTable
+     */
+    public static class AggregateBuilder {
+        /**
+         * Campi della classe builder:
+         */
+        private String name;
+
+        private Table base;
+
+        private List<Table> joins = new ArrayList<>();
+        private List<String> conditions = new ArrayList<>();
+
+        /**
+         * colonne della tabella di aggregati, dal nome all'espressione calcolata sul join
+         */
+        private Map<String, String> groupBys = new LinkedHashMap<>();
+        private Map<String, String> sums = new LinkedHashMap<>();
+
+        private Map<String, DataType> types = new LinkedHashMap<>();
+
+        /**
+         * costruttore della classe builder
+         * @param name nome della tabella di aggregati
+         * @param base tabella le cui righe vengono contate, sulla quale vengono creati i trigger
+         */
+        public AggregateBuilder(String name, Table base) {
+            this.name = name.toLowerCase();
+            this.base = base;
+        }
+
+        /**
+         * metodo che aggiunge una tabella in join con quelle gia presenti
+         * @param table tabella da aggiungere
+         * @param condition condizione di join, con gli attributi nella forma tabella.attributo
+         * @return l'istanza del builder
+         * @throws IllegalArgumentException se la tabella è gia presente nel join
+         */
+        public AggregateBuilder addJoin(Table table, String condition) throws IllegalArgumentException {
+            if (table.getName().equals(base.getName()) || joins.stream().anyMatch(t -> t.getName().equals(table.getName())))
+                throw new IllegalArgumentException("la tabella " + table.getName() + " e' gia presente nel join");
+            joins.add(table);
+            conditions.add(condition);
+            return this;
+        }
+
+        /**
+         * metodo che aggiunge una colonna di raggruppamento con lo stesso nome dell'attributo
+         * @param attribute attributo nella forma tabella.attributo
+         * @return l'istanza del builder
+         * @throws IllegalArgumentException se l'attributo non è presente nelle tabelle del join
+         */
+        public AggregateBuilder addGroupBy(String attribute) throws IllegalArgumentException {
+            return addGroupBy(attribute, attribute.substring(attribute.indexOf('.') + 1));
+        }
+
+        /**
+         * metodo che aggiunge una colonna di raggruppamento
+         * @param attribute attributo nella forma tabella.attributo
+         * @param column nome della colonna nella tabella di aggregati
+         * @return l'istanza del builder
+         * @throws IllegalArgumentException se l'attributo non è presente nelle tabelle del join o la colonna esiste gia
+         */
+        public AggregateBuilder addGroupBy(String attribute, String column) throws IllegalArgumentException {
+            column = checkColumn(column);
+            types.put(column, resolve(attribute).getType());
+            groupBys.put(column, attribute.toLowerCase());
+            return this;
+        }
+
+        /**
+         * metodo che aggiunge una colonna con la somma di un attributo numerico
+         * @param attribute attributo nella forma tabella.attributo
+         * @param column nome della colonna nella tabella di aggregati
+         * @return l'istanza del builder
+         * @throws IllegalArgumentException se l'attributo non è presente nelle tabelle del join, non è numerico
+         * o la colonna esiste gia
+         */
+        public AggregateBuilder addSum(String attribute, String column) throws IllegalArgumentException {
+            column = checkColumn(column);
+            DataType type = resolve(attribute).getType();
+            if (type instanceof Decimal)
+                types.put(column, new Decimal(65, ((Decimal)type).getPrecision()));
+            else if (type instanceof Int)
+                types.put(column, new Decimal(65, 0));
+            else
+                throw new IllegalArgumentException("l'attributo " + attribute + " non e' numerico");
+            sums.put(column, attribute.toLowerCase());
+            return this;
+        }
+
+        /**
+         * metodo terminale build che crea la tabella di aggregati e i suoi trigger
+         * @return l'istanza della tabella di aggregati
+         * @throws IllegalArgumentException se non è stata inserita nessuna colonna di raggruppamento
+         */
+        public AggregateTable build() throws IllegalArgumentException {
+            if (groupBys.isEmpty())
+                throw new IllegalArgumentException("la tabella di aggregati " + name + " non ha colonne di raggruppamento");
+            return new AggregateTable(this);
+        }
+
+        /**
+         * metodo privato che cerca un attributo tabella.attributo tra le tabelle del join
+         */
+        private Attribute resolve(String attribute) throws IllegalArgumentException {
+            String[] parts = attribute.toLowerCase().split("\\.");
+            if (parts.length == 2) {
+                List<Table> all = new ArrayList<>(joins);
+                all.add(0, base);
+                for (Table t : all)
+                    if (t.getName().equals(parts[0]) && t.getAttribute(parts[1]) != null)
+                        return t.getAttribute(parts[1]);
+            }
+            throw new IllegalArgumentException("l'attributo " + attribute + " non e' presente nelle tabelle della tabella di aggregati " + name);
+        }
+
+        private String checkColumn(String column) throws IllegalArgumentException {
+            column = column.toLowerCase();
+            if (column.equals(COUNT) || types.containsKey(column))
+                throw new IllegalArgumentException("la colonna " + column + " e' gia presente nella tabella di aggregati " + name);
+            return column;
+        }
+    }
+
+    /**
+     * Campi della classe:
+     * nome della colonna con il numero di righe di ogni gruppo
+     */
+    public static final String COUNT = "count";
+
+    private Table table;
+
+    private Table base;
+
+    private List<Table> joins;
+    private List<String> conditions;
+
+    private Map<String, String> groupBys;
+    private Map<String, String> sums;
+
+    private List<Trigger> triggers;
+
+    /**
+     * Costruttore della classe che crea la tabella e i trigger a partire dal builder
+     * @param builder prende in input l'istanza del builder
+     */
+    private AggregateTable(AggregateBuilder builder) {
+        base = builder.base;
+        joins = List.copyOf(builder.joins);
+        conditions = List.copyOf(builder.conditions);
+        groupBys = Collections.unmodifiableMap(new LinkedHashMap<>(builder.groupBys));
+        sums = Collections.unmodifiableMap(new LinkedHashMap<>(builder.sums));
+
+        Table.TableBuilder t = new Table.TableBuilder(builder.name);
+        groupBys.keySet().forEach(c -> t.addAttribute(new Attribute.AttributeBuilder(c, builder.types.get(c)).addKey().build()));
+        t.addAttribute(new Attribute.AttributeBuilder(COUNT, new Int()).addNotNull().build());
+        sums.keySet().forEach(c -> t.addAttribute(new Attribute.AttributeBuilder(c, builder.types.get(c)).addNotNull().build()));
+        table = t.build();
+
+        String name = table.getName();
+        triggers = List.of(
+                new Trigger(base, name + "_after_insert", Timing.AFTER, Action.INSERT, Granularity.ROW, add("new")),
+                new Trigger(base, name + "_after_update", Timing.AFTER, Action.UPDATE, Granularity.ROW, remove("old") + " " + add("new")),
+                new Trigger(base, name + "_after_delete", Timing.AFTER, Action.DELETE, Granularity.ROW, remove("old")));
+    }
+
+    /**
+     * metodo getter
+     * @return la tabella in cui vengono salvati gli aggregati
+     */
+    public Table getTable() { return table; }
+
+    /**
+     * metodo getter
+     * @return il nome della tabella di aggregati
+     */
+    public String getName() { return table.getName(); }
+
+    /**
+     * metodo getter
+     * @return il nome della tabella di base, sulla quale sono creati i trigger
+     */
+    public String getBaseTableName() { return base.getName(); }
+
+    /**
+     * metodo getter
+     * @return i trigger after insert, update e delete che mantengono aggiornati gli aggregati
+     */
+    public List<Trigger> getTriggers() { return triggers; }
+
+    /**
+     * metodo che ritorna la select che legge gli aggregati, scartando i gruppi senza righe
+     * @return la select sulla tabella di aggregati
+     */
+    public Select getSelect() {
+        List<String> columns = new ArrayList<>(groupBys.keySet());
+        columns.add(COUNT);
+        columns.addAll(sums.keySet());
+        return new Select.QueryBuilder(columns)
+                .addTable(getName())
+                .addWhere(COUNT + " > 0")
+                .build();
+    }
+
+    /**
+     * metodo che ritorna le query che ricalcolano gli aggregati dalle righe presenti nel db:
+     * svuotano la tabella e la riempiono con una insert select con group by
+     * @return la delete e la insert del backfill, da eseguire nella stessa transazione
+     */
+    public List<String> getBackfillQueries() {
+        StringBuilder insert = new StringBuilder(insertInto());
+        insert.append("select ").append(String.join(", ", groupBys.values())).append(", count(*)");
+        sums.values().forEach(s -> insert.append(", coalesce(sum(").append(s).append("), 0)"));
+        insert.append(" from ").append(base.getName());
+        joins.forEach(j -> insert.append(", ").append(j.getName()));
+        insert.append(where()).append(" group by ").append(String.join(", ", groupBys.values()));
+        return List.of("delete from " + getName(), insert.toString());
+    }
+
+    @Override
+    public String toString() { return table.getQuery() + "\n" + triggers.stream().map(Trigger::toString).collect(Collectors.joining("\n")); }
+
+    //-----------------------------------------------METODI PRIVATI-------------------------------------------------//
+
+    /**
+     * metodo privato che ritorna l'istruzione che aggiunge al suo gruppo la riga new:
+     * una insert select che, se il gruppo esiste gia, somma il count e le somme della riga
+     */
+    private String add(String row) {
+        StringBuilder out = new StringBuilder(insertInto());
+        out.append("select ").append(String.join(", ", groupBys.values())).append(", 1");
+        sums.values().forEach(s -> out.append(", coalesce(").append(s).append(", 0)"));
+        out.append(from(row)).append(where());
+        out.append(" on duplicate key update ").append(getName()).append(".").append(COUNT).append(" = ")
+                .append(getName()).append(".").append(COUNT).append(" + values(").append(COUNT).append(")");
+        sums.keySet().forEach(c -> out.append(", ").append(getName()).append(".").append(c).append(" = ")
+                .append(getName()).append(".").append(c).append(" + values(").append(c).append(")"));
+        return out.append(";").toString();
+    }
+
+    /**
+     * metodo privato che ritorna l'istruzione che toglie dal suo gruppo la riga old: un update in join con
+     * i gruppi della riga gia raggruppati, perchè un join uno a molti puo portare piu righe nello stesso gruppo
+     */
+    private String remove(String row) {
+        StringBuilder out = new StringBuilder("update ").append(getName()).append(", (select ");
+        groupBys.forEach((c, g) -> out.append(g).append(" as ").append(c).append(", "));
+        out.append("count(*) as ").append(COUNT);
+        sums.forEach((c, s) -> out.append(", coalesce(sum(").append(s).append("), 0) as ").append(c));
+        out.append(from(row)).append(where()).append(" group by ").append(String.join(", ", groupBys.values()));
+        out.append(") as delta set ").append(getName()).append(".").append(COUNT).append(" = ")
+                .append(getName()).append(".").append(COUNT).append(" - delta.").append(COUNT);
+        sums.keySet().forEach(c -> out.append(", ").append(getName()).append(".").append(c).append(" = ")
+                .append(getName()).append(".").append(c).append(" - delta.").append(c));
+        out.append(" where ").append(groupBys.keySet().stream()
+                .map(c -> getName() + "." + c + " = delta." + c)
+                .collect(Collectors.joining(" and ")));
+        return out.append(";").toString();
+    }
+
+    private String insertInto() {
+        List<String> columns = new ArrayList<>(groupBys.keySet());
+        columns.add(COUNT);
+        columns.addAll(sums.keySet());
+        return "insert into " + getName() + " (" + String.join(", ", columns) + ") ";
+    }
+
+    /**
+     * metodo privato che ritorna la from del join in cui la tabella di base è sostituita dalla sola riga del trigger,
+     * con lo stesso nome: cosi le espressioni e le condizioni del join restano valide
+     */
+    private String from(String row) {
+        StringBuilder out = new StringBuilder(" from (select ");
+        out.append(base.getAttributes().stream()
+                .map(a -> row + "." + a.getName() + " as " + a.getName())
+                .collect(Collectors.joining(", ")));
+        out.append(") as ").append(base.getName());
+        joins.forEach(j -> out.append(", ").append(j.getName()));
+        return out.toString();
+    }
+
+    private String where() { return conditions.isEmpty() ? "" : " where " + String.join(" and ", conditions); }
+}
@@ -1,6 +1,11 @@
 package db;
 
 import data.DataType;
+import utility.Distribution;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * @author Luca Mattei, Valerio Mezzoprete
@@ -24,6 +29,8 @@ public class Attribute {
         private boolean unsigned;
         private boolean index;
 
+        private Distribution distribution;
+
         /**
          * Costruttore della classe builder che salva il nome dell'attributo costruito e il tipo di dato
          * @param name nome dell'attributo
@@ -92,6 +99,18 @@ public class Attribute {
             return this;
         }
 
+        /**
+         * metodo che aggiunge la distribuzione con cui vengono scelti i valori dell'attributo nel random populate.
+         * Se l'attributo è una foreign key la distribuzione sceglie tra i valori generati nella tabella referenziata
+         * (a meno che il vincolo non ne abbia una propria), se è un enum sceglie tra i valori dell'enum
+         * @param distribution distribuzione da utilizzare
+         * @return l'istanza dell'attribute builder
+         */
+        public AttributeBuilder addDistribution(Distribution distribution) {
+            this.distribution = distribution;
+            return this;
+        }
+
         /**
          * metodo terminale build che controlla se ad un tipo numerico e stata inserita l'opzione zero fill,
          * se sono stati inseriti auto incremental e generated contemporaneamente 
@@ -125,6 +144,8 @@ public class Attribute {
     private boolean unsigned;
     private boolean index;
 
+    private Distribution distribution;
+
     /**
      * Costruttore della classe attribute che salva tutte le opzioni inserite dal builder 
      * @param builder
@@ -140,6 +161,7 @@ public class Attribute {
         generated = builder.generated;
         unsigned = builder.unsigned;
         index = builder.index;
+        distribution = builder.distribution;
     }
 
     /**
@@ -186,6 +208,32 @@ public class Attribute {
 
     public void setIndex() { index = true; };
 
+    /**
+     * metodo getter
+     * @return la distribuzione con cui scegliere i valori dell'attributo, null se è uniforme
+     */
+    public Distribution getDistribution() { return distribution; }
+
+    /**
+     * metodo che genera un valore casuale per l'attributo, rispettando la sua distribuzione se è un enum
+     * @return il valore generato sottoforma di stringa
+     */
+    public String randomize() { return randomize(ThreadLocalRandom.current()); }
+
+    /**
+     * metodo che genera un valore casuale per l'attributo con il generatore in input, rispettando la sua
+     * distribuzione se è un enum: con lo stesso seme vengono generati gli stessi valori
+     * @param r generatore di numeri casuali da utilizzare
+     * @return il valore generato sottoforma di stringa
+     */
+    public String randomize(Random r) {
+        if (distribution != null && type instanceof data.Enum) {
+            List<String> values = ((data.Enum)type).getValues();
+            return values.get(distribution.sample(r, values.size()));
+        }
+        return type.randomize(r);
+    }
+
     /**
      * metodo che ritorna la query dell'attributo sottoforma di stringa
      * @return la query sottoforma di stringa dell'attributo creato.
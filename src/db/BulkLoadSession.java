@@ -0,0 +1,213 @@
+package db;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+
+/**
+ * Classe che rappresenta una sessione di caricamento in cui il db si fida dei dati inseriti.
+ * Finchè la sessione è aperta tutte le connessioni del database, compresa quella principale e quelle dei writer
+ * del random populate, hanno foreign_key_checks e unique_checks disattivati: i valori delle foreign key generati
+ * vengono sempre presi tra quelli gia inseriti, quindi i controlli del server sono lavoro sprecato.
+ * Alla chiusura i controlli vengono riattivati e i dati caricati vengono verificati dal client con delle anti join,
+ * una per ogni vincolo, eseguite in parallelo; allo stesso modo vengono cercati i valori ripetuti degli attributi unique,
+ * perchè con unique_checks disattivato mySQL puo non accorgersene; gli indici unique con un prefisso non vengono verificati.
+ * Si usa con un try with resources:
+ * <pre>
+ * try (BulkLoadSession session = db.bulkLoad(4)) {
+ *     db.randomPopulateMHW(plan);
+ * }
+ * </pre>
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class BulkLoadSession implements AutoCloseable {
+    /**
+     * Campi della classe:
+     */
+    private static final int SAMPLES = 10;
+
+    static final String DISABLE_CHECKS = "set session foreign_key_checks = 0, unique_checks = 0";
+    static final String ENABLE_CHECKS = "set session foreign_key_checks = 1, unique_checks = 1";
+
+    private Database db;
+
+    private List<Table> tables;
+
+    private int parallelism;
+
+    private List<IntegrityViolation> violations;
+
+    private boolean closed;
+
+    /**
+     * costruttore della classe, utilizzato dal metodo bulkLoad del database
+     * @param db database su cui caricare i dati
+     * @param tables tabelle da verificare alla chiusura
+     * @param parallelism numero di connessioni con cui eseguire la verifica
+     */
+    BulkLoadSession(Database db, List<Table> tables, int parallelism) {
+        if (parallelism <= 0)
+            throw new IllegalArgumentException("il parallelismo deve essere positivo");
+        this.db = db;
+        this.tables = new ArrayList<>(tables);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * chiude la sessione riattivando i controlli e verifica i dati caricati,
+     * stampando i vincoli non rispettati
+     * @throws IllegalStateException se alcuni controlli non sono stati eseguiti
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        db.endBulkLoad();
+        violations = verify();
+        if (violations.isEmpty())
+            System.out.println("verifica del bulk load completata: nessun vincolo violato");
+        else
+            violations.forEach(v -> System.out.println("ERRORE NEL BULK LOAD: " + v));
+    }
+
+    /**
+     * metodo getter
+     * @return i vincoli non rispettati trovati alla chiusura della sessione, vuota se i dati sono corretti
+     * @throws IllegalStateException se la sessione non è ancora stata chiusa
+     */
+    public List<IntegrityViolation> getViolations() throws IllegalStateException {
+        if (violations == null)
+            throw new IllegalStateException("la sessione di bulk load non e' ancora stata chiusa");
+        return Collections.unmodifiableList(violations);
+    }
+
+    /**
+     * metodo che verifica i dati caricati: per ogni vincolo cerca con una anti join le righe che referenziano
+     * un valore assente nella tabella referenziata, e per ogni attributo unique i valori ripetuti.
+     * Le query sono divise tra piu connessioni che lavorano in parallelo; un controllo che fallisce non ferma gli altri,
+     * ma la verifica non è mai considerata superata se anche un solo controllo non è stato eseguito.
+     * @return i vincoli non rispettati, nell'ordine delle tabelle
+     * @throws IllegalStateException se alcuni controlli sono falliti o non sono stati eseguiti, elencati nel messaggio
+     */
+    public List<IntegrityViolation> verify() throws IllegalStateException {
+        Queue<Check> checks = new ConcurrentLinkedQueue<>();
+        for (Table t : tables) {
+            t.getVincoli().forEach(v -> checks.add(new Check(t, List.of(v.getVincolato()), v)));
+            t.getAttributes().stream()
+                    .filter(Attribute::isUnique)
+                    .forEach(a -> checks.add(new Check(t, List.of(a.getName()), null)));
+            //startsWith sulle proprie colonne è falso se l'indice ha dei prefissi, che il group by non puo verificare
+            t.getIndexes().stream()
+                    .filter(i -> i.isUnique() && i.startsWith(i.getColumns()))
+                    .forEach(i -> checks.add(new Check(t, i.getColumns(), null)));
+        }
+
+        List<IntegrityViolation> found = Collections.synchronizedList(new ArrayList<>());
+        List<Check> failed = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> workers = new ArrayList<>();
+        for (int i = Math.min(parallelism, checks.size()); i > 0; i--) {
+            Thread worker = new Thread(() -> {
+                try (Connection c = db.openConnection(); Statement stmt = c.createStatement()) {
+                    for (Check check = checks.poll(); check != null; check = checks.poll()) {
+                        try {
+                            IntegrityViolation v = check.run(stmt);
+                            if (v != null)
+                                found.add(v);
+                        }
+                        catch (SQLException e) {
+                            //il controllo preso dalla coda non è stato eseguito: non puo contare come superato
+                            System.out.println("ERRORE NEL CONTROLLO " + check + ": " + e.getMessage());
+                            failed.add(check);
+                        }
+                    }
+                }
+                catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }, "bulk-load-verifier-" + i);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread w : workers) {
+            try { w.join(); }
+            catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        }
+        //i controlli rimasti in coda non sono stati presi da nessun worker, ad esempio perchè le connessioni non si sono aperte
+        failed.addAll(checks);
+        if (!failed.isEmpty())
+            throw new IllegalStateException("impossibile completare la verifica del bulk load, " + failed.size()
+                    + " controlli non eseguiti: " + failed);
+
+        List<String> order = tables.stream().map(Table::getName).collect(Collectors.toList());
+        List<IntegrityViolation> out = new ArrayList<>(found);
+        out.sort(Comparator.comparingInt((IntegrityViolation v) -> order.indexOf(v.getTableName()))
+                .thenComparing(IntegrityViolation::getAttribute));
+        return out;
+    }
+
+    /**
+     * Controllo di un vincolo o di un attributo unique su una tabella
+     */
+    private static final class Check {
+        private final Table table;
+        private final List<String> columns;
+        private final Vincolo vincolo;
+
+        private Check(Table table, List<String> columns, Vincolo vincolo) {
+            this.table = table;
+            this.columns = columns;
+            this.vincolo = vincolo;
+        }
+
+        @Override
+        public String toString() {
+            return (vincolo != null ? "foreign key " : "unique ") + table.getName() + "(" + String.join(", ", columns) + ")"
+                    + (vincolo != null ? " -> " + vincolo.getReferencedTable() + "(" + vincolo.getForeignKey() + ")" : "");
+        }
+
+        /**
+         * la query ritorna ogni valore errato con il numero di righe in cui compare
+         */
+        private String getQuery() {
+            if (vincolo != null) {
+                String attribute = columns.get(0);
+                return "select c." + attribute + ", count(*) from " + table.getName() + " c left join "
+                        + vincolo.getReferencedTable() + " p on p." + vincolo.getForeignKey() + " = c." + attribute
+                        + " where c." + attribute + " is not null and p." + vincolo.getForeignKey() + " is null group by c." + attribute;
+            }
+            //le righe con un null non violano un unique, neanche se il null si ripete
+            String group = String.join(", ", columns);
+            return "select concat_ws(', ', " + group + "), count(*) from " + table.getName() + " where "
+                    + columns.stream().map(c -> c + " is not null").collect(Collectors.joining(" and "))
+                    + " group by " + group + " having count(*) > 1";
+        }
+
+        private IntegrityViolation run(Statement stmt) throws SQLException {
+            long rows = 0;
+            List<String> samples = new ArrayList<>();
+            try (ResultSet out = stmt.executeQuery(getQuery())) {
+                while (out.next()) {
+                    rows += out.getLong(2);
+                    if (samples.size() < SAMPLES)
+                        samples.add(out.getString(1));
+                }
+            }
+            if (rows == 0)
+                return null;
+            if (vincolo != null)
+                return new IntegrityViolation(IntegrityViolation.Type.FOREIGN_KEY, table.getName(), columns.get(0),
+                        vincolo.getReferencedTable(), vincolo.getForeignKey(), rows, samples);
+            return new IntegrityViolation(IntegrityViolation.Type.UNIQUE, table.getName(), String.join(", ", columns),
+                    null, null, rows, samples);
+        }
+    }
+}
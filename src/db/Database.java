@@ -3,13 +3,37 @@ package db;
 import data.Account;
 import exceptions.DriverNotFoundException;
 import exceptions.ForeignKeyException;
+import population.BatchWriter;
+import population.BridgeGenerator;
+import population.Checkpoint;
+import population.DistinctSampler;
+import population.KeyPool;
+import population.PopulationPlan;
+import population.TupleStore;
 import utility.Coppia;
+import utility.Distribution;
+import query.Explain;
 import query.Insert;
+import query.KeysetPagination;
+import query.Page;
+import query.Delete;
 import query.Query;
+import query.QueryPlan;
+import query.Select;
+import query.SlowQuery;
+import query.Update;
 import utility.MyConsumer;
+import utility.Order;
+import workload.WorkloadDriver;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.*;
+import java.time.Duration;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /** 
@@ -31,6 +55,17 @@ public class Database {
         private List<Table> tables = new ArrayList<>();
         private List<Trigger> triggers = new ArrayList<>();
 
+        private int deferredParallelism;
+
+        private int ddlParallelism = 4;
+
+        /**
+         * tabelle che arrivano da uno Schema gia validato, i cui vincoli non vanno ricontrollati
+         */
+        private Set<Table> trusted = new HashSet<>();
+
+        private Map<String, AggregateTable> aggregates = new LinkedHashMap<>();
+
         /**
          * Costruttore della classe builder che salva:
          * @param name il nome del database
@@ -66,24 +101,100 @@ public class Database {
             return this;
         }
 
+        /**
+         * metodo che aggiunge le tabelle e i trigger di uno schema caricato da file; lo schema è gia stato validato
+         * dallo SchemaLoader, quindi i vincoli delle sue tabelle non vengono ricontrollati dal build
+         * @param schema schema da aggiungere
+         * @return l'istanza del builder
+         */
+        public DatabaseBuilder addSchema(Schema schema) {
+            schema.getTables().forEach(this::addTable);
+            trusted.addAll(schema.getTables());
+            schema.getTriggers().forEach(this::addTrigger);
+            return this;
+        }
+
+        /**
+         * metodo che aggiunge una tabella di aggregati insieme ai trigger che la mantengono aggiornata;
+         * la tabella di base e quelle in join devono essere aggiunte al db. La tabella di aggregati non viene popolata
+         * dal random populate, perchè si riempie con i trigger mentre vengono inserite le righe della tabella di base.
+         * Se la tabella di base esiste gia nel db e quella di aggregati no, nel build viene riempita con backfill
+         * e il build fallisce con una IllegalStateException se il backfill non riesce
+         * @param aggregate tabella di aggregati da aggiungere
+         * @return l'istanza del builder
+         * @throws IllegalArgumentException se il nome di uno dei trigger è gia usato
+         */
+        public DatabaseBuilder addAggregate(AggregateTable aggregate) throws IllegalArgumentException {
+            addTable(aggregate.getTable());
+            aggregate.getTriggers().forEach(this::addTrigger);
+            aggregates.put(aggregate.getName(), aggregate);
+            return this;
+        }
+
+        /**
+         * metodo che imposta quante connessioni creano in parallelo le tabelle dello stesso livello del DdlPlan
+         * @param parallelism numero di connessioni, 1 per creare le tabelle una alla volta
+         * @return l'istanza del builder
+         */
+        public DatabaseBuilder setDdlParallelism(int parallelism) {
+            if (parallelism <= 0)
+                throw new IllegalArgumentException("il parallelismo deve essere positivo");
+            ddlParallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * metodo che crea le tabelle con le sole primary key e i soli indici unique, per caricare i dati piu velocemente:
+         * gli altri indici e le foreign key vengono aggiunti alla fine del random populate, o chiamando createDeferredIndexes,
+         * perchè costruire un indice sulle righe gia presenti costa molto meno che aggiornarlo ad ogni insert
+         * @param parallelism numero di connessioni che creano gli indici in parallelo
+         * @return l'istanza del builder
+         */
+        public DatabaseBuilder deferIndexes(int parallelism) {
+            if (parallelism <= 0)
+                throw new IllegalArgumentException("il parallelismo deve essere positivo");
+            deferredParallelism = parallelism;
+            return this;
+        }
+
         /**
          * metodo terminale che chiude la creazione del database
          * @return ritorna l'istanza del database buildato
          * @throws ForeignKeyException se tutti gli attributi vincolati sono compatibili
          */
         public Database build() throws ForeignKeyException, SQLException, DriverNotFoundException {
-            Database db = new Database(this);              
-             //Stream che controlla se ogni vincolo di ogni tabella ha l'attributo vincolato 
-             //uguale alla foreign key della tabella referenziata            
-            if (!db.tables.stream()
-                    .allMatch(t -> t.getVincoli()
-                            .stream()
-                            .allMatch(v -> t.getAttribute(v.getVincolato())
-                            		.compatibleTo(db.getTable(v.getReferencedTable())
-                            				.getAttribute(v.getForeignKey())))))
-                throw new ForeignKeyException("I Vincoli sugli attributi inseriti possiedono opzioni differenti tra di loro. "
-            			+ "I due attributi vincolati devono avere le stesse opzioni");
-            return db;
+            //controlliamo i vincoli prima di creare il database
+            checkVincoli(tables, t -> !trusted.contains(t));
+            return new Database(this);
+        }
+    }
+
+    /**
+     * metodo che controlla i vincoli di alcune tabelle di uno schema: ogni attributo vincolato deve essere compatibile
+     * con la foreign key della tabella referenziata, e mySQL non permette foreign key che referenziano una tabella partizionata
+     * @param tables tutte le tabelle dello schema
+     * @param toCheck tabelle di cui controllare i vincoli
+     * @throws ForeignKeyException se un vincolo non è valido
+     */
+    static void checkVincoli(List<Table> tables, Predicate<Table> toCheck) throws ForeignKeyException
+    {
+        for (Table t : tables)
+        {
+            if (!toCheck.test(t))
+                continue;
+            for (Vincolo v : t.getVincoli())
+            {
+                Table referenced = tables.stream().filter(x -> x.getName().equals(v.getReferencedTable())).findFirst().orElse(null);
+                if (referenced == null)
+                    continue;
+                if (referenced.getPartition() != null)
+                    throw new ForeignKeyException("la tabella " + v.getReferencedTable() + " e' partizionata e non puo "
+                            + "essere referenziata dal vincolo su " + t.getName() + "." + v.getVincolato());
+                //l'attributo vincolato deve essere uguale alla foreign key della tabella referenziata
+                if (!t.getAttribute(v.getVincolato()).compatibleTo(referenced.getAttribute(v.getForeignKey())))
+                    throw new ForeignKeyException("I Vincoli sugli attributi inseriti possiedono opzioni differenti tra di loro. "
+                            + "I due attributi vincolati devono avere le stesse opzioni");
+            }
         }
     }
 
@@ -93,10 +204,146 @@ public class Database {
     private static final String DRIVERS = "com.mysql.cj.jdbc.Driver";
     private static final String CREATE = "create database if not exists ";
     private static final String USE = "use ";
+    private static final Distribution UNIFORM = Distribution.uniform();
+
+    /**
+     * righe lette per volta quando il driver usa i cursori lato server per leggere le tabelle esistenti
+     */
+    private static final int FETCH_SIZE = 1000;
+
+    /**
+     * table del db mhw ordinati tramite sort topologico
+     */
+    private static final String[] MHW_TABLES = new String[] {
+            "fauna_endemica",
+            "clima",
+            "npc",
+            "abilita",
+            "mostro",
+            "status",
+            "status_clima",
+            "status_mostro",
+            "elemento",
+            "elemento_mostro",
+            "resistenza",
+            "regione",
+            "locazione",
+            "clima_regione",
+            "missione",
+            "incontro",
+            "gioiello",
+            "ottenimento",
+            "crafting",
+            "ricetta",
+            "richiesta",
+            "ricavo",
+            "proiettile",
+            "rivestimento",
+            "equipaggiamento",
+            "creazione",
+            "abilita_equipaggiamento",
+            "armatura",
+            "arma",
+            "utilizzo_rivestimento",
+            "utilizzo_proiettile",
+            "set_equipaggiamento",
+            "gioiello_equipaggiato",
+            "armatura_equipaggiata",
+            "account",
+            "cacciatore",
+            "set_posseduto",
+            "missione_completata",
+            "possedimento_gioiello",
+            "possedimento_oggetto",
+            "possedimento_equipaggiamento"
+    };
 
     private int autoIncremental = 1;
     private int queryCounter = 0;
     private int duplicateEntryCounter = 0;
+    private int spillThreshold = 0;
+
+    private Path spillDirectory;
+
+    /**
+     * durata in millisecondi oltre la quale una query viene salvata nel log delle query lente, -1 se il log è disabilitato
+     */
+    private long slowQueryThreshold = -1;
+
+    /**
+     * numero massimo di query lente salvate nel log: oltre questo numero viene scartata la piu vecchia
+     */
+    private static final int SLOW_QUERY_LOG_SIZE = 1000;
+
+    private Deque<SlowQuery> slowQueries = new ArrayDeque<>();
+
+    /**
+     * numero massimo di prepared statement tenuti aperti sulla connessione del database
+     */
+    private static final int STATEMENT_CACHE_SIZE = 64;
+
+    /**
+     * prepared statement delle query con i segnaposto, dal meno usato di recente; il piu vecchio viene chiuso quando la cache è piena
+     */
+    private Map<String, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest)
+        {
+            if (size() <= STATEMENT_CACHE_SIZE)
+                return false;
+            try { eldest.getValue().close(); }
+            catch (SQLException e) {}
+            return true;
+        }
+    };
+
+    /**
+     * cache dei risultati delle select, null se disabilitata
+     */
+    private ResultCache resultCache;
+
+    /**
+     * per ogni tabella, le tabelle modificate da una scrittura su di essa compresi i trigger che scatena
+     * e le tabelle che la referenziano con una foreign key
+     */
+    private Map<String, Set<String>> writeClosures = new HashMap<>();
+
+    /**
+     * checkpoint su cui salvare lo stato del random populate prima di ogni tabella, null se disabilitato
+     */
+    private Checkpoint checkpoint;
+
+    /**
+     * connessioni con cui creare gli indici e le foreign key rimandati, 0 se le tabelle sono state create complete
+     */
+    private int deferredParallelism;
+
+    private int ddlParallelism;
+
+    /**
+     * query che aggiungono gli indici non unique e le foreign key alle tabelle create senza,
+     * eseguite da createDeferredIndexes; quelle fallite restano in attesa
+     */
+    private List<String> deferredIndexes = new ArrayList<>();
+    private List<String> deferredForeignKeys = new ArrayList<>();
+
+    /**
+     * piano con cui è stato creato lo schema, null se il database è stato solo connesso
+     */
+    private DdlPlan ddlPlan;
+
+    /**
+     * sessione di bulk load aperta, null se i controlli del server sono attivi
+     */
+    private BulkLoadSession bulkLoad;
+
+    /**
+     * generatore di numeri casuali condiviso da tutti i metodi di population
+     */
+    private Random random = new Random();
 
     private String name;
     private String url;
@@ -104,8 +351,25 @@ public class Database {
 
     Connection conn = null;
 
+    private Account account;
+
+    /**
+     * writer su cui i consumer scrivono le righe della tabella che si sta popolando
+     */
+    private BatchWriter writer;
+
+    /**
+     * righe generate salvate in memoria per le tabelle da cui dipendono altri consumer
+     */
+    private Map<String, TupleStore> tupleStores = new HashMap<>();
+
     private List<Table> tables = new ArrayList<>();
     private List<Trigger> triggers = new ArrayList<>();
+
+    /**
+     * tabelle di aggregati per nome, riempite dai trigger e non dal random populate
+     */
+    private Map<String, AggregateTable> aggregates = new LinkedHashMap<>();
     
     //----------------------------------------------------------CAMPI CONSUMER-----------------------------------------------------//
 
@@ -116,7 +380,7 @@ public class Database {
     /**
      * Consumer generico per insert senza problemi di trigger
      */
-    private final MyConsumer<Map<String, List<String>>, Set<String>, Table, Integer> GENERIC_CONSUMER = (valoriGenerati, attributiDaSalvare, t, n) ->
+    private final MyConsumer<Map<String, KeyPool>, Set<String>, Table, Integer> GENERIC_CONSUMER = (valoriGenerati, attributiDaSalvare, t, n) ->
     {
         List<Attribute> attributes = t.getAttributes();
 
@@ -132,16 +396,16 @@ public class Database {
                 if (!a.getAutoIncremental()) //se l'attributo non è autoincremental
                     notAutoIncrementalCase(t, attributiDaSalvare, valoriGenerati, q, a);
                 else //l'attributo è autoincremental
-                    autoIncrementalCase(t, attributiDaSalvare, valoriGenerati, a);
+                    autoIncrementalCase(t, attributiDaSalvare, valoriGenerati, q, a);
             } //chiusura del for sugli attributi
-            executeQuery(q.build());
+            write(q.build());
         }//chiusura del for sugli inserimenti
     };
 
     /**
      * Consumer sulla tabella missione
      */
-    private final MyConsumer<Map<String, List<String>>, Set<String>, Table, Integer> MISSION_CONSUMER = (valoriGenerati, attributiDaSalvare, t, n) ->
+    private final MyConsumer<Map<String, KeyPool>, Set<String>, Table, Integer> MISSION_CONSUMER = (valoriGenerati, attributiDaSalvare, t, n) ->
     {
         //per ogni inserimento da fare
         for (int j = 0; j < n; j++)
@@ -149,70 +413,57 @@ public class Database {
             //costruiamo la query di inserimento
             Insert.QueryBuilder q = new Insert.QueryBuilder(t.getName());
 
-            Random r = new Random();
-
-            //inseriamo l'id missione
-            String key = t.getName() + ".id";
-            //se la chiave è presente nella mappa allora aggiungo il valore all'insieme
-            valoriGenerati.computeIfPresent(key, (k, v) -> {
-                v.add(autoIncremental + "");
-                return v;
-            });
-            //se la chiave non è presente nella mappa allora creo un insieme e ci aggiungo il valore
-            valoriGenerati.computeIfAbsent(key, k ->
-            {
-                List<String> l = new LinkedList<>();
-                l.add(autoIncremental + "");
-                return l;
-            });
+            //inseriamo l'id missione, scritto esplicitamente come negli altri attributi autoincrementali
+            q.addValue("id", autoIncremental + "");
+            computeMap(valoriGenerati, t.getName() + ".id", autoIncremental + "");
             autoIncremental++;
 
             //inseriamo la regione
             List<String> regioniGenerate = valoriGenerati.get("regione.nome");
-            q.addValue("regione", regioniGenerate.get(r.nextInt(regioniGenerate.size())));
+            q.addValue("regione", pick(t, "regione", regioniGenerate));
             
             //inseriamo il tipo di missione
-            String tipoMissione = t.getAttribute("tipo_missione").getType().randomize();
+            String tipoMissione = t.getAttribute("tipo_missione").randomize(random);
             q.addValue("tipo_missione", tipoMissione);
 
             if (tipoMissione.equals("assegnazione") || tipoMissione.equals("taglia")) //tipo assegnazione o taglia
             {
                 //inseriamo tutti gli attributi
-                q.addValue("grado_richiesto", t.getAttribute("grado_richiesto").getType().randomize());
+                q.addValue("grado_richiesto", t.getAttribute("grado_richiesto").randomize(random));
 
-                q.addValue("ricompensa", t.getAttribute("ricompensa").getType().randomize());
+                q.addValue("ricompensa", t.getAttribute("ricompensa").randomize(random));
 
-                q.addValue("obiettivo", t.getAttribute("obiettivo").getType().randomize());
+                q.addValue("obiettivo", t.getAttribute("obiettivo").randomize(random));
 
-                q.addValue("lv_difficolta", t.getAttribute("lv_difficolta").getType().randomize());
+                q.addValue("lv_difficolta", t.getAttribute("lv_difficolta").randomize(random));
 
-                q.addValue("nome", t.getAttribute("nome").getType().randomize());
+                q.addValue("nome", t.getAttribute("nome").randomize(random));
 
-                q.addValue("descrizione", t.getAttribute("descrizione").getType().randomize());
+                q.addValue("descrizione", t.getAttribute("descrizione").randomize(random));
 
-                q.addValue("tempo_limite", t.getAttribute("tempo_limite").getType().randomize());
+                q.addValue("tempo_limite", t.getAttribute("tempo_limite").randomize(random));
 
-                q.addValue("numero_vite", t.getAttribute("numero_vite").getType().randomize());
+                q.addValue("numero_vite", t.getAttribute("numero_vite").randomize(random));
 
                 //aggiungo npc
                 List<String> npcGenerati = valoriGenerati.get("npc.nome");
-                q.addValue("npc", npcGenerati.get(r.nextInt(npcGenerati.size())));                
+                q.addValue("npc", pick(t, "npc", npcGenerati));                
 
                 if (tipoMissione.equals("assegnazione")) //se è solo di tipo assegnazione
-                    q.addValue("tipo_assegnazione", t.getAttribute("tipo_assegnazione").getType().randomize());
+                    q.addValue("tipo_assegnazione", t.getAttribute("tipo_assegnazione").randomize(random));
             }
-            executeQuery(q.build());
+            write(q.build());
         }//fine del for su gli inserimenti
     };
 
     /**
      * Consumer sulla tabella arma
      */
-    private final MyConsumer<Map<String, List<String>>, Set<String>, Table, Integer> WEAPON_CONSUMER = (valoriGenerati, attributiDaSalvare, t, n) ->
+    private final MyConsumer<Map<String, KeyPool>, Set<String>, Table, Integer> WEAPON_CONSUMER = (valoriGenerati, attributiDaSalvare, t, n) ->
     {
         //prendiamo il nome da equipaggiamento e lo salviamo tra i valori salvati
         Set<String> equipaggiamentiGeneratiSet = new HashSet<>(valoriGenerati.get("equipaggiamento.nome"));
-        equipaggiamentiGeneratiSet.removeAll(valoriGenerati.get("armatura.nome"));  
+        equipaggiamentiGeneratiSet.removeAll(new HashSet<>(valoriGenerati.get("armatura.nome")));  
         //creo la lista degli equipaggiamenti gia esistenti nel database diversi da armature gia create
         List<String> equipaggiamentiGenerati = new ArrayList<>(equipaggiamentiGeneratiSet);
         
@@ -222,45 +473,45 @@ public class Database {
             //costruiamo la query di inserimento
             Insert.QueryBuilder q = new Insert.QueryBuilder(t.getName());
 
-            Random r = new Random();
+            Random r = random;
             
             String key = t.getName() + ".nome";
             
             //prendo un equipaggiamento random dalla lista degli equipaggiamenti gia esistenti
-            String equipaggiamento = equipaggiamentiGenerati.get(r.nextInt(equipaggiamentiGenerati.size()));
+            String equipaggiamento = pick(t, "nome", equipaggiamentiGenerati);
             
             computeMap(valoriGenerati, key, equipaggiamento);
 
             //randomizzo e inserisco nel db i valori obbligatori
             q.addValue("nome", equipaggiamento);
-            q.addValue("attacco", t.getAttribute("attacco").getType().randomize());
-            q.addValue("affinita", t.getAttribute("affinita").getType().randomize());
+            q.addValue("attacco", t.getAttribute("attacco").randomize(random));
+            q.addValue("affinita", t.getAttribute("affinita").randomize(random));
 
             //randomizzo se l'arma ha o meno una difesa
             int randomInt = r.nextInt(100);
             if (randomInt < 50) //ha una difesa
-                q.addValue("difesa", t.getAttribute("difesa").getType().randomize());
+                q.addValue("difesa", t.getAttribute("difesa").randomize(random));
 
             //randomizzo l'arma e in base al tipo aggiungi i valori opzionali necessari
-            String weaponType = t.getAttribute("tipo").getType().randomize();
+            String weaponType = t.getAttribute("tipo").randomize(random);
 
             if (!weaponType.equals("arco") && !weaponType.substring(0,4).equals("bale")) //se è un'arma da taglio avrà un'acutezza
             {
-                q.addValue("acutezza",  t.getAttribute("acutezza").getType().randomize());
+                q.addValue("acutezza",  t.getAttribute("acutezza").randomize(random));
 
                 if (weaponType.equals("lancia fucile")) // è una lancia fucile
                 {
-                    q.addValue("tipo_proiettile", t.getAttribute("tipo_proiettile").getType().randomize());
-                    q.addValue("lv_proiettile", t.getAttribute("lv_proiettile").getType().randomize());
+                    q.addValue("tipo_proiettile", t.getAttribute("tipo_proiettile").randomize(random));
+                    q.addValue("lv_proiettile", t.getAttribute("lv_proiettile").randomize(random));
                 }
                 else if (weaponType.equals("spadascia") || weaponType.equals("lama caricata"))
-                    q.addValue("tipo_fiala", t.getAttribute("tipo_fiala").getType().randomize());
+                    q.addValue("tipo_fiala", t.getAttribute("tipo_fiala").randomize(random));
             }
             else if (!weaponType.equals("arco"))//è una balestra
             {
-                q.addValue("rinculo", t.getAttribute("rinculo").getType().randomize());
+                q.addValue("rinculo", t.getAttribute("rinculo").randomize(random));
                 if (weaponType.equals("balestra pesante")) //è una balestra pesante
-                    q.addValue("proiettile_speciale", t.getAttribute("proiettile_speciale").getType().randomize());
+                    q.addValue("proiettile_speciale", t.getAttribute("proiettile_speciale").randomize(random));
             }
 
             if (!weaponType.substring(0,4).equals("bale"))
@@ -271,95 +522,69 @@ public class Database {
                 {
                     //prendo un elemento casuale tra quelli gia inseriti
                     List<String> elementiGenerati = valoriGenerati.get("elemento.nome");
-                    String elemento = elementiGenerati.get(r.nextInt(elementiGenerati.size()));
+                    String elemento = pick(t, "elemento", elementiGenerati);
 
                     q.addValue("elemento", elemento);
-                    q.addValue("attacco_elementale", t.getAttribute("attacco_elementale").getType().randomize());
+                    q.addValue("attacco_elementale", t.getAttribute("attacco_elementale").randomize(random));
                 }
                 else if (randomInt < 66) //ha status
                 {
                     //prendo uno status casuale tra quelli gia inseriti
                     List<String> statusGenerati = valoriGenerati.get("status.nome");
-                    String status = statusGenerati.get(r.nextInt(statusGenerati.size()));
+                    String status = pick(t, "status", statusGenerati);
 
                     q.addValue("status", status);
-                    q.addValue("attacco_status", t.getAttribute("attacco_status").getType().randomize());
+                    q.addValue("attacco_status", t.getAttribute("attacco_status").randomize(random));
                 }
             }
 
             q.addValue("tipo", weaponType);
-            executeQuery(q.build());
+            write(q.build());
         }//fine del for sugli inserimenti
     };
     
     /**
      * Consumer sulla tabella richiesta
      */
-    private final MyConsumer<Map<String, List<String>>, Set<String>, Table, Integer> RICHIESTA_CONSUMER = (valoriGenerati, attributiDaSalvare, t, n) ->
+    private final MyConsumer<Map<String, KeyPool>, Set<String>, Table, Integer> RICHIESTA_CONSUMER = (valoriGenerati, attributiDaSalvare, t, n) ->
     {
     	//creo la lista delle ricette gia esistenti nel database
         List<String> ricetteGenerate = valoriGenerati.get("ricetta.id");
         //creo la lista degli oggetti gia esistenti
         List<String> oggettiGenerati = valoriGenerati.get("crafting.nome");
-        //creo una mappa occorrenze
-        Map<String, List<String>> occorrenze = new HashMap<>();
+        //ogni ricetta richiede al massimo 2 oggetti distinti
+        BridgeGenerator richieste = new BridgeGenerator(ricetteGenerate, oggettiGenerati, 2,
+                getDistribution(t, "ricetta"), getDistribution(t, "oggetto_richiesto")).withExistingChildren(childrenPerParent(t, "ricetta", "oggetto_richiesto"));
         
         //per ogni inserimento da fare
         for (int j = 0; j < n; j++)
         {
-            //costruiamo la query di inserimento
-            Insert.QueryBuilder q = new Insert.QueryBuilder(t.getName());
-            
-            /**
-             * Prendo una ricetta gia esistente
-             */
-            //prendo una ricetta random dalla lista delle ricette gia esistenti
-        	String ricetta = ricetteGenerate.get(new Random().nextInt(ricetteGenerate.size()));
-        	
-            /**
-             * Prendo un oggetto_richiesto gia esistente
-             */
-            //prendo un oggetto random dalla lista degli oggetti gia esistenti
-        	String oggetto = oggettiGenerati.get(new Random().nextInt(oggettiGenerati.size()));
-
-        	//aggiungo l'oggetto alla ricetta
-        	if(occorrenze.containsKey(ricetta)) 
-        	{
-        		if(!occorrenze.get(ricetta).contains(oggetto))
-        		{        			
-        			occorrenze.get(ricetta).add(oggetto); 
-        		}
-        		else
-        			System.out.println("Questa query ha tentato di inserire nuovamente l'oggetto " + oggetto + " nella ricetta " + ricetta);
-        	}
-        	else 
-        	{
-        		List<String> oggetti = new ArrayList<>();
-        		oggetti.add(oggetto);
-        		occorrenze.put(ricetta, oggetti);
-        	}            
-            //se la ricetta ha meno di 2 oggetti da creazione richiesti posso inserire
-            if(occorrenze.get(ricetta).size() < 3) 
+            if (!richieste.hasNext())
             {
-            	q.addValue("ricetta", ricetta);
-            	q.addValue("oggetto_richiesto", oggetto); 
-            	executeQuery(q.build());
+                System.out.println("Tutte le ricette richiedono gia 2 oggetti, inserite " + j + " richieste su " + n);
+                break;
             }
-            else
-            	System.out.println("Questa query ha tentato di inserire l'oggetto " + oggetto + " nella ricetta " + ricetta + " che possiede gia 2 occorrenze");
+            //costruiamo la query di inserimento
+            Insert.QueryBuilder q = new Insert.QueryBuilder(t.getName());
+
+            //prendo una ricetta gia esistente e un oggetto che non richiede ancora
+            Coppia<String, String> richiesta = richieste.next(random);
+            q.addValue("ricetta", richiesta.getFst());
+            q.addValue("oggetto_richiesto", richiesta.getSnd());
+            write(q.build());
         }//fine del for sugli inserimenti
     };
 
     /**
      * Consumer sulla tabella rivestimento
      */
-    private final MyConsumer<Map<String, List<String>>, Set<String>, Table, Integer> RIVESTIMENTO_CONSUMER = (valoriGenerati, attributiDaSalvare, t, n) ->
+    private final MyConsumer<Map<String, KeyPool>, Set<String>, Table, Integer> RIVESTIMENTO_CONSUMER = (valoriGenerati, attributiDaSalvare, t, n) ->
     {
         //creo la lista degli status gia inseriti
         List<String> statusGenerati = valoriGenerati.get("status.nome");
         //creo la lista degli oggetti generati
         Set<String> oggettiGeneratiSet = new HashSet<>(valoriGenerati.get("crafting.nome"));
-        oggettiGeneratiSet.removeAll(valoriGenerati.get("proiettile.nome"));
+        oggettiGeneratiSet.removeAll(new HashSet<>(valoriGenerati.get("proiettile.nome")));
         List<String> oggettiGenerati = new ArrayList<>(oggettiGeneratiSet);
         
         //per ogni inserimento da fare
@@ -368,236 +593,152 @@ public class Database {
             //costruiamo la query di inserimento
             Insert.QueryBuilder q = new Insert.QueryBuilder(t.getName());
 
-            Random r = new Random();
-
-            String name = oggettiGenerati.get(r.nextInt(oggettiGenerati.size()));
+            String name = pick(t, "nome", oggettiGenerati);
 
             computeMap(valoriGenerati, t.getName() + ".nome", name);
 
             q.addValue("nome", name);
-            q.addValue("status", statusGenerati.get(r.nextInt(statusGenerati.size())));
+            q.addValue("status", pick(t, "status", statusGenerati));
 
-            executeQuery(q.build());
+            write(q.build());
         }//fine del for sugli inserimenti
     };
 
     /**
      * Consumer sulla tabella utilizzo_rivestimento
      */
-    private final MyConsumer<Map<String, List<String>>, Set<String>, Table, Integer> UTILIZZO_RIVESTIMENTO_CONSUMER = (valoriGenerati, attributiDaSalvare, t, n) ->
+    private final MyConsumer<Map<String, KeyPool>, Set<String>, Table, Integer> UTILIZZO_RIVESTIMENTO_CONSUMER = (valoriGenerati, attributiDaSalvare, t, n) ->
     {
-        //inizializziamo la lista degli archi
-        List<String> listaArchi = new ArrayList<>();
+        //prendiamo dal tuple store tutte le armi corrispondenti al tipo arco
+        List<String> listaArchi = getTupleStore("arma").lookup("tipo", "arco", "nome");
         //creo la lista dei rivestimenti gia inseriti
         List<String> rivestimentiGenerati = valoriGenerati.get("rivestimento.nome");
         
-        //creiamo uno statement e lo connettiamo al db
-        Statement stmt = null;
-        try { stmt = conn.createStatement(); }
-        catch (SQLException e) {}
-
-        try //prendiamo tutte le armi corrispondenti al tipo arco
-        {
-            ResultSet out = stmt.executeQuery("select nome from arma where tipo = \"arco\"");
-
-            while(out.next())
-                listaArchi.add(out.getString(1));
-        }
-        catch (SQLException e) { System.out.println("ERRORE DURANTE LA QUERY"); }
-        
-        Map<String, List<String>> rivestimentiMap = new HashMap<>();
+        //ogni arco utilizza al massimo 4 rivestimenti distinti
+        BridgeGenerator utilizzi = new BridgeGenerator(listaArchi, rivestimentiGenerati, 4,
+                getDistribution(t, "arma"), getDistribution(t, "rivestimento")).withExistingChildren(childrenPerParent(t, "arma", "rivestimento"));
         
         for (int j = 0; j < n; j++)
         {
-            //costruiamo la query di inserimento
-            Insert.QueryBuilder q = new Insert.QueryBuilder(t.getName());
-
-            Random r = new Random();
-
-            //stiamo attenti a controllare se sono state inserite o meno archi
-            if(listaArchi.size() > 0) {
-	            String arco = listaArchi.get(r.nextInt(listaArchi.size()));	            
-	            String rivestimento = rivestimentiGenerati.get(r.nextInt(rivestimentiGenerati.size()));   
-	            
-	            if(rivestimentiMap.containsKey(arco))
-	            	rivestimentiMap.get(arco).add(rivestimento);
-	            else {
-	        		List<String> rivestimentiList = new ArrayList<>();
-	        		rivestimentiList.add(rivestimento);
-	        		rivestimentiMap.put(arco, rivestimentiList);
-	            }	
-	            //buildo la query solo se l'arco selezionato ha meno di 4 rivestimenti gia equipaggiati
-	            if(rivestimentiMap.get(arco).size() < 5) {
-	            	//buildo la query
-		            q.addValue("arma", arco);
-		            q.addValue("rivestimento", rivestimento);
-		            //la eseguo
-		            executeQuery(q.build());
-	            }	            	
-            }
-            else {
+            //stiamo attenti a controllare se ci sono ancora archi a cui poter inserire rivestimenti
+            if (!utilizzi.hasNext()) {
             	System.out.println("Non ci sono archi nella lista delle armi a cui poter inserire rivestimenti");
             	break;
             }
+            //costruiamo la query di inserimento
+            Insert.QueryBuilder q = new Insert.QueryBuilder(t.getName());
+
+            Coppia<String, String> utilizzo = utilizzi.next(random);
+            q.addValue("arma", utilizzo.getFst());
+            q.addValue("rivestimento", utilizzo.getSnd());
+            write(q.build());
         }//fine del for sugli inserimenti        
     };
     
     /**
      * Consumer sulla tabella utilizzo_proiettile
      */
-    private final MyConsumer<Map<String, List<String>>, Set<String>, Table, Integer> UTILIZZO_PROIETTILE_CONSUMER = (valoriGenerati, attributiDaSalvare, t, n) ->
+    private final MyConsumer<Map<String, KeyPool>, Set<String>, Table, Integer> UTILIZZO_PROIETTILE_CONSUMER = (valoriGenerati, attributiDaSalvare, t, n) ->
     {
-        //inizializziamo la lista delle balestre leggere e pesanti
-        List<String> listaBalestre = new ArrayList<>();
+        //prendiamo dal tuple store tutte le armi corrispondenti al tipo balestra leggera e pesante
+        List<String> listaBalestre = new ArrayList<>(getTupleStore("arma").lookup("tipo", "balestra leggera", "nome"));
+        listaBalestre.addAll(getTupleStore("arma").lookup("tipo", "balestra pesante", "nome"));
         //creo la lista dei proiettili gia inseriti
         List<String> proiettiliGenerati = valoriGenerati.get("proiettile.nome");
         
-        //creiamo uno statement e lo connettiamo al db
-        Statement stmt = null;
-        try { stmt = conn.createStatement(); }
-        catch (SQLException e) {}
-
-        try //prendiamo tutte le armi corrispondenti al tipo balestra leggera e pesante
-        {
-            ResultSet out = stmt.executeQuery("select nome from arma where tipo = \"balestra leggera\" or tipo = \"balestra pesante\"");
-
-            while(out.next())
-            	listaBalestre.add(out.getString(1));
-        }
-        catch (SQLException e) { System.out.println("ERRORE DURANTE LA QUERY"); }
-        
-        Map<String, List<String>> proiettiliMap = new HashMap<>();
+        //ogni balestra utilizza al massimo 4 proiettili distinti
+        BridgeGenerator utilizzi = new BridgeGenerator(listaBalestre, proiettiliGenerati, 4,
+                getDistribution(t, "arma"), getDistribution(t, "proiettile")).withExistingChildren(childrenPerParent(t, "arma", "proiettile"));
         
         for (int j = 0; j < n; j++)
         {
-            //costruiamo la query di inserimento
-            Insert.QueryBuilder q = new Insert.QueryBuilder(t.getName());
-
-            Random r = new Random();
-            
-            //stiamo attenti a controllare se sono state inserite o meno balestre
-            if(listaBalestre.size() > 0) {
-	            String balestra = listaBalestre.get(r.nextInt(listaBalestre.size()));	            
-	            String proiettile = proiettiliGenerati.get(r.nextInt(proiettiliGenerati.size()));   
-	            
-	            if(proiettiliMap.containsKey(balestra))
-	            	proiettiliMap.get(balestra).add(proiettile);
-	            else {
-	        		List<String> rivestimentiList = new ArrayList<>();
-	        		rivestimentiList.add(proiettile);
-	        		proiettiliMap.put(balestra, rivestimentiList);
-	            }	
-	            //buildo la query solo se la balestra selezionata ha meno di 4 proiettili gia equipaggiati
-	            if(proiettiliMap.get(balestra).size() < 5) {
-	            	//buildo la query
-		            q.addValue("arma", balestra);
-		            q.addValue("proiettile", proiettile);
-		            //la eseguo
-		            executeQuery(q.build());
-	            }	            	
-            }
-            else {
+            //stiamo attenti a controllare se ci sono ancora balestre a cui poter inserire proiettili
+            if (!utilizzi.hasNext()) {
             	System.out.println("Non ci sono balestre nella lista delle armi a cui poter inserire proiettili");
             	break;
             }
+            //costruiamo la query di inserimento
+            Insert.QueryBuilder q = new Insert.QueryBuilder(t.getName());
+
+            Coppia<String, String> utilizzo = utilizzi.next(random);
+            q.addValue("arma", utilizzo.getFst());
+            q.addValue("proiettile", utilizzo.getSnd());
+            write(q.build());
         }//fine del for sugli inserimenti        
     };
     
     /**
      * Consumer sulla tabella armatura_equipaggiata
      */
-    private final MyConsumer<Map<String, List<String>>, Set<String>, Table, Integer> ARMATURA_EQUIPAGGIATA_CONSUMER = (valoriGenerati, attributiDaSalvare, t, n) ->
+    private final MyConsumer<Map<String, KeyPool>, Set<String>, Table, Integer> ARMATURA_EQUIPAGGIATA_CONSUMER = (valoriGenerati, attributiDaSalvare, t, n) ->
     {
-    	Random r = new Random();
-        List<String> elmiGenerati = new ArrayList<>();
-        List<String> bustiGenerati = new ArrayList<>();
-        List<String> parabracciaGenerati = new ArrayList<>();
-        List<String> faldeGenerate = new ArrayList<>();
-        List<String> gambaliGenerati = new ArrayList<>();
+    	Random r = random;
+        //prendiamo dal tuple store tutti i tipi di armatura
+        TupleStore armature = getTupleStore("armatura");
+        List<String> elmiGenerati = armature.lookup("tipo", "elmo", "nome");
+        List<String> bustiGenerati = armature.lookup("tipo", "busto", "nome");
+        List<String> parabracciaGenerati = armature.lookup("tipo", "parabraccia", "nome");
+        List<String> faldeGenerate = armature.lookup("tipo", "falda", "nome");
+        List<String> gambaliGenerati = armature.lookup("tipo", "gambali", "nome");
         //inizializziamo la lista dei set equipaggiamento gia generati
         List<String> setEquipaggiamento = valoriGenerati.get("set_equipaggiamento.id");
-        //creo l'insieme dei set gia inseriti in armatura equipaggiata
-        Set<String> setEstratti = new HashSet<>();
-        
-        //creiamo uno statement e lo connettiamo al db
-        Statement stmt = null;
-        try { stmt = conn.createStatement(); }
-        catch (SQLException e) { System.out.println("ERRORE DURANTE LA CONNESSIONE"); }
-
-        //prendiamo tutti i tipi di armatura
-        try 
-        {
-            ResultSet out = stmt.executeQuery("select nome from armatura where tipo = \"elmo\"");
-            while(out.next())
-                elmiGenerati.add(out.getString(1));
-
-            out = stmt.executeQuery("select nome from armatura where tipo = \"busto\"");
-            while(out.next())
-                bustiGenerati.add(out.getString(1));
-
-            out = stmt.executeQuery("select nome from armatura where tipo = \"parabraccia\"");
-            while(out.next())
-                parabracciaGenerati.add(out.getString(1));
-
-            out = stmt.executeQuery("select nome from armatura where tipo = \"falda\"");
-            while(out.next())
-                faldeGenerate.add(out.getString(1));
-
-            out = stmt.executeQuery("select nome from armatura where tipo = \"gambali\"");
-
-            while(out.next())
-                gambaliGenerati.add(out.getString(1));
-        }
-        catch (SQLException e) { System.out.println("ERRORE DURANTE LA QUERY"); }    
+        //ogni set viene estratto una sola volta, escludendo quelli che hanno gia un'armatura equipaggiata
+        Map<String, Integer> setPresenti = countPerParent(t, "set_equipaggiamento");
+        List<Integer> setEsclusi = new ArrayList<>();
+        for (int i = 0; i < setEquipaggiamento.size(); i++)
+            if (setPresenti.containsKey(setEquipaggiamento.get(i)))
+                setEsclusi.add(i);
+        DistinctSampler setEstratti = new DistinctSampler(setEquipaggiamento.size(), setEsclusi);
+        Distribution distribuzioneSet = getDistribution(t, "set_equipaggiamento");
         
         for (int j = 0; j < n; j++)
         {            
-            String set = "";
-            //controllo che il set non sia gia stato estratto
-            do set = setEquipaggiamento.get(r.nextInt(setEquipaggiamento.size()));
-            while(setEstratti.contains(set));
-            //inserisco nell'insieme dei set estratti il set attuale
-            setEstratti.add(set);
+            if (!setEstratti.hasNext())
+            {
+                System.out.println("Tutti i set equipaggiamento sono gia stati equipaggiati");
+                break;
+            }
+            String set = setEquipaggiamento.get(setEstratti.next(r, distribuzioneSet));
             
             if(elmiGenerati.size() > 0) {
-            	String elmo = elmiGenerati.get(r.nextInt(elmiGenerati.size()));
+            	String elmo = pick(t, "armatura", elmiGenerati);
                 //costruiamo la query di inserimento
                 Insert.QueryBuilder q = new Insert.QueryBuilder(t.getName());   
             	q.addValue("armatura", elmo);
             	q.addValue("set_equipaggiamento", set);
-            	executeQuery(q.build());
+            	write(q.build());
             }
             if(bustiGenerati.size() > 0) {
-            	String busto = bustiGenerati.get(r.nextInt(bustiGenerati.size()));
+            	String busto = pick(t, "armatura", bustiGenerati);
                 //costruiamo la query di inserimento
                 Insert.QueryBuilder q = new Insert.QueryBuilder(t.getName());   
             	q.addValue("armatura", busto);
             	q.addValue("set_equipaggiamento", set);
-            	executeQuery(q.build());
+            	write(q.build());
             }
             if(parabracciaGenerati.size() > 0) {
-            	String parabraccia = parabracciaGenerati.get(r.nextInt(parabracciaGenerati.size()));
+            	String parabraccia = pick(t, "armatura", parabracciaGenerati);
                 //costruiamo la query di inserimento
                 Insert.QueryBuilder q = new Insert.QueryBuilder(t.getName());   
             	q.addValue("armatura", parabraccia);
             	q.addValue("set_equipaggiamento", set);
-            	executeQuery(q.build());
+            	write(q.build());
             }
             if(faldeGenerate.size() > 0) {
-            	String falda = faldeGenerate.get(r.nextInt(faldeGenerate.size()));
+            	String falda = pick(t, "armatura", faldeGenerate);
                 //costruiamo la query di inserimento
                 Insert.QueryBuilder q = new Insert.QueryBuilder(t.getName());   
             	q.addValue("armatura", falda);
             	q.addValue("set_equipaggiamento", set);
-            	executeQuery(q.build());
+            	write(q.build());
             }
             if(gambaliGenerati.size() > 0) {
-            	String gambali = gambaliGenerati.get(r.nextInt(gambaliGenerati.size()));
+            	String gambali = pick(t, "armatura", gambaliGenerati);
                 //costruiamo la query di inserimento
                 Insert.QueryBuilder q = new Insert.QueryBuilder(t.getName());   
             	q.addValue("armatura", gambali);
             	q.addValue("set_equipaggiamento", set);
-            	executeQuery(q.build());
+            	write(q.build());
             }
         }//fine del for sugli inserimenti
     };
@@ -605,28 +746,15 @@ public class Database {
     /**
      * consumer sulle tabelle possedimento
      */
-    private final MyConsumer<Map<String, List<String>>, Set<String>, Table, Integer> POSSEDIMENTO_CONSUMER = (valoriGenerati, attributiDaSalvare, t, n) ->
+    private final MyConsumer<Map<String, KeyPool>, Set<String>, Table, Integer> POSSEDIMENTO_CONSUMER = (valoriGenerati, attributiDaSalvare, t, n) ->
     {
-        //inizializziamo la lista degli account
-        List<String> listaAccount = new ArrayList<>();
-
-        //creiamo uno statement e lo connettiamo al db
-        Statement stmt = null;
-        try { stmt = conn.createStatement(); }
-        catch (SQLException e) {}
-
-        try //prendiamo tutti gli account con almeno un cacciatore dal db
-        {
-            ResultSet out = stmt.executeQuery("select distinct account from cacciatore;");
-
-            while(out.next())
-                listaAccount.add(out.getString(1));
-        }
-        catch (SQLException e) { System.out.println("ERRORE DURANTE LA QUERY"); }
+        //prendiamo dal tuple store tutti gli account con almeno un cacciatore
+        TupleStore cacciatori = getTupleStore("cacciatore");
+        List<String> listaAccount = new ArrayList<>(cacciatori.keys("account"));
 
         List<Attribute> attributes = t.getAttributes();
 
-        Random r = new Random();
+        Random r = random;
 
         //per ogni inserimento da fare
         for (int j = 0; j < n; j++)
@@ -634,29 +762,16 @@ public class Database {
             //costruiamo la query di inserimento
             Insert.QueryBuilder q = new Insert.QueryBuilder(t.getName());
 
-            String account = listaAccount.get(r.nextInt(listaAccount.size()));
+            String account = pick(t, "account", listaAccount);
 
             //iteriamo su tutti gli attributi
             for (Attribute a : attributes)
             {
                 if (a.getName().equals("cacciatore"))
                 {
-                    //facciamo una query di select per prendere i cacciatori appartenenti a quell'account
-
-                    try
-                    {
-                        ResultSet out = stmt.executeQuery("select nome from cacciatore where account = \"" + account + "\"");
-
-                        //ci salviamo l'output della query nella lista
-                        List<String> nomiAccount = new ArrayList<>(3);
-
-                        while(out.next())
-                            nomiAccount.add(out.getString(1));
-
-                        q.addValue("cacciatore", nomiAccount.get(r.nextInt(nomiAccount.size())));
-                    }
-                    catch (SQLException e) {}
-
+                    //cerchiamo nel tuple store i cacciatori appartenenti a quell'account
+                    List<String> nomiAccount = cacciatori.lookup("account", account, "nome");
+                    q.addValue("cacciatore", pick(t, "cacciatore", nomiAccount));
                 }
                 if (a.getName().equals("account"))
                     q.addValue("account", account);
@@ -665,49 +780,45 @@ public class Database {
                     notAutoIncrementalCase(t, attributiDaSalvare, valoriGenerati, q, a);
 
             } //chiusura del for sugli attributi
-            executeQuery(q.build());
+            write(q.build());
         }//chiusura del for sugli inserimenti
     };
 
     /**
      * consumer sulla tabella cacciatore
      */
-    private final MyConsumer<Map<String, List<String>>, Set<String>, Table, Integer> HUNTER_CONSUMER = (valoriGenerati, attributiDaSalvare, t, n) ->
+    private final MyConsumer<Map<String, KeyPool>, Set<String>, Table, Integer> HUNTER_CONSUMER = (valoriGenerati, attributiDaSalvare, t, n) ->
     {
-        //mappa che abina ad ogni account la lista dei suoi cacciatori
-        Map<String, List<String>> accountCacciatori = new HashMap<>();
-
         List<String> listaAccount = valoriGenerati.get("account.id");
 
-        listaAccount.forEach(a -> accountCacciatori.put(a, new ArrayList<>()));
-
-        Random r = new Random();
+        //ogni account puo avere al massimo 3 cacciatori
+        BridgeGenerator accountCacciatori = new BridgeGenerator(listaAccount, 3, getDistribution(t, "account"))
+                .withExisting(countPerParent(t, "account"));
 
         for (int j = 0; j < n; j++)
         {
+            if (!accountCacciatori.hasNext())
+            {
+                System.out.println("Tutti gli account hanno gia 3 cacciatori, inseriti " + j + " cacciatori su " + n);
+                break;
+            }
             //costruiamo la query di inserimento
             Insert.QueryBuilder q = new Insert.QueryBuilder(t.getName());
 
-            String account;
-
-            do
-                account = listaAccount.get(r.nextInt(listaAccount.size()));
-            while (accountCacciatori.get(account).size() == 3);
+            String account = accountCacciatori.nextParent(random);
 
             //genero un nome lo aggiungo alla query e ai valori generati
 
-            String nome = t.getAttribute("nome").getType().randomize();
+            String nome = t.getAttribute("nome").randomize(random);
             computeMap(valoriGenerati, t.getName() + ".nome", nome);
 
-            computeMap(accountCacciatori, account, nome);
-
             //inserico account e valori generati casualmente
             q.addValue("account", account);
             q.addValue("nome", nome);
-            q.addValue("zenny", t.getAttribute("zenny").getType().randomize());
-            q.addValue("grado", t.getAttribute("grado").getType().randomize());
+            q.addValue("zenny", t.getAttribute("zenny").randomize(random));
+            q.addValue("grado", t.getAttribute("grado").randomize(random));
 
-            executeQuery(q.build());
+            write(q.build());
         } //fine del for sugli inserimenti
     };
     	
@@ -722,9 +833,12 @@ public class Database {
     private Database(DatabaseBuilder builder) throws SQLException, DriverNotFoundException {
         name = builder.name;
         url = builder.url;
+        account = builder.account;
         tables.addAll(builder.tables);
         triggers.addAll(builder.triggers);
-        query = CREATE + name + "\n" + USE + name + "\n";
+        aggregates.putAll(builder.aggregates);
+        deferredParallelism = builder.deferredParallelism;
+        ddlParallelism = builder.ddlParallelism;
 
         //prova a caricare i drivers
         System.out.println("loading drivers...");
@@ -761,6 +875,7 @@ public class Database {
     {
         this.url = url;
         this.name = databaseName;
+        this.account = account;
         //prova a connettersi al database
         System.out.println("connecting to db...");
         try {
@@ -787,6 +902,23 @@ public class Database {
         return new Database(url, databaseName, account);
     }
 
+    /**
+     * metodo che ritorna la connessione al db passato in input, di cui si conosce gia lo schema.
+     * Le tabelle non vengono create ma servono all'append populate per sapere cosa generare
+     * @param url del server a cui connettersi
+     * @param databaseName nome del server a cui connettersi
+     * @param account dell'utente a cui connettersi
+     * @param tables tabelle gia presenti nel db
+     * @return l'istanza di connessione al db
+     * @throws SQLException se non è stato possibile connettersi al db
+     */
+    public static Database connect(String url, String databaseName, Account account, Table... tables) throws SQLException
+    {
+        Database db = new Database(url, databaseName, account);
+        db.tables.addAll(Arrays.asList(tables));
+        return db;
+    }
+
     /**
      * metoto getter
      * @param tableName prende un nome di una tabella in input
@@ -805,26 +937,63 @@ public class Database {
      */
     public String getQuery() { return query; }
 
+    /**
+     * metodo getter
+     * @return il piano con cui è stato creato lo schema, con la durata di ogni query; null se il database è stato solo connesso
+     */
+    public DdlPlan getDdlPlan() { return ddlPlan; }
+
     /**
      * metodo che esegue effettivamente la connessione al database ed esegue tutte le query 
      */
     private void create() {
-        //per ogni tabella del database andiamo a creare la rispettiva query in stringa
-        // dando vita a una lunga stringa fatta da tutte le query da eseguire in mySQL
-        tables.forEach(x -> query += x.getQuery() + "\n");
-
-        //per ogni trigger nel database andiamo a creare la rispettiva query in stringa
-        //da aggiungere alla stringa creata sopra
-        triggers.forEach(t -> query += t.toString() + "\n");
-
-        //prima di eseguirle tutte come unica stringa...
-        //splittiamo le query per poterle eseguire una alla volta e non tutte insieme.
-        String[] queries = query.split("\n");
+        //il database deve esistere prima che le connessioni del piano lo usino
+        executeQuery(CREATE + name);
+        executeQuery(USE + name);
+
+        //confrontiamo lo schema con quello gia presente nel db per eseguire solo le query necessarie
+        boolean deferred = deferredParallelism > 0;
+        //tabelle di aggregati da riempire con le righe gia presenti nella tabella di base
+        List<AggregateTable> toBackfill = new ArrayList<>();
+        try
+        {
+            SchemaDiff diff = SchemaDiff.compare(conn, name, tables, triggers);
+            diff.getDrift().forEach(d -> System.out.println("ATTENZIONE: " + d));
+            ddlPlan = diff.toPlan(deferred);
+            if (deferred)
+                defer(diff.getMissingTables());
+            Set<String> missing = diff.getMissingTables().stream().map(Table::getName).collect(Collectors.toSet());
+            aggregates.values().stream()
+                    .filter(a -> missing.contains(a.getName()) && !missing.contains(a.getBaseTableName()))
+                    .forEach(toBackfill::add);
+        }
+        catch (SQLException e)
+        {
+            System.out.println("ERRORE DURANTE LA LETTURA DI INFORMATION_SCHEMA, LO SCHEMA VIENE CREATO PER INTERO");
+            ddlPlan = new DdlPlan(tables, triggers, deferred);
+            if (deferred)
+                defer(tables);
+            //non sappiamo quali tabelle esistevano gia: il backfill ricalcola comunque gli aggregati da zero
+            toBackfill.addAll(aggregates.values());
+        }
 
-        //andiamo ad eseguire una per volta tutte le query salvate nell'array
-        for (int i = 0; i < queries.length; i++) {
-            executeQuery(queries[i]);
+        //una query per ogni tabella e per ogni trigger, eseguite per livelli di foreign key
+        query = CREATE + name + "\n" + USE + name + "\n" + ddlPlan;
+        if (ddlPlan.isEmpty())
+            System.out.println("lo schema di " + name + " e' gia aggiornato");
+        else
+            ddlPlan.execute(this::openConnection, ddlParallelism);
 
+        //una tabella di aggregati nuova su una tabella di base gia esistente parte vuota:
+        //i trigger aggiornerebbero solo le righe scritte da ora in poi
+        for (AggregateTable aggregate : toBackfill)
+        {
+            try { backfill(aggregate); }
+            catch (SQLException e)
+            {
+                throw new IllegalStateException("impossibile riempire la tabella di aggregati " + aggregate.getName()
+                        + " con le righe gia presenti in " + aggregate.getBaseTableName(), e);
+            }
         }
     }
     
@@ -834,69 +1003,29 @@ public class Database {
      * @throws SQLException
      */
     private void executeQuery(String query) {
+        System.out.println(query);
+        //la durata comprende l'esecuzione e la lettura del risultato, non la sua stampa
+        long start = System.nanoTime();
+        long end = 0;
         //prova a creare una connessione con mySQL per permettere l'utilizzo delle query
         Statement stmt = null;
         try
         {
             stmt = conn.createStatement();
-            System.out.println(query);
 
             queryCounter++;
 
             if (query.substring(0,6).equals("select"))
             {
-                ResultSet out = stmt.executeQuery(query);
+                ResultCache.Result result = ResultCache.read(stmt.executeQuery(query));
+                end = System.nanoTime();
                 System.out.println("query #" + queryCounter + " eseguita correttamente");
 
-                ResultSetMetaData metaData = out.getMetaData();
-
-                int columnCount = metaData.getColumnCount();
-
-                //costruiamo l'output di una query
-                StringBuilder queryOutput = new StringBuilder("+");
-
-                int[] max_length = new int[columnCount];
-
-                //per ogni colonna costruiamo la prima riga della query
-
-                for (int i = 1; i <= columnCount  ; i++) {
-
-                    int columnSize = metaData.getColumnDisplaySize(i);
-                    max_length[i-1] = Math.max(columnSize, metaData.getColumnName(i).length());
-                    queryOutput.append("-".repeat(max_length[i-1] + 2) + "+");
-                }
-                queryOutput.append("\n|");
-
-                String primaRiga = queryOutput.substring(0,queryOutput.length()-1);
-
-                //per ogni colonna costruiamo la seconda riga della query
-
-                for (int i = 1; i <= columnCount  ; i++) {
-                    String column_name = metaData.getColumnName(i);
-                    queryOutput.append(" " + column_name + " ".repeat(max_length[i-1] - column_name.length()) + " |");
-                }
-                queryOutput.append("\n" + primaRiga);
-
-                int countRows = 0;
-
-                //per ogni riga della query e per ogni colonna inseriamo l'output
-                while (out.next()) {
-                    countRows++;
-                    queryOutput.append("| ");
-                    for (int i = 1; i <= columnCount  ; i++) {
-                        String result = out.getString(i);
-                        queryOutput.append(result + " ".repeat(max_length[i-1] - (result == null ? 4 : result.length())) + " | ");
-                    }
-                    queryOutput.append("\n");
-                }
-
-                if (countRows > 0)
-                    queryOutput.append(primaRiga.substring(0, primaRiga.length()-1));
-
-                System.out.println(queryOutput.toString());
+                printResult(result);
             }
             else {
                 stmt.execute(query);
+                end = System.nanoTime();
                 System.out.println("query #" + queryCounter + " eseguita correttamente");
             }
         }
@@ -906,190 +1035,903 @@ public class Database {
             else
                 duplicateEntryCounter++;
         }
+        finally {
+            logSlowQuery(query, ((end == 0 ? System.nanoTime() : end) - start) / 1_000_000);
+        }
     }
-    
-    /**
-     * metodo specifico per l'esecuzione di query CRUD
-     * @param query l'istanza della query ObjOr
-     * @throws IllegalArgumentException se la tabella o gli attributi inseriti non sono presenti nel db
-     * oppure se ci sono attibuti obbligatori non inseriti
-     * @throws SQLException se la query non viene eseguita correttamente
-     */
-    public void executeQuery(Query query) {  executeQuery(query.toString()); }
 
     /**
-     * popola il db con entry casuali
+     * metodo privato che stampa sotto forma di tabella un risultato gia letto, ad esempio dalla cache
+     * @param result risultato della query
      */
-    public void randomPopulate() { randomPopulate(1000); }
+    private void printResult(ResultCache.Result result)
+    {
+        String[] columns = result.getColumns();
+        int[] max_length = result.getWidths();
 
-    /**
-     * metodo che ritorna il numero di duplicate entry che non sono state inserite nel db
-     * @return numero di duplicate entry
-     */
-    public int getDuplicateEntryCounter() { return duplicateEntryCounter; }
+        //costruiamo l'output di una query
+        StringBuilder queryOutput = new StringBuilder("+");
 
-    public void randomPopulateMHW(int n)
-    {
-        //table del db mhw ordinati tramite sort topologico
-        String[] tableSort = new String[] {
-                "fauna_endemica",
-                "clima",
-                "npc",
-                "abilita",
-                "mostro",
-                "status",
-                "status_clima",
-                "status_mostro",
-                "elemento",
-                "elemento_mostro",
-                "resistenza",
-                "regione",
-                "locazione",
-                "clima_regione",
-                "missione",
-                "incontro",
-                "gioiello",
-                "ottenimento",
-                "crafting",
-                "ricetta",
-                "richiesta",
-                "ricavo",
-                "proiettile",
-                "rivestimento",
-                "equipaggiamento",
-                "creazione",
-                "abilita_equipaggiamento",
-                "armatura",
-                "arma",
-                "utilizzo_rivestimento",
-                "utilizzo_proiettile",
-                "set_equipaggiamento",
-                "gioiello_equipaggiato",
-                "armatura_equipaggiata",
-                "account",
-                "cacciatore",
-                "set_posseduto",
-                "missione_completata",
-                "possedimento_gioiello",
-                "possedimento_oggetto",
-                "possedimento_equipaggiamento"
-        };
+        //per ogni colonna costruiamo la prima riga della query
 
-        //costruisco una mappa da table.attribute a valori generati per quell'attributo
-        Map<String, List<String>> valoriGenerati = new HashMap<>();
+        for (int i = 0; i < columns.length; i++)
+            queryOutput.append("-".repeat(max_length[i] + 2) + "+");
+        queryOutput.append("\n|");
 
-        //creiamo la lista di attributi da salvare
-        Set<String> attributiDaSalvare = new HashSet<>();
+        String primaRiga = queryOutput.substring(0,queryOutput.length()-1);
+
+        //per ogni colonna costruiamo la seconda riga della query
 
-        //iteriamo sui table per creare l'insieme di attributi da salvare
-        for (int i = 0; i < tableSort.length; i++) {
-            Table t = getTable(tableSort[i]);
-            //inseriamo i vincoli tra gli attributi da salvare
-            t.getVincoli().stream().forEach(v -> attributiDaSalvare.add(v.getReferencedTable() + "." + v.getForeignKey()));
+        for (int i = 0; i < columns.length; i++)
+            queryOutput.append(" " + columns[i] + " ".repeat(max_length[i] - columns[i].length()) + " |");
+        queryOutput.append("\n" + primaRiga);
+
+        //per ogni riga della query e per ogni colonna inseriamo l'output
+        for (String[] row : result.getRows()) {
+            queryOutput.append("| ");
+            for (int i = 0; i < columns.length; i++) {
+                String value = row[i];
+                queryOutput.append(value + " ".repeat(max_length[i] - (value == null ? 4 : value.length())) + " | ");
+            }
+            queryOutput.append("\n");
         }
 
-        //iteriamo su tutti i table
-        for (int i = 0; i < tableSort.length; i++)
-        {
-            Table t = getTable(tableSort[i]);
-            if (t.getName().equals("missione"))
-                MISSION_CONSUMER.accept(valoriGenerati, attributiDaSalvare, t, n);
-            else if (t.getName().equals("arma"))
-                WEAPON_CONSUMER.accept(valoriGenerati, attributiDaSalvare, t, n);
-            else if (t.getName().equals("richiesta"))
-                RICHIESTA_CONSUMER.accept(valoriGenerati, attributiDaSalvare, t, n);
-            else if (t.getName().equals("rivestimento"))
-                RIVESTIMENTO_CONSUMER.accept(valoriGenerati, attributiDaSalvare, t, n);
-            else if (t.getName().equals("cacciatore"))
-                HUNTER_CONSUMER.accept(valoriGenerati, attributiDaSalvare, t, n);
-            else if (t.getName().substring(0,3).equals("pos") || t.getName().equals("set_posseduto") || t.getName().equals("missione_completata"))
-                POSSEDIMENTO_CONSUMER.accept(valoriGenerati, attributiDaSalvare, t, n);
-            else if (t.getName().equals("utilizzo_rivestimento"))
-            	UTILIZZO_RIVESTIMENTO_CONSUMER.accept(valoriGenerati, attributiDaSalvare, t, n);
-            else if (t.getName().equals("utilizzo_proiettile"))
-            	UTILIZZO_PROIETTILE_CONSUMER.accept(valoriGenerati, attributiDaSalvare, t, n);
-            else if (t.getName().equals("armatura_equipaggiata"))
-            	ARMATURA_EQUIPAGGIATA_CONSUMER.accept(valoriGenerati, attributiDaSalvare, t, n);            
-            else
-                GENERIC_CONSUMER.accept(valoriGenerati, attributiDaSalvare, t, n);
+        if (!result.getRows().isEmpty())
+            queryOutput.append(primaRiga.substring(0, primaRiga.length()-1));
 
-            autoIncremental = 1;
-        }//chiusura del for sui table
+        System.out.println(queryOutput.toString());
     }
 
-    
-    //--------------------------------------------------------METODI PER IL RANDOM POPULATE-----------------------------------------------//
-    
-    
     /**
-     * popola il db con entry casuali
-     * @param n numero di entry per table che verranno generate
+     * metodo privato che salva la query nel log delle query lente se supera la soglia,
+     * insieme al suo piano di esecuzione
+     * @param query query eseguita
+     * @param millis durata dell'esecuzione in millisecondi
      */
-    public void randomPopulate(int n)
+    private void logSlowQuery(String query, long millis)
     {
-        //dizionario che mappa ogni table a un numero
-        Map<Table, Integer> tableToInt = new HashMap<>();
+        if (slowQueryThreshold < 0 || millis < slowQueryThreshold)
+            return;
+        logSlowQuery(query, millis, Explain.isExplainable(query) ? new Explain(query) : null);
+    }
 
-        //popoliamo la mappa
-        for (int i = 0; i < tables.size(); i++)
-            tableToInt.put(tables.get(i), i);
+    /**
+     * metodo privato che salva nel log delle query lente una query con i segnaposto, se supera la soglia;
+     * il piano di esecuzione viene chiesto con gli stessi valori legati alla query
+     * @param query query eseguita
+     * @param millis durata dell'esecuzione in millisecondi
+     */
+    private void logSlowQuery(Query query, long millis)
+    {
+        if (slowQueryThreshold < 0 || millis < slowQueryThreshold)
+            return;
+        logSlowQuery(query.toString(), millis, Explain.isExplainable(query.toString()) ? new Explain(query) : null);
+    }
 
-        Map<Integer, List<Coppia<Integer, String>>> graph = new HashMap<Integer, List<Coppia<Integer, String>>>();
+    private void logSlowQuery(String query, long millis, Explain explain)
+    {
+        QueryPlan plan = null;
+        if (explain != null)
+        {
+            try { plan = explain(explain); }
+            catch (SQLException e) { System.out.println("ERRORE DURANTE L'EXPLAIN DELLA QUERY LENTA"); }
+        }
+        SlowQuery slow = new SlowQuery(query, millis, plan);
+        if (slowQueries.size() == SLOW_QUERY_LOG_SIZE)
+            slowQueries.removeFirst();
+        slowQueries.addLast(slow);
+        System.out.println("QUERY LENTA: " + slow);
+    }
 
-        //popoliamo il grafo
-        tables.stream().forEach(t -> graph.put(tableToInt.get(t), new ArrayList<>()));
-        tables.stream()
+    /**
+     * metodo che esegue l'explain di una query e ne legge il piano di esecuzione
+     * @param explain query di explain, ad esempio ottenuta con il metodo explain della classe Select
+     * @return il piano di esecuzione
+     * @throws SQLException se l'explain non viene eseguito correttamente
+     */
+    public QueryPlan explain(Explain explain) throws SQLException
+    {
+        if (explain.isParameterized())
+        {
+            PreparedStatement stmt = prepare(explain.toString());
+            explain.bind(stmt);
+            try (ResultSet out = stmt.executeQuery())
+            {
+                out.next();
+                return new QueryPlan(out.getString(1));
+            }
+        }
+        try (Statement stmt = conn.createStatement(); ResultSet out = stmt.executeQuery(explain.toString()))
+        {
+            out.next();
+            return new QueryPlan(out.getString(1));
+        }
+    }
+
+    /**
+     * metodo che confronta il piano di esecuzione di una select prima e dopo la riscrittura delle subquery in e not in
+     * e ritorna la versione con il costo stimato minore
+     * @param select select originale o gia riscritta con rewriteSubqueries
+     * @return la select da eseguire, quella originale se la riscrittura non riduce il costo
+     * o se uno dei due piani non riporta il costo
+     * @throws SQLException se l'explain di una delle due versioni non viene eseguito correttamente
+     */
+    public Select compareRewrite(Select select) throws SQLException
+    {
+        Select original = select.getOriginal();
+        Select rewritten = original.rewriteSubqueries();
+        if (rewritten == original)
+        {
+            System.out.println("la select non contiene subquery da riscrivere");
+            return original;
+        }
+        QueryPlan before = explain(original.explain());
+        QueryPlan after = explain(rewritten.explain());
+        System.out.println("piano originale: " + before);
+        System.out.println("piano riscritto: " + after);
+        //senza il costo di entrambi i piani non c'e' un confronto da fare: teniamo l'originale
+        if (before.getCost() < 0 || after.getCost() < 0)
+        {
+            System.out.println("costo non disponibile, viene mantenuta la select originale");
+            return original;
+        }
+        return after.getCost() < before.getCost() ? rewritten : original;
+    }
+
+    /**
+     * metodo che crea la paginazione a chiave di tutte le righe di una tabella, ordinate per la primary key
+     * @param tableName nome della tabella
+     * @param pageSize numero massimo di righe per pagina
+     * @return la paginazione da leggere con fetchPage
+     * @throws IllegalArgumentException se la tabella non è presente nel db o la dimensione della pagina non è positiva
+     */
+    public KeysetPagination paginate(String tableName, int pageSize) throws IllegalArgumentException
+    {
+        Table t = getTable(tableName);
+        if (t == null)
+            throw new IllegalArgumentException("la tabella " + tableName + " non e' presente nel db");
+        List<String> keys = t.getAttributes().stream()
+                .filter(Attribute::isKey)
+                .map(Attribute::getName)
+                .collect(Collectors.toList());
+        return new KeysetPagination(new Select.QueryBuilder("*").addTable(t.getName()).build(), pageSize, Order.ASSCENDING, keys);
+    }
+
+    /**
+     * metodo che legge una pagina di una paginazione a chiave. Se la pagina è piena viene restituito anche il token
+     * della successiva, che quindi puo risultare vuota quando le righe sono un multiplo esatto della dimensione della pagina
+     * @param pagination paginazione da leggere
+     * @param token token restituito con la pagina precedente, null per la prima pagina
+     * @return la pagina letta
+     * @throws IllegalArgumentException se il token non è valido per la paginazione
+     * @throws SQLException se la query della pagina non viene eseguita correttamente
+     */
+    public Page fetchPage(KeysetPagination pagination, String token) throws IllegalArgumentException, SQLException
+    {
+        Select page = pagination.getPage(token);
+        long start = System.nanoTime();
+        try
+        {
+            queryCounter++;
+            if (page.isParameterized())
+            {
+                PreparedStatement stmt = prepare(page.toString());
+                page.bind(stmt);
+                try (ResultSet out = stmt.executeQuery()) { return readPage(pagination, out); }
+            }
+            try (Statement stmt = conn.createStatement(); ResultSet out = stmt.executeQuery(page.toString()))
+            {
+                return readPage(pagination, out);
+            }
+        }
+        finally
+        {
+            logSlowQuery(page, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    /**
+     * metodo privato che legge le righe di una pagina e, se la pagina è piena, crea il token della successiva
+     * con i valori della chiave dell'ultima riga
+     */
+    private Page readPage(KeysetPagination pagination, ResultSet out) throws SQLException
+    {
+        ResultSetMetaData metaData = out.getMetaData();
+        List<String> columns = new ArrayList<>();
+        for (int i = 1; i <= metaData.getColumnCount(); i++)
+            columns.add(metaData.getColumnLabel(i));
+        List<List<String>> rows = new ArrayList<>();
+        List<String> lastKey = null;
+        while (out.next())
+        {
+            List<String> row = new ArrayList<>();
+            for (int i = 1; i <= columns.size(); i++)
+                row.add(out.getString(i));
+            rows.add(row);
+            lastKey = new ArrayList<>();
+            //le colonne del risultato hanno il nome dell'attributo senza la tabella
+            for (String k : pagination.getKeys())
+                lastKey.add(out.getString(k.substring(k.lastIndexOf('.') + 1)));
+        }
+        return new Page(columns, rows, rows.size() < pagination.getPageSize() ? null : pagination.nextToken(lastKey));
+    }
+
+    /**
+     * metodo che imposta la soglia del log delle query lente: ogni query eseguita che dura almeno la soglia
+     * viene salvata insieme al suo piano di esecuzione
+     * @param millis durata minima in millisecondi delle query da salvare, -1 per disabilitare il log
+     */
+    public void setSlowQueryThreshold(long millis)
+    {
+        if (millis < -1)
+            throw new IllegalArgumentException("la soglia deve essere positiva, oppure -1 per disabilitare il log");
+        slowQueryThreshold = millis;
+    }
+
+    /**
+     * metodo getter
+     * @return le ultime query lente salvate nel log, al massimo 1000, dalla piu vecchia
+     */
+    public List<SlowQuery> getSlowQueries() { return List.copyOf(slowQueries); }
+    
+    /**
+     * metodo specifico per l'esecuzione di query CRUD
+     * @param query l'istanza della query ObjOr
+     * @throws IllegalArgumentException se la tabella o gli attributi inseriti non sono presenti nel db
+     * oppure se ci sono attibuti obbligatori non inseriti
+     * @throws SQLException se la query non viene eseguita correttamente
+     */
+    public void executeQuery(Query query)
+    {
+        if (resultCache != null && query instanceof Select)
+            executeCached((Select)query);
+        else if (!query.isParameterized())
+            executeQuery(query.toString());
+        else
+            executePrepared(query);
+        //le scritture eseguite da questo database invalidano i risultati in cache delle tabelle che modificano
+        if (resultCache != null)
+            invalidate(writtenTable(query));
+    }
+
+    /**
+     * metodo che abilita la cache dei risultati delle select eseguite con executeQuery.
+     * Il risultato di una select viene salvato con l'sql e i valori dei segnaposto e riusato finchè
+     * una insert, update o delete eseguita da questo database non modifica una delle tabelle lette,
+     * anche attraverso i trigger, o finchè non scade. Le scritture fatte da altre connessioni non invalidano la cache
+     * @param maxEntries numero massimo di risultati in cache, viene eliminato quello usato meno di recente
+     * @param ttl durata massima di un risultato
+     * @throws IllegalArgumentException se il numero di risultati o la durata non sono positivi
+     */
+    public void enableResultCache(int maxEntries, Duration ttl) throws IllegalArgumentException
+    {
+        resultCache = new ResultCache(maxEntries, ttl.toMillis());
+    }
+
+    /**
+     * disabilita la cache dei risultati e ne scarta il contenuto
+     */
+    public void disableResultCache() { resultCache = null; }
+
+    /**
+     * metodo getter
+     * @return la cache dei risultati con le sue statistiche, null se disabilitata
+     */
+    public ResultCache getResultCache() { return resultCache; }
+
+    /**
+     * metodo privato che esegue una select leggendo il risultato dalla cache se presente, altrimenti
+     * la esegue e ne salva il risultato
+     * @param select query da eseguire
+     */
+    private void executeCached(Select select)
+    {
+        String sql = select.toString();
+        System.out.println(select.isParameterized() ? sql + " " + select.getParameters() : sql);
+        queryCounter++;
+        ResultCache.Result result = resultCache.get(sql, select.getParameters());
+        if (result != null)
+        {
+            System.out.println("query #" + queryCounter + " letta dalla cache");
+            printResult(result);
+            return;
+        }
+        long version = resultCache.getVersion();
+        long start = System.nanoTime();
+        long end = 0;
+        try
+        {
+            if (select.isParameterized())
+            {
+                PreparedStatement stmt = prepare(sql);
+                select.bind(stmt);
+                try (ResultSet out = stmt.executeQuery()) { result = ResultCache.read(out); }
+            }
+            else
+            {
+                try (Statement stmt = conn.createStatement(); ResultSet out = stmt.executeQuery(sql)) { result = ResultCache.read(out); }
+            }
+            end = System.nanoTime();
+            resultCache.put(sql, select.getParameters(), result, version);
+            System.out.println("query #" + queryCounter + " eseguita correttamente");
+            printResult(result);
+        }
+        catch (SQLException e)
+        {
+            e.printStackTrace();
+        }
+        finally
+        {
+            logSlowQuery(select, ((end == 0 ? System.nanoTime() : end) - start) / 1_000_000);
+        }
+    }
+
+    /**
+     * metodo privato che invalida i risultati in cache che leggono una tabella o una delle tabelle
+     * modificate dai trigger o dalle foreign key che una scrittura su di essa scatena
+     * @param tableName tabella modificata, null se la query non è una scrittura
+     */
+    private void invalidate(String tableName)
+    {
+        if (resultCache == null || tableName == null)
+            return;
+        resultCache.invalidate(writeClosures.computeIfAbsent(tableName.toLowerCase(), this::writeClosure));
+    }
+
+    /**
+     * metodo privato che calcola le tabelle modificate da una scrittura su una tabella:
+     * la tabella stessa, quelle in cui scrivono i suoi trigger, quelle che la referenziano con una foreign key,
+     * che sono tutte on delete cascade on update cascade, e ricorsivamente i trigger e le foreign key di queste
+     */
+    private Set<String> writeClosure(String tableName)
+    {
+        Set<String> closure = new LinkedHashSet<>();
+        Deque<String> toVisit = new ArrayDeque<>(List.of(tableName));
+        while (!toVisit.isEmpty())
+        {
+            String t = toVisit.pop();
+            if (!closure.add(t))
+                continue;
+            for (Trigger trigger : triggers)
+                if (trigger.getTableName().equalsIgnoreCase(t))
+                    toVisit.addAll(trigger.getWrittenTables());
+            for (Table child : tables)
+                if (child.getVincoli().stream().anyMatch(v -> v.getReferencedTable().equalsIgnoreCase(t)))
+                    toVisit.add(child.getName().toLowerCase());
+        }
+        return closure;
+    }
+
+    private static String writtenTable(Query query)
+    {
+        if (query instanceof Insert)
+            return ((Insert)query).getTableName();
+        if (query instanceof Update)
+            return ((Update)query).getTableName();
+        if (query instanceof Delete)
+            return ((Delete)query).getTableName();
+        return null;
+    }
+
+    /**
+     * metodo privato che esegue una query con i segnaposto usando il prepared statement in cache
+     * @param query query da eseguire
+     */
+    private void executePrepared(Query query)
+    {
+        System.out.println(query + " " + query.getParameters());
+        long start = System.nanoTime();
+        long end = 0;
+        try
+        {
+            queryCounter++;
+            PreparedStatement stmt = prepare(query.toString());
+            query.bind(stmt);
+            if (stmt.execute())
+            {
+                ResultCache.Result result;
+                try (ResultSet out = stmt.getResultSet()) { result = ResultCache.read(out); }
+                end = System.nanoTime();
+                System.out.println("query #" + queryCounter + " eseguita correttamente");
+                printResult(result);
+            }
+            else
+            {
+                end = System.nanoTime();
+                System.out.println("query #" + queryCounter + " eseguita correttamente");
+            }
+        }
+        catch (SQLException e)
+        {
+            if (e.getMessage() == null || !e.getMessage().startsWith("Duplicate"))
+                e.printStackTrace();
+            else
+                duplicateEntryCounter++;
+        }
+        finally
+        {
+            logSlowQuery(query, ((end == 0 ? System.nanoTime() : end) - start) / 1_000_000);
+        }
+    }
+
+    /**
+     * metodo privato che ritorna il prepared statement di una query dalla cache, creandolo se non c'è.
+     * Riusare lo stesso prepared statement evita di rifare il parsing e il piano della query ad ogni esecuzione
+     * (con useServerPrepStmts=true nell'url il piano resta sul server)
+     * @param sql query con i segnaposto
+     * @return il prepared statement sulla connessione del database
+     * @throws SQLException se non è stato possibile preparare la query
+     */
+    private PreparedStatement prepare(String sql) throws SQLException
+    {
+        PreparedStatement stmt = statements.get(sql);
+        if (stmt == null || stmt.isClosed())
+        {
+            stmt = conn.prepareStatement(sql);
+            statements.put(sql, stmt);
+        }
+        return stmt;
+    }
+
+    /**
+     * popola il db con entry casuali
+     */
+    public void randomPopulate() { randomPopulate(1000); }
+
+    /**
+     * metodo che ritorna il numero di duplicate entry che non sono state inserite nel db
+     * @return numero di duplicate entry
+     */
+    public int getDuplicateEntryCounter() { return duplicateEntryCounter; }
+
+    /**
+     * metodo che imposta il seme del generatore di numeri casuali usato nel random populate,
+     * in modo da poter riprodurre le stesse scelte delle foreign key
+     * @param seed seme del generatore
+     */
+    public void setSeed(long seed) { random.setSeed(seed); }
+
+    /**
+     * metodo che abilita il salvataggio su disco dei valori generati durante il random populate.
+     * Ogni pool che supera la soglia viene spostato in un file mappato in memoria nella cartella indicata
+     * @param threshold numero di valori per pool oltre il quale il pool viene spostato su disco, 0 per disabilitare
+     * @param directory cartella in cui salvare i file dei pool
+     */
+    public void setSpillThreshold(int threshold, Path directory)
+    {
+        if (threshold < 0)
+            throw new IllegalArgumentException("la soglia non puo essere negativa");
+        spillThreshold = threshold;
+        spillDirectory = directory;
+    }
+
+    /**
+     * metodo che abilita il checkpoint del random populate: prima di ogni tabella lo stato del populate
+     * viene salvato nel file, e se il file esiste gia all'avvio del populate le tabelle completate non vengono ripopolate,
+     * mentre le righe scritte nella tabella interrotta vengono cancellate prima di ripopolarla.
+     * Il file viene cancellato quando il populate termina
+     * @param file percorso del file di checkpoint, null per disabilitare
+     */
+    public void setCheckpoint(Path file) { checkpoint = file == null ? null : new Checkpoint(file); }
+
+    /**
+     * popola il db mhw con entry casuali
+     * @param n numero di entry per table che verranno generate
+     */
+    public void randomPopulateMHW(int n) { randomPopulateMHW(new PopulationPlan.PlanBuilder(n).build()); }
+
+    /**
+     * popola il db mhw con entry casuali seguendo il piano di population
+     * @param plan piano con il numero di righe, la dimensione dei batch e il parallelismo di ogni tabella
+     */
+    public void randomPopulateMHW(PopulationPlan plan) { populateMHW(plan, false); }
+
+    /**
+     * aggiunge entry casuali al db mhw gia popolato seguendo il piano di population.
+     * Le foreign key vengono scelte anche tra le righe gia presenti nel db
+     * e gli id autoincrementali continuano dal massimo attuale
+     * @param plan piano con il numero di righe da aggiungere, la dimensione dei batch e il parallelismo di ogni tabella
+     */
+    public void appendPopulateMHW(PopulationPlan plan) { populateMHW(plan, true); }
+
+    
+    //--------------------------------------------------------METODI PER IL RANDOM POPULATE-----------------------------------------------//
+    
+    
+    /**
+     * popola il db con entry casuali
+     * @param n numero di entry per table che verranno generate
+     */
+    public void randomPopulate(int n) { randomPopulate(new PopulationPlan.PlanBuilder(n).build()); }
+
+    /**
+     * popola il db con entry casuali seguendo il piano di population
+     * @param plan piano con il numero di righe, la dimensione dei batch e il parallelismo di ogni tabella
+     */
+    public void randomPopulate(PopulationPlan plan) { populate(sortTables(), plan, t -> GENERIC_CONSUMER, false); }
+
+    /**
+     * aggiunge entry casuali al db gia popolato seguendo il piano di population.
+     * Le foreign key vengono scelte anche tra le righe gia presenti nel db
+     * e gli id autoincrementali continuano dal massimo attuale
+     * @param plan piano con il numero di righe da aggiungere, la dimensione dei batch e il parallelismo di ogni tabella
+     */
+    public void appendPopulate(PopulationPlan plan) { populate(sortTables(), plan, t -> GENERIC_CONSUMER, true); }
+
+    /**
+     * metodo privato che popola il db mhw
+     * @param plan piano di population
+     * @param append true se le righe vanno aggiunte a quelle gia presenti nel db
+     */
+    private void populateMHW(PopulationPlan plan, boolean append)
+    {
+        //i consumer del db mhw cercano i cacciatori per account e le armi e le armature per tipo
+        addTupleStore(new TupleStore(getTable("cacciatore"), "nome", "account").addIndex("account"));
+        addTupleStore(new TupleStore(getTable("arma"), "nome", "tipo").addIndex("tipo"));
+        addTupleStore(new TupleStore(getTable("armatura"), "nome", "tipo").addIndex("tipo"));
+
+        List<Table> tableSort = Arrays.stream(MHW_TABLES)
+                .map(this::getTable)
+                .collect(Collectors.toList());
+        populate(tableSort, plan, this::getConsumerMHW, append);
+    }
+
+    /**
+     * metodo privato che ordina le tabelle in modo che ogni tabella venga dopo le tabelle che referenzia
+     * @return la lista delle tabelle ordinate topologicamente
+     */
+    private List<Table> sortTables()
+    {
+        //dizionario che mappa ogni table a un numero
+        Map<Table, Integer> tableToInt = new HashMap<>();
+
+        //popoliamo la mappa
+        for (int i = 0; i < tables.size(); i++)
+            tableToInt.put(tables.get(i), i);
+
+        Map<Integer, List<Coppia<Integer, String>>> graph = new HashMap<Integer, List<Coppia<Integer, String>>>();
+
+        //popoliamo il grafo
+        tables.stream().forEach(t -> graph.put(tableToInt.get(t), new ArrayList<>()));
+        tables.stream()
                 .forEach(t -> t.getVincoli().forEach(v -> {
                     graph.get(tableToInt.get(getTable(v.getReferencedTable()))).add(new Coppia<Integer, String>(tableToInt.get(t), v.getForeignKey()));
                 }));
 
         //facendo il sort topologico sul grafo otteniamo la lista ordinata delle table da popolare
-        List<Integer> tableSortInt = sortTopologico(graph);
-        List<Table> tableSort = tableSortInt.stream().map(i ->
-        {
-            for (Table t : tableToInt.keySet())
-                if ((int)tableToInt.get(t) == i)
-                    return t;
-            return null;
-        }).collect(Collectors.toList());
+        return sortTopologico(graph).stream()
+                .map(tables::get)
+                .filter(t -> !aggregates.containsKey(t.getName()))
+                .collect(Collectors.toList());
+    }
 
+    /**
+     * metodo privato che ritorna il consumer con cui popolare una tabella del db mhw
+     * @param t tabella da popolare
+     * @return il consumer specifico della tabella, o quello generico
+     */
+    private MyConsumer<Map<String, KeyPool>, Set<String>, Table, Integer> getConsumerMHW(Table t)
+    {
+        if (t.getName().equals("missione"))
+            return MISSION_CONSUMER;
+        else if (t.getName().equals("arma"))
+            return WEAPON_CONSUMER;
+        else if (t.getName().equals("richiesta"))
+            return RICHIESTA_CONSUMER;
+        else if (t.getName().equals("rivestimento"))
+            return RIVESTIMENTO_CONSUMER;
+        else if (t.getName().equals("cacciatore"))
+            return HUNTER_CONSUMER;
+        else if (t.getName().substring(0,3).equals("pos") || t.getName().equals("set_posseduto") || t.getName().equals("missione_completata"))
+            return POSSEDIMENTO_CONSUMER;
+        else if (t.getName().equals("utilizzo_rivestimento"))
+        	return UTILIZZO_RIVESTIMENTO_CONSUMER;
+        else if (t.getName().equals("utilizzo_proiettile"))
+        	return UTILIZZO_PROIETTILE_CONSUMER;
+        else if (t.getName().equals("armatura_equipaggiata"))
+        	return ARMATURA_EQUIPAGGIATA_CONSUMER;            
+        else
+            return GENERIC_CONSUMER;
+    }
+
+    /**
+     * metodo privato che popola le tabelle nell'ordine dato, scegliendo per ognuna il consumer
+     * @param tableSort tabelle ordinate in modo che ogni tabella venga dopo quelle che referenzia
+     * @param plan piano di population
+     * @param consumers funzione che associa ad ogni tabella il consumer con cui popolarla
+     * @param append true se le righe vanno aggiunte a quelle gia presenti nel db
+     */
+    private void populate(List<Table> tableSort, PopulationPlan plan,
+                          Function<Table, MyConsumer<Map<String, KeyPool>, Set<String>, Table, Integer>> consumers, boolean append)
+    {
         //costruisco una mappa da table.attribute a valori generati per quell'attributo
-        Map<String, List<String>> valoriGenerati = new HashMap<>();
-        
-        //iteriamo su ogni table in tableSort
-        for (int i = 0; i < tableSort.size(); i++)
-        {
-            //generiamo un insieme di attributi che, nel momento in cui li creiamo vanno salvati
-            Set<String> attributiDaSalvare = new HashSet<>();
+        Map<String, KeyPool> valoriGenerati = new HashMap<>();
 
-            //popoliamo l'insieme
-            for (Integer k : graph.keySet())
+        //creiamo l'insieme degli attributi da salvare: tutte le foreign key referenziate da un vincolo
+        Set<String> attributiDaSalvare = new HashSet<>();
+        tableSort.forEach(t -> t.getVincoli().forEach(v -> attributiDaSalvare.add(v.getReferencedTable() + "." + v.getForeignKey())));
+
+        List<String> nomiTabelle = tableSort.stream().map(Table::getName).collect(Collectors.toList());
+        try
+        {
+            int completate = 0;
+            //righe della tabella interrotta che verranno rigenerate uguali e scartate come duplicate
+            long ripresa = 0;
+            if (checkpoint != null && checkpoint.exists())
             {
-                for (Coppia<Integer, String> c : graph.get(k))
+                //ripartiamo dall'ultima tabella salvata con gli stessi valori generati e lo stesso stato del generatore
+                try
                 {
-                    attributiDaSalvare.add(c.getSnd().toString());
+                    completate = checkpoint.load(nomiTabelle, valoriGenerati,
+                            k -> KeyPool.of(getAttribute(k), spillThreshold, spillDirectory), tupleStores);
                 }
+                catch (IOException e)
+                {
+                    throw new IllegalStateException("impossibile leggere il checkpoint del populate", e);
+                }
+                random = checkpoint.getRandom();
+                duplicateEntryCounter = checkpoint.getDuplicates();
+                System.out.println("ripresa dal checkpoint: " + completate + " tabelle su " + nomiTabelle.size() + " gia popolate");
+                if (completate < tableSort.size())
+                    ripresa = discardPartialRows(tableSort.get(completate));
             }
+            else if (append)
+                //i valori gia presenti nel db vengono letti una sola volta, in caso di ripresa sono nel checkpoint
+                seed(tableSort, attributiDaSalvare, valoriGenerati);
 
-            //popoliamo ogni table con n occorrenze
-            for (int j = 0; j < n; j++)
+            //iteriamo su tutti i table non ancora popolati
+            for (int i = completate; i < tableSort.size(); i++)
             {
                 Table t = tableSort.get(i);
-                Insert.QueryBuilder q = new Insert.QueryBuilder(t.getName());
-
-                t.getAttributes()
-                        .stream()
-                        .forEach(a ->
-                        {
-                        	//se l'attributo non è autoincremental
-                            if (!a.getAutoIncremental())
-                            	notAutoIncrementalCase(t, attributiDaSalvare, valoriGenerati, q, a);
-                            else //l'attributo è autoincremental
-                            	autoIncrementalCase(t, attributiDaSalvare, valoriGenerati, a);                            
-                        }); //chiusura del forEach
-                executeQuery(q.build());
+                saveCheckpoint(nomiTabelle, i, valoriGenerati, t, append);
+                populateTable(t, plan, consumers.apply(t), valoriGenerati, attributiDaSalvare, append);
+                duplicateEntryCounter -= ripresa;
+                ripresa = 0;
             }
-            autoIncremental = 1;
+
+            if (checkpoint != null)
+            {
+                try { checkpoint.delete(); }
+                catch (IOException e) { System.out.println("ERRORE DURANTE LA CANCELLAZIONE DEL CHECKPOINT"); }
+            }
+
+            //finito il caricamento costruiamo gli indici e le foreign key rimandati
+            createDeferredIndexes();
+        }
+        finally
+        {
+            //liberiamo i pool dei valori generati, cancellando quelli salvati su disco
+            valoriGenerati.values().forEach(KeyPool::close);
+        }
+    }
+
+    /**
+     * metodo privato che popola una tabella con il numero di righe previsto dal piano,
+     * scrivendo le righe generate dal consumer a batch
+     */
+    private void populateTable(Table t, PopulationPlan plan, MyConsumer<Map<String, KeyPool>, Set<String>, Table, Integer> consumer,
+                               Map<String, KeyPool> valoriGenerati, Set<String> attributiDaSalvare, boolean append)
+    {
+        int n = plan.getRows(t.getName());
+        System.out.println("popolamento della tabella " + t.getName() + " con " + n + " righe...");
+        try
+        {
+            //in append gli id autoincrementali continuano dal massimo gia presente nella tabella
+            if (append)
+                autoIncremental = nextAutoIncremental(t);
+            //le righe inserite correttamente vengono salvate nel tuple store della tabella, se esiste
+            TupleStore store = tupleStores.get(t.getName());
+            writer = new BatchWriter(this::openConnection, plan.getBatchSize(t.getName()), plan.getParallelism(t.getName()),
+                    store == null ? null : row -> store.add(row.getValues()));
+        }
+        catch (SQLException e)
+        {
+            throw new IllegalStateException("impossibile aprire le connessioni per popolare la tabella " + t.getName(), e);
+        }
+        try
+        {
+            consumer.accept(valoriGenerati, attributiDaSalvare, t, n);
+        }
+        finally
+        {
+            //aspettiamo che tutte le righe siano scritte prima di passare alla tabella successiva,
+            //se non resta nessun writer la close fallisce e con lei il populate
+            try
+            {
+                writer.close();
+            }
+            finally
+            {
+                duplicateEntryCounter += writer.getDuplicates();
+                System.out.println("tabella " + t.getName() + ": " + writer.getWritten() + " righe inserite, "
+                        + writer.getDuplicates() + " duplicate, " + writer.getFailed() + " non inserite per errore");
+                if (writer.getFailedWriters() > 0)
+                    System.out.println("ERRORE: " + writer.getFailedWriters() + " writer della tabella " + t.getName() + " terminati per un errore");
+                //metriche della pipeline: se il generatore resta bloccato a lungo servono piu writer,
+                //se sono i writer ad aspettare la generazione è il collo di bottiglia
+                System.out.println("pipeline " + t.getName() + ": coda massima " + writer.getMaxQueueDepth() + " batch, generatore bloccato "
+                        + writer.getProducerStallMillis() + " ms, writer in attesa " + writer.getWriterStallMillis() + " ms, writer attivi "
+                        + writer.getWriterBusyMillis() + " ms");
+                writer = null;
+                autoIncremental = 1;
+                invalidate(t.getName());
+            }
+        }
+    }
+
+    /**
+     * metodo che ricalcola una tabella di aggregati dalle righe presenti nel db, in una sola transazione.
+     * Serve quando la tabella di aggregati viene aggiunta ad un db gia popolato, o dopo aver modificato le tabelle in join;
+     * le scritture fatte da altre connessioni durante il backfill possono essere contate due volte o perse
+     * @param aggregate tabella di aggregati da ricalcolare
+     * @throws SQLException se il backfill non viene eseguito correttamente, in questo caso la tabella resta invariata
+     */
+    public void backfill(AggregateTable aggregate) throws SQLException
+    {
+        long start = System.nanoTime();
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement())
+        {
+            for (String q : aggregate.getBackfillQueries())
+                stmt.executeUpdate(q);
+            conn.commit();
+        }
+        catch (SQLException e)
+        {
+            conn.rollback();
+            throw e;
+        }
+        finally
+        {
+            conn.setAutoCommit(autoCommit);
+        }
+        invalidate(aggregate.getName());
+        System.out.println("backfill di " + aggregate.getName() + " eseguito in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * metodo che aggiunge gli indici non unique e le foreign key rimandati con deferIndexes e aggiorna le statistiche
+     * delle tabelle con analyze table. Prima vengono creati gli indici di tutte le tabelle e poi le foreign key,
+     * ogni fase con piu tabelle in parallelo: cosi le foreign key trovano gia gli indici di cui hanno bisogno.
+     * Non fa nulla se le tabelle sono state create complete o gli indici sono gia stati creati;
+     * le tabelle che esistevano gia nel db hanno gia i loro indici e non vengono modificate.
+     * Le query che falliscono restano in attesa e vengono rieseguite alla chiamata successiva.
+     * @return le query fallite, vuota se tutti gli indici e le foreign key sono stati creati
+     */
+    public List<String> createDeferredIndexes()
+    {
+        if (deferredParallelism == 0)
+            return List.of();
+        long start = System.nanoTime();
+        deferredIndexes = executeParallel(deferredIndexes);
+        long indexed = System.nanoTime();
+        deferredForeignKeys = executeParallel(deferredForeignKeys);
+        long constrained = System.nanoTime();
+        if (!tables.isEmpty())
+            executeQuery("analyze table " + tables.stream().map(Table::getName).collect(Collectors.joining(", ")));
+        System.out.println("indici creati in " + (indexed - start) / 1_000_000 + " ms, foreign key in "
+                + (constrained - indexed) / 1_000_000 + " ms, analyze table in " + (System.nanoTime() - constrained) / 1_000_000 + " ms");
+        List<String> failed = new ArrayList<>(deferredIndexes);
+        failed.addAll(deferredForeignKeys);
+        if (failed.isEmpty())
+            deferredParallelism = 0;
+        else
+            System.out.println("ERRORE: " + failed.size() + " query tra indici e foreign key non eseguite, restano in attesa");
+        return failed;
+    }
+
+    /**
+     * metodo privato che salva le query degli indici e delle foreign key rimandati di alcune tabelle
+     * @param created tabelle create senza indici non unique e foreign key
+     */
+    private void defer(Collection<Table> created)
+    {
+        created.stream().map(Table::getIndexQuery).filter(Objects::nonNull).forEach(deferredIndexes::add);
+        created.stream().map(Table::getForeignKeyQuery).filter(Objects::nonNull).forEach(deferredForeignKeys::add);
+    }
+
+    /**
+     * metodo privato che esegue delle query di alter table dividendole tra deferredParallelism connessioni
+     * @param queries query da eseguire, ognuna su una tabella diversa
+     * @return le query fallite
+     */
+    private List<String> executeParallel(List<String> queries)
+    {
+        return DdlPlan.executeParallel(this::openConnection, queries, deferredParallelism, new HashMap<>());
+    }
+
+    /**
+     * metodo che aggiunge un tuple store in cui salvare le righe generate per una tabella durante il random populate,
+     * sostituendo quello eventualmente gia presente per la stessa tabella
+     * @param store tuple store da aggiungere
+     */
+    public void addTupleStore(TupleStore store) { tupleStores.put(store.getTableName(), store); }
+
+    /**
+     * metodo getter
+     * @param tableName nome della tabella
+     * @return il tuple store della tabella
+     * @throws IllegalStateException se per la tabella non è stato aggiunto un tuple store
+     */
+    public TupleStore getTupleStore(String tableName) throws IllegalStateException
+    {
+        TupleStore store = tupleStores.get(tableName);
+        if (store == null)
+            throw new IllegalStateException("non e' stato aggiunto un tuple store per la tabella " + tableName);
+        return store;
+    }
+
+    /**
+     * metodo privato con cui i consumer scrivono una riga generata nella tabella che stanno popolando
+     * @param q insert della riga generata
+     */
+    private void write(Insert q) { writer.write(q); }
+
+    /**
+     * metodo che ritorna un index advisor sulle tabelle del database
+     * @return l'index advisor senza query analizzate
+     */
+    public IndexAdvisor indexAdvisor() { return new IndexAdvisor(tables); }
+
+    /**
+     * metodo che ritorna un workload builder i cui client si connettono a questo database
+     * @return il workload builder senza operazioni
+     */
+    public WorkloadDriver.WorkloadBuilder workload() { return new WorkloadDriver.WorkloadBuilder(this::openConnection); }
+
+    /**
+     * metodo che apre una nuova connessione al database, utilizzata dai thread che lavorano in parallelo
+     * @return la connessione aperta
+     * @throws SQLException se non è stato possibile connettersi al db
+     */
+    Connection openConnection() throws SQLException
+    {
+        Connection c = DriverManager.getConnection(url, account.getUsername(), account.getPassword());
+        try (Statement stmt = c.createStatement())
+        {
+            stmt.execute(USE + name);
+            if (bulkLoad != null)
+                stmt.execute(BulkLoadSession.DISABLE_CHECKS);
+        }
+        return c;
+    }
+
+    /**
+     * metodo che apre una sessione di bulk load: finchè non viene chiusa la connessione del database e tutte quelle
+     * aperte per il random populate non controllano foreign key e unique. Alla chiusura i dati vengono verificati dal client.
+     * @param parallelism numero di connessioni con cui verificare i dati alla chiusura
+     * @return la sessione da chiudere alla fine del caricamento
+     * @throws IllegalStateException se una sessione di bulk load è gia aperta
+     * @throws SQLException se non è stato possibile disattivare i controlli
+     */
+    public BulkLoadSession bulkLoad(int parallelism) throws IllegalStateException, SQLException
+    {
+        if (bulkLoad != null)
+            throw new IllegalStateException("una sessione di bulk load e' gia aperta");
+        BulkLoadSession session = new BulkLoadSession(this, tables, parallelism);
+        try (Statement stmt = conn.createStatement())
+        {
+            stmt.execute(BulkLoadSession.DISABLE_CHECKS);
+        }
+        bulkLoad = session;
+        return session;
+    }
+
+    /**
+     * metodo chiamato alla chiusura della sessione di bulk load che riattiva i controlli sulla connessione del database;
+     * le connessioni dei writer sono gia state chiuse alla fine del populate
+     */
+    void endBulkLoad()
+    {
+        bulkLoad = null;
+        try (Statement stmt = conn.createStatement())
+        {
+            stmt.execute(BulkLoadSession.ENABLE_CHECKS);
+        }
+        catch (SQLException e)
+        {
+            e.printStackTrace();
         }
     }
     
@@ -1137,33 +1979,250 @@ public class Database {
     
     
     /**
-     * se l'attributo è contenuto nell'insieme degli attributi è da salvare
+     * metodo privato che riempie i pool dei valori generati e i tuple store con le righe gia presenti nel db
+     * @param tableSort tabelle da popolare
+     * @param attributiDaSalvare chiavi nel formato table.attribute dei pool da riempire
+     * @param valoriGenerati mappa dei pool
      */
-    private void computeMap(Map<String, List<String>> valoriGenerati, String key, String randomValue)
+    private void seed(List<Table> tableSort, Set<String> attributiDaSalvare, Map<String, KeyPool> valoriGenerati)
     {
-        //se la chiave è presente nella mappa allora aggiungo il valore all'insieme
-        valoriGenerati.computeIfPresent(key, (k, val) ->
+        for (String key : attributiDaSalvare)
         {
-            val.add(randomValue);
-            return val;
-        });
+            int dot = key.indexOf('.');
+            String attribute = key.substring(dot + 1);
+            streamColumns(key.substring(0, dot), List.of(attribute), row -> {
+                //i valori null delle foreign key opzionali non possono essere referenziati
+                String value = row.get(attribute);
+                if (value != null)
+                    computeMap(valoriGenerati, key, value);
+            });
+        }
 
-        //se la chiave non è presente nella mappa allora creo un insieme e ci aggiungo il valore
-        valoriGenerati.computeIfAbsent(key, k ->
+        for (Table t : tableSort)
         {
-            List<String> l = new LinkedList<>();
-            l.add(randomValue);
-            return l;
-        });
+            TupleStore store = tupleStores.get(t.getName());
+            if (store != null)
+                streamColumns(t.getName(), store.getColumns(), store::add);
+        }
+    }
+
+    /**
+     * metodo privato che legge alcune colonne di una tabella senza caricare tutto il risultato in memoria.
+     * Se l'url abilita i cursori lato server (useCursorFetch=true) le righe vengono lette a blocchi di FETCH_SIZE,
+     * altrimenti il driver mysql le legge una alla volta in streaming
+     * @param tableName nome della tabella
+     * @param columns colonne da leggere
+     * @param action funzione chiamata per ogni riga con la mappa da colonna a valore
+     * @throws IllegalStateException se la tabella non puo essere letta
+     */
+    private void streamColumns(String tableName, List<String> columns, Consumer<Map<String, String>> action)
+    {
+        try (Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY))
+        {
+            stmt.setFetchSize(url.contains("useCursorFetch=true") ? FETCH_SIZE : Integer.MIN_VALUE);
+            try (ResultSet out = stmt.executeQuery("select " + String.join(", ", columns) + " from " + tableName))
+            {
+                while (out.next())
+                {
+                    Map<String, String> row = new HashMap<>();
+                    for (int i = 0; i < columns.size(); i++)
+                        row.put(columns.get(i), out.getString(i + 1));
+                    action.accept(row);
+                }
+            }
+        }
+        catch (SQLException e)
+        {
+            throw new IllegalStateException("impossibile leggere le righe gia presenti nella tabella " + tableName, e);
+        }
+    }
+
+    /**
+     * metodo privato che ritorna il prossimo valore autoincrementale di una tabella gia popolata
+     * e allinea il contatore auto_increment di mysql allo stesso valore: gli id vengono scritti esplicitamente
+     * nelle insert e continuano da quelli gia presenti, e le insert fatte da altri non li riusano
+     * @param t tabella da popolare
+     * @return il massimo dell'attributo autoincrementale piu uno, 1 se la tabella non ne ha uno
+     * @throws IllegalStateException se non è stato possibile leggere il massimo
+     */
+    private int nextAutoIncremental(Table t)
+    {
+        Attribute a = t.getAttributes().stream()
+                .filter(Attribute::getAutoIncremental)
+                .findFirst()
+                .orElse(null);
+        if (a == null)
+            return 1;
+        try (Statement stmt = conn.createStatement())
+        {
+            ResultSet out = stmt.executeQuery("select coalesce(max(" + a.getName() + "), 0) + 1 from " + t.getName());
+            out.next();
+            int next = out.getInt(1);
+            stmt.execute("alter table " + t.getName() + " auto_increment = " + next);
+            return next;
+        }
+        catch (SQLException e)
+        {
+            throw new IllegalStateException("impossibile leggere il massimo id della tabella " + t.getName(), e);
+        }
+    }
+
+    /**
+     * metodo privato che salva il checkpoint prima di popolare una tabella, se il checkpoint è abilitato,
+     * insieme al numero di righe e al primo id autoincrementale della tabella.
+     * Un errore nel salvataggio non interrompe il populate: in caso di ripresa si riparte dal checkpoint precedente
+     */
+    private void saveCheckpoint(List<String> nomiTabelle, int completate, Map<String, KeyPool> valoriGenerati, Table t, boolean append)
+    {
+        if (checkpoint == null)
+            return;
+        try
+        {
+            boolean autoIncrementale = t.getAttributes().stream().anyMatch(Attribute::getAutoIncremental);
+            long startId = !autoIncrementale ? 0 : append ? nextAutoIncremental(t) : 1;
+            checkpoint.save(nomiTabelle, completate, random, duplicateEntryCounter, countRows(t), startId, valoriGenerati, tupleStores);
+        }
+        catch (IOException e)
+        {
+            System.out.println("ERRORE DURANTE IL SALVATAGGIO DEL CHECKPOINT");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * metodo privato che, alla ripresa da un checkpoint, toglie le righe scritte nella tabella interrotta.
+     * Le righe vengono rigenerate uguali perchè il generatore riparte dallo stato salvato, ma gli id autoincrementali
+     * e i tuple store riempiti dai writer non sarebbero allineati con quelle gia scritte:
+     * vengono cancellate le righe con id maggiore o uguale al primo assegnato, o tutte se la tabella era vuota.
+     * Le tabelle che le referenziano non sono ancora state popolate, quindi la cancellazione non ha effetti in cascata.
+     * @param t tabella interrotta
+     * @return numero di righe rimaste che verranno rigenerate e scartate come duplicate, da non contare tra le duplicate
+     * @throws IllegalStateException se non è stato possibile cancellare le righe
+     */
+    private long discardPartialRows(Table t)
+    {
+        Attribute a = t.getAttributes().stream()
+                .filter(Attribute::getAutoIncremental)
+                .findFirst()
+                .orElse(null);
+        long startId = checkpoint.getStartId();
+        long startRows = checkpoint.getStartRows();
+        try (Statement stmt = conn.createStatement())
+        {
+            int cancellate;
+            if (a != null && startId > 0)
+            {
+                cancellate = stmt.executeUpdate("delete from " + t.getName() + " where " + a.getName() + " >= " + startId);
+                stmt.execute("alter table " + t.getName() + " auto_increment = " + startId);
+            }
+            else if (startRows == 0)
+                cancellate = stmt.executeUpdate("delete from " + t.getName());
+            else
+            {
+                //in append senza id autoincrementale non sappiamo quali righe sono nuove: restano e vengono rigenerate uguali
+                long scritte = countRows(t) - startRows;
+                System.out.println("ripresa della tabella " + t.getName() + ": " + scritte + " righe gia scritte verranno scartate come duplicate");
+                return scritte;
+            }
+            System.out.println("ripresa della tabella " + t.getName() + ": " + cancellate + " righe parziali cancellate");
+            return 0;
+        }
+        catch (SQLException e)
+        {
+            throw new IllegalStateException("impossibile cancellare le righe parziali della tabella " + t.getName(), e);
+        }
+        finally
+        {
+            invalidate(t.getName());
+        }
+    }
+
+    /**
+     * metodo privato che conta le righe gia presenti in una tabella per ogni valore di una foreign key,
+     * in modo che in append i limiti di figli per padre tengano conto delle righe esistenti
+     * @param t tabella figlia o ponte
+     * @param foreignKey attributo che referenzia il padre
+     * @return mappa dal valore della foreign key al numero di righe, vuota se la tabella è vuota
+     * @throws IllegalStateException se non è stato possibile leggere la tabella
+     */
+    private Map<String, Integer> countPerParent(Table t, String foreignKey)
+    {
+        Map<String, Integer> counts = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet out = stmt.executeQuery("select " + foreignKey + ", count(*) from " + t.getName() + " group by " + foreignKey))
+        {
+            while (out.next())
+                counts.put(out.getString(1), out.getInt(2));
+            return counts;
+        }
+        catch (SQLException e)
+        {
+            throw new IllegalStateException("impossibile contare le righe per " + foreignKey + " della tabella " + t.getName(), e);
+        }
+    }
+
+    /**
+     * metodo privato che legge le coppie gia presenti in una tabella ponte raggruppando i figli per padre,
+     * in modo che in append le nuove coppie non duplichino quelle esistenti
+     * @param t tabella ponte
+     * @param parent attributo che referenzia il padre
+     * @param child attributo che referenzia il figlio
+     * @return mappa dal valore del padre ai suoi figli, vuota se la tabella è vuota
+     * @throws IllegalStateException se non è stato possibile leggere la tabella
+     */
+    private Map<String, Set<String>> childrenPerParent(Table t, String parent, String child)
+    {
+        Map<String, Set<String>> children = new HashMap<>();
+        streamColumns(t.getName(), List.of(parent, child),
+                row -> children.computeIfAbsent(row.get(parent), k -> new HashSet<>()).add(row.get(child)));
+        return children;
+    }
+
+    /**
+     * metodo privato che conta le righe di una tabella
+     * @throws IllegalStateException se non è stato possibile contare le righe
+     */
+    private long countRows(Table t)
+    {
+        try (Statement stmt = conn.createStatement(); ResultSet out = stmt.executeQuery("select count(*) from " + t.getName()))
+        {
+            out.next();
+            return out.getLong(1);
+        }
+        catch (SQLException e)
+        {
+            throw new IllegalStateException("impossibile contare le righe della tabella " + t.getName(), e);
+        }
+    }
+
+    /**
+     * se l'attributo è contenuto nell'insieme degli attributi è da salvare
+     */
+    private void computeMap(Map<String, KeyPool> valoriGenerati, String key, String randomValue)
+    {
+        //se la chiave non è presente nella mappa allora creo il pool adatto al tipo dell'attributo,
+        //poi aggiungo il valore al pool
+        valoriGenerati.computeIfAbsent(key, k -> KeyPool.of(getAttribute(k), spillThreshold, spillDirectory)).add(randomValue);
+    }
+
+    /**
+     * metodo privato che ritorna l'attributo corrispondente ad una chiave nel formato table.attribute
+     * @param key chiave nel formato table.attribute
+     * @return l'istanza dell'attributo
+     */
+    private Attribute getAttribute(String key)
+    {
+        int dot = key.indexOf('.');
+        return getTable(key.substring(0, dot)).getAttribute(key.substring(dot + 1));
     }
     
     /**
      * Metodo per il caso in cui devo generare un valore casuale
      */
-    private void randomValueGenerate(Table t, Set<String> attributiDaSalvare, Map<String, List<String>> valoriGenerati, Insert.QueryBuilder q, Attribute a)
+    private void randomValueGenerate(Table t, Set<String> attributiDaSalvare, Map<String, KeyPool> valoriGenerati, Insert.QueryBuilder q, Attribute a)
     {
         //creo un valore random sul dominio del tipo
-        String randomValue = a.getType().randomize();
+        String randomValue = a.randomize(random);
 
         //genero la chiave nel formato table.attribute
         String key = t.getName() + "." + a.getName();
@@ -1177,7 +2236,7 @@ public class Database {
     /**
      * Metodo per il caso in cui devo prendere il valore dai valori generati
      */
-    private void getRandomValueGenerated(Table t, Set<String> attributiDaSalvare, Map<String, List<String>> valoriGenerati, Insert.QueryBuilder q, Attribute a)
+    private void getRandomValueGenerated(Table t, Set<String> attributiDaSalvare, Map<String, KeyPool> valoriGenerati, Insert.QueryBuilder q, Attribute a)
     {
         Vincolo v = t.getVincoli().stream()
                 .filter(x -> x.getVincolato().equals(a.getName()))
@@ -1187,7 +2246,7 @@ public class Database {
         String key = v.getReferencedTable() + "." + v.getForeignKey();
 
         List<String> listaValori = valoriGenerati.get(key);
-        String randomValue = listaValori.get(new Random().nextInt(listaValori.size()));
+        String randomValue = pick(t, a.getName(), listaValori);
 
         //genero la chiave nel formato table.attribute
         key = t.getName() + "." + a.getName();
@@ -1199,23 +2258,51 @@ public class Database {
     }
 
     /**
-     * Metodo per il caso in cui l'attributo è autoincremental
+     * Metodo che sceglie un valore tra quelli gia generati secondo la distribuzione dell'attributo
+     * @param t tabella in cui verrà inserito il valore
+     * @param attributeName nome dell'attributo della tabella
+     * @param valori valori tra cui scegliere
+     * @return il valore scelto
      */
-    private void autoIncrementalCase(Table t, Set<String> attributiDaSalvare, Map<String, List<String>> valoriGenerati, Attribute a)
+    private String pick(Table t, String attributeName, List<String> valori)
+    {
+        return valori.get(getDistribution(t, attributeName).sample(random, valori.size()));
+    }
+
+    /**
+     * Metodo che ritorna la distribuzione con cui scegliere i valori di un attributo: prima quella del
+     * vincolo sull'attributo, poi quella dell'attributo stesso, altrimenti la distribuzione uniforme
+     */
+    private Distribution getDistribution(Table t, String attributeName)
+    {
+        for (Vincolo v : t.getVincoli())
+            if (v.getVincolato().equals(attributeName) && v.getDistribution() != null)
+                return v.getDistribution();
+        Attribute a = t.getAttribute(attributeName);
+        if (a != null && a.getDistribution() != null)
+            return a.getDistribution();
+        return UNIFORM;
+    }
+
+    /**
+     * Metodo per il caso in cui l'attributo è autoincremental: l'id viene scritto esplicitamente nella insert,
+     * perchè una insert multi riga fallita consuma gli id di tutto il batch e le righe reinserite una alla volta
+     * ne riceverebbero di nuovi, diversi da quelli salvati nei pool
+     */
+    private void autoIncrementalCase(Table t, Set<String> attributiDaSalvare, Map<String, KeyPool> valoriGenerati, Insert.QueryBuilder q, Attribute a)
     {
         String key = t.getName() + "." + a.getName();
+        q.addValue(a.getName(), "" + autoIncremental);
         //se l'attributo è contenuto nell'insieme degli attributi è da salvare
         if (attributiDaSalvare.contains(key))
-        {
             computeMap(valoriGenerati, key, "" + autoIncremental);
-            autoIncremental++;
-        }
+        autoIncremental++;
     }
 
     /**
      * Metodo per il caso in cui l'attributo non è autoincremental
      */
-    private void notAutoIncrementalCase(Table t, Set<String> attributiDaSalvare, Map<String, List<String>> valoriGenerati, Insert.QueryBuilder q, Attribute a)
+    private void notAutoIncrementalCase(Table t, Set<String> attributiDaSalvare, Map<String, KeyPool> valoriGenerati, Insert.QueryBuilder q, Attribute a)
     {
         //caso in cui devo generare un valore casuale
         if (t.getVincoli().stream().noneMatch(v -> v.getVincolato().equals(a.getName())))
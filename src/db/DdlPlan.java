@@ -0,0 +1,229 @@
+package db;
+
+import population.ConnectionFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+
+/**
+ * Classe che rappresenta il piano di creazione dello schema di un database: una query per ogni tabella e per ogni trigger.
+ * Le tabelle sono divise in livelli secondo le foreign key: il livello 0 contiene le tabelle che non referenziano
+ * altre tabelle, il livello n quelle che referenziano tabelle fino al livello n - 1. Le tabelle dello stesso livello
+ * vengono create in parallelo e un livello parte solo quando il precedente è finito. Dopo le tabelle vengono eseguite
+ * le alter table sulle tabelle gia esistenti, prima quelle che aggiungono colonne e indici e poi quelle che aggiungono
+ * foreign key, e infine vengono creati i trigger.
+ * Ogni query è eseguita da sola, quindi i corpi dei trigger possono contenere degli a capo.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class DdlPlan {
+    /**
+     * Campi della classe:
+     */
+    private List<List<String>> levels = new ArrayList<>();
+
+    private List<String> alters;
+
+    private List<String> constraints;
+
+    private List<String> triggers;
+
+    /**
+     * durata in millisecondi di ogni query eseguita, nell'ordine in cui sono finite
+     */
+    private Map<String, Long> timings = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /**
+     * costruttore della classe
+     * @param tables tabelle da creare
+     * @param triggers trigger da creare dopo le tabelle
+     * @param deferred true se le foreign key verranno aggiunte dopo il caricamento dei dati,
+     * in questo caso tutte le tabelle sono nel livello 0
+     * @throws IllegalArgumentException se le foreign key tra le tabelle formano un ciclo
+     */
+    DdlPlan(List<Table> tables, List<Trigger> triggers, boolean deferred) throws IllegalArgumentException {
+        this(tables, triggers, deferred, List.of(), List.of());
+    }
+
+    /**
+     * costruttore della classe
+     * @param tables tabelle da creare
+     * @param triggers trigger da creare dopo le tabelle
+     * @param deferred true se le foreign key delle tabelle da creare verranno aggiunte dopo il caricamento dei dati,
+     * in questo caso tutte le tabelle sono nel livello 0
+     * @param alters alter table che aggiungono o modificano colonne e indici delle tabelle gia esistenti
+     * @param constraints alter table che aggiungono foreign key alle tabelle gia esistenti
+     * @throws IllegalArgumentException se le foreign key tra le tabelle da creare formano un ciclo
+     */
+    DdlPlan(List<Table> tables, List<Trigger> triggers, boolean deferred, List<String> alters, List<String> constraints)
+            throws IllegalArgumentException {
+        Map<String, Table> byName = new HashMap<>();
+        tables.forEach(t -> byName.put(t.getName(), t));
+        Map<String, Integer> depth = new HashMap<>();
+        for (Table t : tables) {
+            int level = deferred ? 0 : level(t, byName, depth, new ArrayList<>());
+            while (levels.size() <= level)
+                levels.add(new ArrayList<>());
+            levels.get(level).add(t.getQuery(deferred));
+        }
+        this.alters = new ArrayList<>(alters);
+        this.constraints = new ArrayList<>(constraints);
+        this.triggers = triggers.stream().map(Trigger::toString).collect(Collectors.toList());
+    }
+
+    /**
+     * metodo getter
+     * @return le query di create table divise per livello
+     */
+    public List<List<String>> getLevels() { return Collections.unmodifiableList(levels); }
+
+    /**
+     * metodo getter
+     * @return le alter table che aggiungono o modificano colonne e indici delle tabelle gia esistenti
+     */
+    public List<String> getAlters() { return Collections.unmodifiableList(alters); }
+
+    /**
+     * metodo getter
+     * @return le alter table che aggiungono foreign key alle tabelle gia esistenti
+     */
+    public List<String> getConstraints() { return Collections.unmodifiableList(constraints); }
+
+    /**
+     * metodo che controlla se il piano non ha niente da eseguire
+     * @return true se lo schema è gia aggiornato
+     */
+    public boolean isEmpty() { return levels.isEmpty() && alters.isEmpty() && constraints.isEmpty() && triggers.isEmpty(); }
+
+    /**
+     * metodo getter
+     * @return le query di creazione dei trigger
+     */
+    public List<String> getTriggers() { return Collections.unmodifiableList(triggers); }
+
+    /**
+     * metodo getter
+     * @return la durata in millisecondi di ogni query eseguita
+     */
+    public Map<String, Long> getTimings() {
+        synchronized (timings) {
+            return new LinkedHashMap<>(timings);
+        }
+    }
+
+    /**
+     * metodo che esegue il piano: ogni livello di tabelle e poi i trigger, dividendo le query tra piu connessioni.
+     * Le query che falliscono vengono stampate e non fermano le altre
+     * @param factory factory che apre le connessioni al db
+     * @param parallelism numero massimo di connessioni che lavorano in parallelo
+     */
+    public void execute(ConnectionFactory factory, int parallelism) {
+        for (int i = 0; i < levels.size(); i++) {
+            long start = System.nanoTime();
+            executeParallel(factory, levels.get(i), parallelism, timings);
+            System.out.println("livello " + i + ": " + levels.get(i).size() + " tabelle create in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+        if (!alters.isEmpty() || !constraints.isEmpty()) {
+            long start = System.nanoTime();
+            executeParallel(factory, alters, parallelism, timings);
+            executeParallel(factory, constraints, parallelism, timings);
+            System.out.println((alters.size() + constraints.size()) + " tabelle modificate in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+        if (triggers.isEmpty())
+            return;
+        long start = System.nanoTime();
+        executeParallel(factory, triggers, parallelism, timings);
+        System.out.println(triggers.size() + " trigger creati in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * metodo che esegue delle query indipendenti tra loro dividendole tra piu connessioni,
+     * salvando la durata di ognuna
+     * @param factory factory che apre le connessioni al db
+     * @param queries query da eseguire
+     * @param parallelism numero massimo di connessioni
+     * @param timings mappa in cui salvare la durata in millisecondi delle query eseguite
+     * @return le query fallite e quelle non eseguite perchè nessuna connessione è riuscita ad aprirsi, nell'ordine di queries
+     */
+    static List<String> executeParallel(ConnectionFactory factory, List<String> queries, int parallelism, Map<String, Long> timings) {
+        Queue<String> pending = new ConcurrentLinkedQueue<>(queries);
+        Set<String> failed = ConcurrentHashMap.newKeySet();
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < Math.min(parallelism, queries.size()); i++) {
+            Thread worker = new Thread(() -> {
+                try (Connection c = factory.open(); Statement stmt = c.createStatement()) {
+                    for (String q = pending.poll(); q != null; q = pending.poll()) {
+                        long start = System.nanoTime();
+                        try {
+                            stmt.execute(q);
+                            long millis = (System.nanoTime() - start) / 1_000_000;
+                            timings.put(q, millis);
+                            System.out.println(q + " (" + millis + " ms)");
+                        }
+                        catch (SQLException e) {
+                            failed.add(q);
+                            System.out.println("ERRORE NELLA QUERY " + q + ": " + e.getMessage());
+                        }
+                    }
+                }
+                catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }, "ddl-" + i);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread w : workers) {
+            try { w.join(); }
+            catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        }
+        failed.addAll(pending);
+        return queries.stream().filter(failed::contains).collect(Collectors.toList());
+    }
+
+    /**
+     * ritorna tutte le query del piano, una per riga
+     */
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        levels.forEach(l -> l.forEach(q -> out.append(q).append('\n')));
+        alters.forEach(q -> out.append(q).append('\n'));
+        constraints.forEach(q -> out.append(q).append('\n'));
+        triggers.forEach(q -> out.append(q).append('\n'));
+        return out.toString();
+    }
+
+    /**
+     * metodo privato che calcola il livello di una tabella, cioè la lunghezza del cammino piu lungo di foreign key
+     * che parte da lei; le tabelle referenziate che non fanno parte dello schema e i vincoli su se stessa non contano
+     */
+    private static int level(Table t, Map<String, Table> byName, Map<String, Integer> depth, List<String> visiting) {
+        Integer known = depth.get(t.getName());
+        if (known != null)
+            return known;
+        if (visiting.contains(t.getName()))
+            throw new IllegalArgumentException("le foreign key formano un ciclo sulla tabella " + t.getName());
+        visiting.add(t.getName());
+        int level = 0;
+        for (Vincolo v : t.getVincoli()) {
+            Table referenced = byName.get(v.getReferencedTable());
+            if (referenced != null && referenced != t)
+                level = Math.max(level, level(referenced, byName, depth, visiting) + 1);
+        }
+        visiting.remove(t.getName());
+        depth.put(t.getName(), level);
+        return level;
+    }
+}
@@ -0,0 +1,196 @@
+package db;
+
+import data.VarChar;
+import utility.Order;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Classe che rappresenta un indice secondario su una o piu colonne di una tabella.
+ * Ogni colonna ha il proprio ordinamento e, per i varchar, la lunghezza del prefisso indicizzato.
+ * Un indice che contiene tutte le colonne lette da una query è coprente: mySQL risponde alla query senza leggere le righe.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class Index {
+
+    /**
+     * Classe builder interna alla classe Index
+     */
+    public static class IndexBuilder {
+        /**
+         * Campi della classe builder:
+         */
+        private String name;
+
+        private boolean unique;
+
+        private List<String> columns = new ArrayList<>();
+        private List<Order> orders = new ArrayList<>();
+        private List<Integer> prefixes = new ArrayList<>();
+
+        /**
+         * costruttore della classe builder
+         * @param name nome dell'indice, univoco nella tabella
+         */
+        public IndexBuilder(String name) { this.name = name.toLowerCase(); }
+
+        /**
+         * metodo che aggiunge una colonna in ordine crescente
+         * @param attribute nome dell'attributo
+         * @return l'istanza dell'index builder
+         */
+        public IndexBuilder addColumn(String attribute) { return addColumn(attribute, Order.ASSCENDING); }
+
+        /**
+         * metodo che aggiunge una colonna
+         * @param attribute nome dell'attributo
+         * @param order ordinamento della colonna nell'indice
+         * @return l'istanza dell'index builder
+         */
+        public IndexBuilder addColumn(String attribute, Order order) { return addColumn(attribute, order, 0); }
+
+        /**
+         * metodo che aggiunge una colonna varchar di cui indicizzare solo i primi caratteri
+         * @param attribute nome dell'attributo
+         * @param order ordinamento della colonna nell'indice
+         * @param prefixLength numero di caratteri indicizzati, 0 per indicizzare tutto il valore
+         * @return l'istanza dell'index builder
+         * @throws IllegalArgumentException se la colonna è gia nell'indice o il prefisso è negativo
+         */
+        public IndexBuilder addColumn(String attribute, Order order, int prefixLength) throws IllegalArgumentException {
+            attribute = attribute.toLowerCase();
+            if (columns.contains(attribute))
+                throw new IllegalArgumentException("la colonna " + attribute + " e' gia presente nell'indice " + name);
+            if (prefixLength < 0)
+                throw new IllegalArgumentException("la lunghezza del prefisso non puo essere negativa");
+            columns.add(attribute);
+            orders.add(order);
+            prefixes.add(prefixLength);
+            return this;
+        }
+
+        /**
+         * metodo che rende l'indice univoco
+         * @return l'istanza dell'index builder
+         */
+        public IndexBuilder setUnique() {
+            unique = true;
+            return this;
+        }
+
+        /**
+         * metodo terminale build
+         * @return l'istanza dell'indice
+         * @throws IllegalArgumentException se l'indice non ha colonne
+         */
+        public Index build() throws IllegalArgumentException {
+            if (columns.isEmpty())
+                throw new IllegalArgumentException("l'indice " + name + " deve avere almeno una colonna");
+            return new Index(this);
+        }
+    }
+
+    /**
+     * Campi della classe:
+     */
+    private String name;
+
+    private boolean unique;
+
+    private List<String> columns;
+    private List<Order> orders;
+    private List<Integer> prefixes;
+
+    /**
+     * Costruttore della classe che salva i parametri del builder
+     * @param builder prende in input l'istanza dell'index builder
+     */
+    private Index(IndexBuilder builder) {
+        name = builder.name;
+        unique = builder.unique;
+        columns = List.copyOf(builder.columns);
+        orders = List.copyOf(builder.orders);
+        prefixes = List.copyOf(builder.prefixes);
+    }
+
+    /**
+     * metodo getter
+     * @return il nome dell'indice
+     */
+    public String getName() { return name; }
+
+    /**
+     * metodo getter
+     * @return nomi delle colonne nell'ordine dell'indice
+     */
+    public List<String> getColumns() { return Collections.unmodifiableList(columns); }
+
+    /**
+     * @return true se l'indice è univoco, false altrimenti
+     */
+    public boolean isUnique() { return unique; }
+
+    /**
+     * metodo che controlla se l'indice puo essere usato per cercare le colonne date, cioè se le colonne
+     * sono un prefisso delle colonne dell'indice indicizzate per intero
+     * @param columns colonne cercate, nell'ordine
+     * @return true se le colonne sono le prime colonne dell'indice, false altrimenti
+     */
+    public boolean startsWith(List<String> columns) {
+        if (columns.size() > this.columns.size())
+            return false;
+        for (int i = 0; i < columns.size(); i++)
+            if (!this.columns.get(i).equals(columns.get(i)) || prefixes.get(i) > 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * metodo che controlla che le colonne esistano nella tabella e che i prefissi siano validi
+     * @param tableName nome della tabella
+     * @param attributes attributi della tabella
+     * @throws IllegalArgumentException se una colonna non esiste o un prefisso non è valido
+     */
+    void check(String tableName, List<Attribute> attributes) throws IllegalArgumentException {
+        for (int i = 0; i < columns.size(); i++) {
+            String column = columns.get(i);
+            Attribute a = attributes.stream()
+                    .filter(x -> x.getName().equals(column))
+                    .reduce((x, y) -> x)
+                    .orElseThrow(() -> new IllegalArgumentException("la colonna " + column + " dell'indice " + name
+                            + " non e' presente nella tabella " + tableName));
+            int prefix = prefixes.get(i);
+            if (prefix > 0 && !(a.getType() instanceof VarChar))
+                throw new IllegalArgumentException("il prefisso dell'indice " + name + " si puo usare solo su colonne varchar");
+            if (prefix > a.getType().getMaxLength())
+                throw new IllegalArgumentException("il prefisso della colonna " + column + " supera la lunghezza del varchar");
+        }
+    }
+
+    /**
+     * metodo getter
+     * @return la definizione dell'indice da inserire nella create table
+     */
+    public String getQuery() {
+        StringBuilder out = new StringBuilder(unique ? "unique index " : "index ").append(name).append(" (");
+        for (int i = 0; i < columns.size(); i++) {
+            out.append(columns.get(i));
+            if (prefixes.get(i) > 0)
+                out.append("(").append(prefixes.get(i)).append(")");
+            out.append(" ").append(orders.get(i).toString().toUpperCase()).append(", ");
+        }
+        out.delete(out.length() - 2, out.length());
+        return out.append(") visible").toString();
+    }
+
+    /**
+     * @param tableName nome della tabella
+     * @return la query per creare l'indice su una tabella esistente
+     */
+    public String getCreateQuery(String tableName) { return "create " + getQuery().replaceFirst(" \\(", " on " + tableName + " ("); }
+
+    @Override
+    public String toString() { return getQuery(); }
+}
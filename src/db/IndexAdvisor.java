@@ -0,0 +1,267 @@
+package db;
+
+import query.Select;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Classe che propone gli indici mancanti analizzando le clausole where, group by e order by di un insieme di select.
+ * Ogni attributo usato in un filtro con una costante, in un join, in un confronto con una subquery, in un group by
+ * o in un order by riceve un punteggio; vengono proposti gli attributi che non sono gia indicizzati, cioè che non
+ * sono la prima chiave primaria, unique, indici o attributi vincolati da una foreign key (che mySQL indicizza da solo).
+ * Quando una query filtra una tabella su piu attributi con delle costanti viene proposto un indice composto su quegli
+ * attributi, che sostituisce l'indice sul solo primo attributo.
+ * Le condizioni vengono lette con un tokenizer semplice, sufficiente per le query costruite con Select.QueryBuilder:
+ * gli attributi non qualificati vengono assegnati alla tabella della query che li contiene, se è una sola.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class IndexAdvisor {
+
+    /**
+     * punteggi dei diversi utilizzi di un attributo
+     */
+    private static final int FILTER = 3;
+    private static final int JOIN = 2;
+    private static final int SUBQUERY = 2;
+    private static final int GROUP_BY = 1;
+    private static final int ORDER_BY = 1;
+    private static final int COMPOSITE = 2;
+
+    private static final Pattern TOKEN = Pattern.compile(
+            "\\s*(\"[^\"]*\"|'[^']*'|[a-z_][a-z0-9_]*(?:\\.[a-z_][a-z0-9_]*)?|\\d+(?:\\.\\d+)?|<>|!=|<=|>=|[=<>(),*+\\-/?])");
+
+    private static final Set<String> COMPARISONS = Set.of("=", "<>", "!=", "<", ">", "<=", ">=", "like", "between");
+
+    private static final Set<String> KEYWORDS = Set.of("select", "from", "where", "and", "or", "not", "in", "exists",
+            "as", "distinct", "group", "by", "order", "having", "limit", "union", "all", "is", "null", "like", "between",
+            "asc", "desc", "true", "false", "on", "join", "inner", "left", "right");
+
+    /**
+     * Campi della classe:
+     */
+    private Map<String, Table> tables = new HashMap<>();
+
+    private Map<String, IndexSuggestion> uses = new LinkedHashMap<>();
+
+    /**
+     * costruttore della classe
+     * @param tables tabelle dello schema su cui vengono eseguite le query
+     */
+    public IndexAdvisor(Collection<Table> tables) { tables.forEach(t -> this.tables.put(t.getName(), t)); }
+
+    /**
+     * metodo che analizza una select, comprese le query combinate con union, intersect ed except
+     * @param name nome della query, usato per spiegare le proposte
+     * @param query select da analizzare
+     * @return l'istanza dell'advisor
+     */
+    public IndexAdvisor analyze(String name, Select query) {
+        //alias visibili nella query: le tabelle del from e quelle delle subquery nelle condizioni
+        Map<String, String> aliases = new HashMap<>();
+        query.getTableNames().forEach(t -> addAlias(aliases, t));
+        List<String> where = tokenize(query.getWhere());
+        addSubqueryAliases(aliases, where);
+        addSubqueryAliases(aliases, tokenize(query.getHaving()));
+
+        analyzeConditions(name, aliases, where);
+        for (String g : query.getGroupBys())
+            use(aliases, g, GROUP_BY, name + " group by");
+        if (query.getOrderBy() != null)
+            use(aliases, query.getOrderBy(), ORDER_BY, name + " order by");
+
+        query.getCombinedQueries().forEach(q -> analyze(name, q));
+        return this;
+    }
+
+    /**
+     * metodo che analizza tutte le select di una mappa di query, ignorando le altre query
+     * @param queries mappa dal nome alla query
+     * @return l'istanza dell'advisor
+     */
+    public IndexAdvisor analyzeAll(Map<String, ? extends query.Query> queries) {
+        queries.forEach((name, q) -> {
+            if (q instanceof Select)
+                analyze(name, (Select)q);
+        });
+        return this;
+    }
+
+    /**
+     * metodo che ritorna gli indici proposti, dal piu utile
+     * @return lista degli indici proposti sugli attributi non ancora indicizzati
+     */
+    public List<IndexSuggestion> suggest() {
+        List<IndexSuggestion> missing = uses.values().stream()
+                .filter(s -> !isIndexed(tables.get(s.getTableName()), s.getColumns()))
+                .collect(Collectors.toList());
+        //un indice composto serve anche per le ricerche sul suo primo attributo
+        return missing.stream()
+                .filter(s -> s.getColumns().size() > 1 || missing.stream().noneMatch(c -> c.getColumns().size() > 1
+                        && c.getTableName().equals(s.getTableName()) && c.getColumns().get(0).equals(s.getColumns().get(0))))
+                .sorted(Comparator.comparingInt(IndexSuggestion::getScore).reversed())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * metodo che aggiunge al table builder gli indici proposti per la sua tabella
+     * @param builder table builder della tabella
+     * @return gli indici aggiunti
+     */
+    public List<IndexSuggestion> apply(Table.TableBuilder builder) {
+        List<IndexSuggestion> applied = suggest().stream()
+                .filter(s -> s.getTableName().equals(builder.getName()))
+                .collect(Collectors.toList());
+        applied.forEach(s -> builder.addIndex(s.toIndex()));
+        return applied;
+    }
+
+    //-----------------------------------------------METODI PRIVATI-------------------------------------------------//
+
+    /**
+     * degli attributi sono gia indicizzati se sono le prime colonne di un indice della tabella;
+     * un attributo da solo è indicizzato anche se è la prima colonna della primary key, se è unique o ha un indice,
+     * oppure se è vincolato da una foreign key
+     */
+    private static boolean isIndexed(Table t, List<String> columns) {
+        if (t.getIndexes().stream().anyMatch(i -> i.startsWith(columns)))
+            return true;
+        if (columns.size() > 1)
+            return false;
+        String attribute = columns.get(0);
+        Attribute a = t.getAttribute(attribute);
+        Attribute firstKey = t.getAttributes().stream().filter(Attribute::isKey).findFirst().orElse(null);
+        return a == firstKey || a.isUnique() || a.hasIndex()
+                || t.getVincoli().stream().anyMatch(v -> v.getVincolato().equals(attribute));
+    }
+
+    private void analyzeConditions(String name, Map<String, String> aliases, List<String> tokens) {
+        //attributi filtrati con una costante in ogni tabella, per proporre gli indici composti
+        Map<String, List<String>> filters = new LinkedHashMap<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if (!isColumn(tokens, i))
+                continue;
+            String next = i + 1 < tokens.size() ? tokens.get(i + 1) : "";
+            String after = i + 2 < tokens.size() ? tokens.get(i + 2) : "";
+            String previous = i > 0 ? tokens.get(i - 1) : "";
+            String before = i > 1 ? tokens.get(i - 2) : "";
+
+            if (COMPARISONS.contains(next) && isColumn(tokens, i + 2)) {
+                use(aliases, token, JOIN, name + " join");
+                use(aliases, after, JOIN, name + " join");
+            }
+            else if ((COMPARISONS.contains(next) && isLiteral(after)) || (COMPARISONS.contains(previous) && isLiteral(before))) {
+                IndexSuggestion s = use(aliases, token, FILTER, name + " where");
+                if (s != null) {
+                    List<String> columns = filters.computeIfAbsent(s.getTableName(), k -> new ArrayList<>());
+                    if (!columns.contains(s.getColumns().get(0)))
+                        columns.add(s.getColumns().get(0));
+                }
+            }
+            else if (next.equals("in") || (next.equals("not") && after.equals("in")) || (COMPARISONS.contains(next) && after.equals("(")))
+                use(aliases, token, SUBQUERY, name + " subquery");
+        }
+
+        for (Map.Entry<String, List<String>> f : filters.entrySet())
+            if (f.getValue().size() > 1)
+                uses.computeIfAbsent(f.getKey() + "." + f.getValue(), k -> new IndexSuggestion(f.getKey(), f.getValue()))
+                        .addUse(COMPOSITE * FILTER * f.getValue().size(), name + " where composto");
+    }
+
+    private static boolean isColumn(List<String> tokens, int i) {
+        if (i >= tokens.size())
+            return false;
+        String token = tokens.get(i);
+        char c = token.charAt(0);
+        if (!Character.isLetter(c) && c != '_' || KEYWORDS.contains(token))
+            return false;
+        //un identificatore seguito da una parentesi è una funzione
+        return i + 1 >= tokens.size() || !tokens.get(i + 1).equals("(");
+    }
+
+    private static boolean isLiteral(String token) {
+        return !token.isEmpty() && (token.charAt(0) == '"' || token.charAt(0) == '\'' || Character.isDigit(token.charAt(0))
+                || token.equals("?") || token.equals("null") || token.equals("true") || token.equals("false"));
+    }
+
+    /**
+     * registra un utilizzo dell'attributo, risolvendo l'alias o cercando l'unica tabella che ha l'attributo
+     * @return la proposta dell'indice sull'attributo, null se l'attributo non è stato trovato
+     */
+    private IndexSuggestion use(Map<String, String> aliases, String column, int points, String reason) {
+        String tableName = null;
+        String attribute = column;
+        int dot = column.indexOf('.');
+        if (dot >= 0) {
+            tableName = aliases.get(column.substring(0, dot));
+            attribute = column.substring(dot + 1);
+        }
+        else {
+            final String a = attribute;
+            List<String> candidates = aliases.values().stream()
+                    .distinct()
+                    .filter(t -> tables.containsKey(t) && tables.get(t).checkAttribute(a))
+                    .collect(Collectors.toList());
+            if (candidates.size() == 1)
+                tableName = candidates.get(0);
+        }
+        Table t = tableName == null ? null : tables.get(tableName);
+        if (t == null || !t.checkAttribute(attribute))
+            return null;
+        IndexSuggestion s = uses.computeIfAbsent(tableName + "." + List.of(attribute), k -> new IndexSuggestion(t.getName(), List.of(column.substring(dot + 1))));
+        s.addUse(points, reason);
+        return s;
+    }
+
+    private static void addAlias(Map<String, String> aliases, String table) {
+        String[] parts = table.trim().split("\\s+(as\\s+)?");
+        aliases.put(parts[0], parts[0]);
+        if (parts.length > 1)
+            aliases.put(parts[parts.length - 1], parts[0]);
+    }
+
+    /**
+     * aggiunge gli alias delle liste from che compaiono nelle subquery delle condizioni
+     */
+    private static void addSubqueryAliases(Map<String, String> aliases, List<String> tokens) {
+        for (int i = 0; i < tokens.size(); i++) {
+            if (!tokens.get(i).equals("from"))
+                continue;
+            StringBuilder table = new StringBuilder();
+            for (i++; i < tokens.size(); i++) {
+                String token = tokens.get(i);
+                if (token.equals(",") || (KEYWORDS.contains(token) && !token.equals("as")) || token.equals(")")) {
+                    if (table.length() > 0)
+                        addAlias(aliases, table.toString());
+                    table.setLength(0);
+                    if (!token.equals(","))
+                        break;
+                }
+                else
+                    table.append(token).append(' ');
+            }
+            if (table.length() > 0)
+                addAlias(aliases, table.toString());
+        }
+    }
+
+    private static List<String> tokenize(String conditions) {
+        List<String> tokens = new ArrayList<>();
+        if (conditions == null)
+            return tokens;
+        Matcher m = TOKEN.matcher(conditions.toLowerCase());
+        while (m.find())
+            tokens.add(m.group(1));
+        return tokens;
+    }
+}
@@ -0,0 +1,89 @@
+package db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Classe che rappresenta un indice proposto dall'IndexAdvisor su uno o piu attributi di una tabella,
+ * con il punteggio che ne misura l'utilità e i motivi per cui è stato proposto
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class IndexSuggestion {
+    /**
+     * Campi della classe:
+     */
+    private String tableName;
+
+    private List<String> columns;
+
+    private int score;
+
+    private List<String> reasons = new ArrayList<>();
+
+    /**
+     * costruttore della classe, utilizzato dall'IndexAdvisor
+     * @param tableName nome della tabella
+     * @param columns nomi degli attributi da indicizzare, nell'ordine dell'indice
+     */
+    IndexSuggestion(String tableName, List<String> columns) {
+        this.tableName = tableName;
+        this.columns = List.copyOf(columns);
+    }
+
+    /**
+     * metodo che aggiunge un utilizzo dell'attributo in una query
+     * @param points punteggio dell'utilizzo
+     * @param reason descrizione dell'utilizzo
+     */
+    void addUse(int points, String reason) {
+        score += points;
+        if (!reasons.contains(reason))
+            reasons.add(reason);
+    }
+
+    /**
+     * metodo getter
+     * @return il nome della tabella
+     */
+    public String getTableName() { return tableName; }
+
+    /**
+     * metodo getter
+     * @return i nomi degli attributi da indicizzare, nell'ordine dell'indice
+     */
+    public List<String> getColumns() { return columns; }
+
+    /**
+     * metodo getter
+     * @return punteggio dell'indice, piu è alto piu l'indice è utile
+     */
+    public int getScore() { return score; }
+
+    /**
+     * metodo getter
+     * @return motivi per cui l'indice è stato proposto
+     */
+    public List<String> getReasons() { return Collections.unmodifiableList(reasons); }
+
+    /**
+     * metodo che ritorna l'indice proposto, chiamato con i nomi delle colonne separati da _
+     * @return l'indice da aggiungere al table builder
+     */
+    public Index toIndex() {
+        Index.IndexBuilder builder = new Index.IndexBuilder(String.join("_", columns));
+        columns.forEach(builder::addColumn);
+        return builder.build();
+    }
+
+    /**
+     * metodo che ritorna la query per creare l'indice su un db esistente
+     * @return la query di create index
+     */
+    public String getQuery() { return toIndex().getCreateQuery(tableName); }
+
+    @Override
+    public String toString() {
+        return tableName + " (" + String.join(", ", columns) + ") punteggio " + score + ": " + String.join(", ", reasons);
+    }
+}
@@ -0,0 +1,108 @@
+package db;
+
+import java.util.List;
+
+/**
+ * Classe che rappresenta un vincolo non rispettato dai dati caricati durante una sessione di bulk load:
+ * righe orfane di una foreign key, cioè che referenziano un valore assente nella tabella referenziata,
+ * oppure valori ripetuti di un attributo unique
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class IntegrityViolation {
+
+    /**
+     * Tipi di vincolo controllati
+     */
+    public enum Type {
+        FOREIGN_KEY,
+        UNIQUE
+    }
+
+    /**
+     * Campi della classe:
+     */
+    private Type type;
+
+    private String tableName;
+    private String attribute;
+
+    /**
+     * tabella e attributo referenziati, null per gli attributi unique
+     */
+    private String referencedTable;
+    private String foreignKey;
+
+    private long rows;
+
+    private List<String> samples;
+
+    /**
+     * costruttore della classe
+     * @param type tipo del vincolo non rispettato
+     * @param tableName nome della tabella con le righe errate
+     * @param attribute attributo vincolato o unique, gli attributi di un indice unique separati da virgole
+     * @param referencedTable tabella referenziata, null per gli attributi unique
+     * @param foreignKey attributo referenziato, null per gli attributi unique
+     * @param rows numero di righe errate
+     * @param samples alcuni dei valori errati
+     */
+    IntegrityViolation(Type type, String tableName, String attribute, String referencedTable, String foreignKey,
+                       long rows, List<String> samples) {
+        this.type = type;
+        this.tableName = tableName;
+        this.attribute = attribute;
+        this.referencedTable = referencedTable;
+        this.foreignKey = foreignKey;
+        this.rows = rows;
+        this.samples = List.copyOf(samples);
+    }
+
+    /**
+     * metodo getter
+     * @return il tipo del vincolo non rispettato
+     */
+    public Type getType() { return type; }
+
+    /**
+     * metodo getter
+     * @return il nome della tabella con le righe errate
+     */
+    public String getTableName() { return tableName; }
+
+    /**
+     * metodo getter
+     * @return l'attributo vincolato o unique
+     */
+    public String getAttribute() { return attribute; }
+
+    /**
+     * metodo getter
+     * @return la tabella referenziata, null per gli attributi unique
+     */
+    public String getReferencedTable() { return referencedTable; }
+
+    /**
+     * metodo getter
+     * @return l'attributo referenziato, null per gli attributi unique
+     */
+    public String getForeignKey() { return foreignKey; }
+
+    /**
+     * metodo getter
+     * @return il numero di righe orfane, o di righe con un valore ripetuto
+     */
+    public long getRows() { return rows; }
+
+    /**
+     * metodo getter
+     * @return alcuni dei valori orfani o ripetuti
+     */
+    public List<String> getSamples() { return samples; }
+
+    @Override
+    public String toString() {
+        if (type == Type.FOREIGN_KEY)
+            return tableName + "." + attribute + " -> " + referencedTable + "." + foreignKey + ": " + rows + " righe orfane, ad esempio " + samples;
+        return tableName + "." + attribute + " unique: " + rows + " righe con valori ripetuti, ad esempio " + samples;
+    }
+}
@@ -0,0 +1,229 @@
+package db;
+
+import data.Date;
+import data.DateTime;
+import data.Int;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Classe che rappresenta il partizionamento di una tabella: RANGE su un attributo intero o data,
+ * oppure HASH (solo su interi) o KEY su un attributo con un numero fissato di partizioni.
+ * mySQL impone che l'attributo di partizionamento faccia parte di ogni chiave univoca e che una tabella
+ * partizionata non abbia foreign key e non sia referenziata da foreign key: questi vincoli vengono
+ * controllati dal TableBuilder e dal DatabaseBuilder.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class Partition {
+
+    /**
+     * Tipi di partizionamento
+     */
+    public enum Type {
+        RANGE,
+        HASH,
+        KEY
+    }
+
+    /**
+     * numero massimo di partizioni di una tabella in mySQL
+     */
+    private static final int MAX_PARTITIONS = 8192;
+
+    /**
+     * Classe builder interna alla classe Partition per il partizionamento RANGE
+     */
+    public static class PartitionBuilder {
+        /**
+         * Campi della classe builder:
+         */
+        private String attribute;
+
+        private List<String> names = new ArrayList<>();
+        private List<String> bounds = new ArrayList<>();
+
+        /**
+         * costruttore della classe builder
+         * @param attribute nome dell'attributo su cui partizionare
+         */
+        private PartitionBuilder(String attribute) { this.attribute = attribute.toLowerCase(); }
+
+        /**
+         * metodo che aggiunge una partizione con i valori minori del limite e maggiori o uguali al limite precedente
+         * @param name nome della partizione
+         * @param lessThan limite superiore escluso, un intero o una data nel formato yyyy-mm-dd
+         * @return l'istanza del partition builder
+         * @throws IllegalArgumentException se è gia stata aggiunta la partizione maxvalue
+         */
+        public PartitionBuilder addRange(String name, String lessThan) throws IllegalArgumentException {
+            if (bounds.contains(null))
+                throw new IllegalArgumentException("la partizione maxvalue deve essere l'ultima");
+            names.add(name.toLowerCase());
+            bounds.add(lessThan);
+            return this;
+        }
+
+        /**
+         * metodo che aggiunge l'ultima partizione, con tutti i valori maggiori o uguali all'ultimo limite
+         * @param name nome della partizione
+         * @return l'istanza del partition builder
+         */
+        public PartitionBuilder addMaxValue(String name) {
+            if (bounds.contains(null))
+                throw new IllegalArgumentException("la partizione maxvalue deve essere l'ultima");
+            names.add(name.toLowerCase());
+            bounds.add(null);
+            return this;
+        }
+
+        /**
+         * metodo terminale build
+         * @return l'istanza del partizionamento
+         * @throws IllegalArgumentException se non è stata aggiunta nessuna partizione o i nomi non sono univoci
+         */
+        public Partition build() throws IllegalArgumentException {
+            if (names.isEmpty())
+                throw new IllegalArgumentException("il partizionamento range richiede almeno una partizione");
+            if (names.stream().distinct().count() != names.size())
+                throw new IllegalArgumentException("i nomi delle partizioni non sono univoci");
+            return new Partition(Type.RANGE, attribute, names.size(), names, bounds);
+        }
+    }
+
+    /**
+     * Campi della classe:
+     */
+    private Type type;
+
+    private String attribute;
+
+    private int partitions;
+
+    private List<String> names;
+    private List<String> bounds;
+
+    private Partition(Type type, String attribute, int partitions, List<String> names, List<String> bounds) {
+        if (partitions <= 0 || partitions > MAX_PARTITIONS)
+            throw new IllegalArgumentException("il numero di partizioni deve essere compreso tra 1 e " + MAX_PARTITIONS);
+        this.type = type;
+        this.attribute = attribute;
+        this.partitions = partitions;
+        this.names = List.copyOf(names);
+        this.bounds = new ArrayList<>(bounds);
+    }
+
+    /**
+     * @param attribute nome dell'attributo intero o data su cui partizionare
+     * @return il builder del partizionamento range
+     */
+    public static PartitionBuilder range(String attribute) { return new PartitionBuilder(attribute); }
+
+    /**
+     * @param attribute nome dell'attributo intero su cui partizionare
+     * @param partitions numero di partizioni
+     * @return il partizionamento hash
+     */
+    public static Partition hash(String attribute, int partitions) {
+        return new Partition(Type.HASH, attribute.toLowerCase(), partitions, List.of(), List.of());
+    }
+
+    /**
+     * @param attribute nome dell'attributo su cui partizionare
+     * @param partitions numero di partizioni
+     * @return il partizionamento key
+     */
+    public static Partition key(String attribute, int partitions) {
+        return new Partition(Type.KEY, attribute.toLowerCase(), partitions, List.of(), List.of());
+    }
+
+    /**
+     * metodo getter
+     * @return il tipo di partizionamento
+     */
+    public Type getType() { return type; }
+
+    /**
+     * metodo getter
+     * @return il nome dell'attributo di partizionamento
+     */
+    public String getAttribute() { return attribute; }
+
+    /**
+     * metodo getter
+     * @return il numero di partizioni
+     */
+    public int getPartitions() { return partitions; }
+
+    /**
+     * metodo che controlla che il partizionamento sia compatibile con gli attributi e i vincoli della tabella
+     * @param tableName nome della tabella
+     * @param attributes attributi della tabella
+     * @param vincoli vincoli della tabella
+     * @throws IllegalArgumentException se il partizionamento non rispetta le regole di mySQL
+     */
+    void check(String tableName, List<Attribute> attributes, List<Vincolo> vincoli) throws IllegalArgumentException {
+        Attribute a = attributes.stream()
+                .filter(x -> x.getName().equals(attribute))
+                .reduce((x, y) -> x)
+                .orElseThrow(() -> new IllegalArgumentException("l'attributo di partizionamento " + attribute
+                        + " non e' presente nella tabella " + tableName));
+        //l'attributo deve far parte della primary key e di ogni altra chiave univoca
+        if (!a.isKey())
+            throw new IllegalArgumentException("l'attributo di partizionamento " + attribute + " deve far parte della primary key");
+        if (attributes.stream().anyMatch(x -> x.isUnique() && x != a))
+            throw new IllegalArgumentException("la tabella partizionata " + tableName + " non puo avere attributi unique "
+                    + "che non contengono l'attributo di partizionamento");
+        if (!vincoli.isEmpty())
+            throw new IllegalArgumentException("la tabella partizionata " + tableName + " non puo avere foreign key");
+
+        boolean integer = a.getType() instanceof Int;
+        boolean date = a.getType() instanceof Date || a.getType() instanceof DateTime;
+        if (type == Type.HASH && !integer)
+            throw new IllegalArgumentException("il partizionamento hash richiede un attributo intero, usa il partizionamento key");
+        if (type == Type.RANGE) {
+            if (!integer && !date)
+                throw new IllegalArgumentException("il partizionamento range richiede un attributo intero o data");
+            //i limiti devono essere strettamente crescenti
+            for (int i = 1; i < bounds.size(); i++) {
+                String previous = bounds.get(i - 1);
+                String current = bounds.get(i);
+                if (current == null)
+                    continue;
+                int cmp;
+                try {
+                    cmp = integer ? Long.compare(Long.parseLong(previous), Long.parseLong(current)) : previous.compareTo(current);
+                }
+                catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("i limiti del partizionamento su " + attribute + " devono essere interi");
+                }
+                if (cmp >= 0)
+                    throw new IllegalArgumentException("i limiti delle partizioni devono essere strettamente crescenti");
+            }
+        }
+    }
+
+    /**
+     * metodo che ritorna la clausola di partizionamento da aggiungere alla create table
+     * @param a attributo di partizionamento
+     * @return la clausola partition by
+     */
+    String getQuery(Attribute a) {
+        if (type == Type.HASH)
+            return "partition by hash (" + attribute + ") partitions " + partitions;
+        if (type == Type.KEY)
+            return "partition by key (" + attribute + ") partitions " + partitions;
+
+        //le date non sono espressioni intere: usiamo range columns, che confronta direttamente i valori
+        boolean integer = a.getType() instanceof Int;
+        StringBuilder out = new StringBuilder(integer ? "partition by range (" : "partition by range columns (")
+                .append(attribute).append(") (");
+        for (int i = 0; i < names.size(); i++) {
+            String bound = bounds.get(i);
+            out.append("partition ").append(names.get(i)).append(" values less than (")
+                    .append(bound == null ? "maxvalue" : integer ? bound : "\"" + bound + "\"").append("), ");
+        }
+        out.delete(out.length() - 2, out.length());
+        return out.append(")").toString();
+    }
+}
@@ -5,6 +5,9 @@ import query.Query;
 import query.Select;
 import utility.Order;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public class QueryMHW
 {
     public static Query OP1 = new Select.QueryBuilder("arma.tipo", "count(*)")
@@ -51,7 +54,7 @@ public class QueryMHW
             .addTable("clima_regione")
             .addTable("status_clima")
             .addWhere("incontro.missione = missione.id and missione.regione = clima_regione.regione and " +
-                    "clima_regione.clima in (select clima from status_clima) and mostro not in (select distinct mostro " +
+                    "clima_regione.clima in (select clima from status_clima) and incontro.mostro not in (select distinct mostro " +
                     "from incontro, missione, clima_regione, status_clima where incontro.missione = missione.id and " +
                     "missione.regione = clima_regione.regione and clima_regione.clima not in (select clima " +
                     "from status_clima))")
@@ -136,4 +139,17 @@ public class QueryMHW
                     "incontro.mostro = \"aarhiuyyunlttqjxfrmc\"")
             .build();
 
+    /**
+     * metodo che ritorna tutte le operazioni, ad esempio per eseguirle nel WorkloadDriver
+     * @return mappa ordinata dal nome dell'operazione (OP1...OP15) alla query
+     */
+    public static Map<String, Query> operations()
+    {
+        Query[] ops = { OP1, OP2, OP3, OP4, OP5, OP6, OP7, OP8, OP9, OP10, OP11, OP12, OP13, OP14, OP15 };
+        Map<String, Query> out = new LinkedHashMap<>();
+        for (int i = 0; i < ops.length; i++)
+            out.put("OP" + (i + 1), ops[i]);
+        return out;
+    }
+
 }
@@ -0,0 +1,347 @@
+package db;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Cache lato client dei risultati delle select eseguite dal Database.
+ * Un risultato è identificato dall'sql della query, con gli spazi normalizzati, e dai valori dei segnaposto.
+ * La cache tiene al massimo un numero fissato di risultati, eliminando quello usato meno di recente,
+ * e scarta i risultati piu vecchi della durata massima. Ogni risultato ricorda le tabelle lette dalla query:
+ * quando il Database esegue una insert, update o delete su una di queste tabelle il risultato viene invalidato.
+ * Le scritture fatte da altre connessioni non sono viste dalla cache, quindi la durata massima limita
+ * quanto puo essere vecchio un risultato.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class ResultCache {
+
+    /**
+     * Risultato di una select letto dal result set: nomi e larghezze delle colonne e valori delle righe
+     */
+    static final class Result {
+        private final String[] columns;
+        private final int[] widths;
+        private final List<String[]> rows;
+
+        private Result(String[] columns, int[] widths, List<String[]> rows) {
+            this.columns = columns;
+            this.widths = widths;
+            this.rows = rows;
+        }
+
+        String[] getColumns() { return columns; }
+
+        /**
+         * @return larghezza di ogni colonna, la massima tra la dimensione dichiarata e il nome
+         */
+        int[] getWidths() { return widths; }
+
+        List<String[]> getRows() { return rows; }
+    }
+
+    /**
+     * Chiave della cache: sql normalizzato e valori dei segnaposto
+     */
+    private static final class Key {
+        private final String sql;
+        private final List<Object> parameters;
+
+        private Key(String sql, List<Object> parameters) {
+            this.sql = normalize(sql);
+            this.parameters = parameters;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key)o;
+            return sql.equals(k.sql) && parameters.equals(k.parameters);
+        }
+
+        @Override
+        public int hashCode() { return Objects.hash(sql, parameters); }
+    }
+
+    private static final class Entry {
+        private final Result result;
+        private final Set<String> tables;
+        private final long expires;
+
+        private Entry(Result result, Set<String> tables, long expires) {
+            this.result = result;
+            this.tables = tables;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * parole che chiudono l'elenco delle tabelle di una from
+     */
+    private static final Set<String> KEYWORDS = Set.of("where", "group", "order", "having", "limit", "on", "using",
+            "join", "inner", "left", "right", "cross", "natural", "straight_join", "union", "intersect", "except", "for");
+
+    /**
+     * Campi della classe:
+     */
+    private final int maxEntries;
+
+    private final long ttl;
+
+    /**
+     * risultati in cache, dal meno usato di recente
+     */
+    private final Map<Key, Entry> entries;
+
+    /**
+     * contatore delle invalidazioni: un risultato letto prima di un'invalidazione non viene salvato,
+     * perchè potrebbe non contenere la scrittura che l'ha causata
+     */
+    private long version;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * costruttore della classe
+     * @param maxEntries numero massimo di risultati in cache
+     * @param ttlMillis durata massima di un risultato in millisecondi
+     * @throws IllegalArgumentException se il numero di risultati o la durata non sono positivi
+     */
+    ResultCache(int maxEntries, long ttlMillis) throws IllegalArgumentException {
+        if (maxEntries <= 0 || ttlMillis <= 0)
+            throw new IllegalArgumentException("il numero di risultati e la durata della cache devono essere positivi");
+        this.maxEntries = maxEntries;
+        ttl = ttlMillis * 1_000_000;
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() <= ResultCache.this.maxEntries)
+                    return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * metodo che legge tutte le righe di un result set
+     * @param out result set della select
+     * @return il risultato letto
+     * @throws SQLException se non è stato possibile leggere il risultato
+     */
+    static Result read(ResultSet out) throws SQLException {
+        ResultSetMetaData metaData = out.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        String[] columns = new String[columnCount];
+        int[] widths = new int[columnCount];
+        for (int i = 1; i <= columnCount; i++) {
+            columns[i-1] = metaData.getColumnName(i);
+            widths[i-1] = Math.max(metaData.getColumnDisplaySize(i), columns[i-1].length());
+        }
+        List<String[]> rows = new ArrayList<>();
+        while (out.next()) {
+            String[] row = new String[columnCount];
+            for (int i = 1; i <= columnCount; i++)
+                row[i-1] = out.getString(i);
+            rows.add(row);
+        }
+        return new Result(columns, widths, Collections.unmodifiableList(rows));
+    }
+
+    /**
+     * metodo che cerca il risultato di una query, scartandolo se è scaduto
+     * @param sql sql della query
+     * @param parameters valori dei segnaposto
+     * @return il risultato in cache, null se non c'è
+     */
+    synchronized Result get(String sql, List<Object> parameters) {
+        Key key = new Key(sql, parameters);
+        Entry e = entries.get(key);
+        if (e != null && e.expires - System.nanoTime() <= 0) {
+            entries.remove(key);
+            evictions++;
+            e = null;
+        }
+        if (e == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return e.result;
+    }
+
+    /**
+     * metodo getter
+     * @return il numero di invalidazioni fatte finora, da leggere prima di eseguire la query da salvare
+     */
+    synchronized long getVersion() { return version; }
+
+    /**
+     * metodo che salva il risultato di una query
+     * @param sql sql della query
+     * @param parameters valori dei segnaposto
+     * @param result risultato della query
+     * @param version valore di getVersion letto prima di eseguire la query;
+     *                se nel frattempo c'è stata un'invalidazione il risultato non viene salvato
+     */
+    synchronized void put(String sql, List<Object> parameters, Result result, long version) {
+        if (version != this.version)
+            return;
+        entries.put(new Key(sql, parameters), new Entry(result, readTables(sql), System.nanoTime() + ttl));
+    }
+
+    /**
+     * metodo che invalida i risultati delle query che leggono almeno una delle tabelle
+     * @param tables nomi delle tabelle modificate
+     */
+    synchronized void invalidate(Collection<String> tables) {
+        version++;
+        entries.values().removeIf(e -> {
+            boolean stale = tables.stream().anyMatch(e.tables::contains);
+            if (stale)
+                invalidations++;
+            return stale;
+        });
+    }
+
+    /**
+     * svuota la cache
+     */
+    public synchronized void clear() {
+        version++;
+        invalidations += entries.size();
+        entries.clear();
+    }
+
+    /**
+     * metodo getter
+     * @return numero di risultati in cache
+     */
+    public synchronized int size() { return entries.size(); }
+
+    /**
+     * metodo getter
+     * @return numero di query il cui risultato è stato letto dalla cache
+     */
+    public synchronized long getHits() { return hits; }
+
+    /**
+     * metodo getter
+     * @return numero di query il cui risultato non era in cache
+     */
+    public synchronized long getMisses() { return misses; }
+
+    /**
+     * metodo getter
+     * @return numero di risultati eliminati perchè la cache era piena o perchè scaduti
+     */
+    public synchronized long getEvictions() { return evictions; }
+
+    /**
+     * metodo getter
+     * @return numero di risultati invalidati da una scrittura
+     */
+    public synchronized long getInvalidations() { return invalidations; }
+
+    @Override
+    public synchronized String toString() {
+        return "result cache: " + entries.size() + "/" + maxEntries + " risultati, " + hits + " hit, " + misses + " miss, " +
+                evictions + " eliminati, " + invalidations + " invalidati";
+    }
+
+    /**
+     * metodo che ritorna le tabelle lette da una select, comprese quelle delle subquery e delle query combinate:
+     * sono i nomi che seguono una from o una join, separati da virgole ed eventualmente seguiti da un alias
+     * @param sql sql della select
+     * @return nomi delle tabelle lette
+     */
+    static Set<String> readTables(String sql) {
+        List<String> tokens = tokenize(sql);
+        Set<String> tables = new LinkedHashSet<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            if (!tokens.get(i).equals("from") && !tokens.get(i).equals("join"))
+                continue;
+            while (++i < tokens.size() && !tokens.get(i).equals("(")) {
+                String table = tokens.get(i);
+                tables.add(table.substring(table.lastIndexOf('.') + 1));
+                //saltiamo l'alias
+                if (i + 1 < tokens.size() && tokens.get(i + 1).equals("as"))
+                    i += 2;
+                else if (i + 1 < tokens.size() && isIdentifier(tokens.get(i + 1)))
+                    i++;
+                if (i + 1 >= tokens.size() || !tokens.get(i + 1).equals(","))
+                    break;
+                i++;
+            }
+        }
+        return tables;
+    }
+
+    //-----------------------------------------------METODI PRIVATI-------------------------------------------------//
+
+    /**
+     * metodo privato che riduce ad uno spazio le sequenze di spazi fuori dalle stringhe
+     */
+    private static String normalize(String sql) {
+        StringBuilder out = new StringBuilder(sql.length());
+        char quote = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote == 0 && Character.isWhitespace(c)) {
+                if (out.length() > 0 && out.charAt(out.length() - 1) != ' ')
+                    out.append(' ');
+                continue;
+            }
+            if (quote == 0 && (c == '"' || c == '\''))
+                quote = c;
+            else if (c == quote)
+                quote = 0;
+            out.append(c);
+        }
+        int end = out.length();
+        return end > 0 && out.charAt(end - 1) == ' ' ? out.substring(0, end - 1) : out.toString();
+    }
+
+    /**
+     * metodo privato che divide l'sql in parole minuscole e simboli, saltando le stringhe
+     */
+    private static List<String> tokenize(String sql) {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '"' || c == '\'') {
+                int end = sql.indexOf(c, i + 1);
+                i = end < 0 ? sql.length() : end;
+                tokens.add("?");
+            }
+            else if (Character.isLetterOrDigit(c) || c == '_' || c == '`') {
+                int start = i;
+                while (i + 1 < sql.length() && (Character.isLetterOrDigit(sql.charAt(i + 1)) || "_.`".indexOf(sql.charAt(i + 1)) >= 0))
+                    i++;
+                tokens.add(sql.substring(start, i + 1).replace("`", "").toLowerCase());
+            }
+            else if (!Character.isWhitespace(c))
+                tokens.add(String.valueOf(c));
+        }
+        return tokens;
+    }
+
+    private static boolean isIdentifier(String token) {
+        return !KEYWORDS.contains(token) && (Character.isLetter(token.charAt(0)) || token.charAt(0) == '_');
+    }
+}
@@ -0,0 +1,56 @@
+package db;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Classe che rappresenta uno schema validato, caricato da file con lo SchemaLoader:
+ * le tabelle, nell'ordine in cui vanno create, e i trigger.
+ * Si aggiunge ad un database con DatabaseBuilder.addSchema
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class Schema {
+    /**
+     * Campi della classe:
+     */
+    private List<Table> tables;
+
+    private List<Trigger> triggers;
+
+    /**
+     * costruttore della classe, utilizzato dallo SchemaLoader dopo aver validato lo schema
+     * @param tables tabelle dello schema
+     * @param triggers trigger dello schema
+     */
+    Schema(List<Table> tables, List<Trigger> triggers) {
+        this.tables = List.copyOf(tables);
+        this.triggers = List.copyOf(triggers);
+    }
+
+    /**
+     * metodo getter
+     * @return le tabelle dello schema
+     */
+    public List<Table> getTables() { return tables; }
+
+    /**
+     * metodo getter
+     * @return i trigger dello schema
+     */
+    public List<Trigger> getTriggers() { return triggers; }
+
+    /**
+     * metodo getter
+     * @param tableName nome di una tabella
+     * @return la tabella con quel nome, null se non fa parte dello schema
+     */
+    public Table getTable(String tableName) {
+        return tables.stream()
+                .filter(t -> t.getName().equals(tableName))
+                .findFirst()
+                .orElse(null);
+    }
+
+    @Override
+    public String toString() { return tables.size() + " tabelle, " + triggers.size() + " trigger"; }
+}
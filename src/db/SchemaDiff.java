@@ -0,0 +1,185 @@
+package db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Classe che confronta lo schema descritto da tabelle e trigger con quello gia presente nel db,
+ * letto da information_schema con una query per ogni vista (tabelle, colonne, indici, foreign key e trigger),
+ * e calcola solo le query necessarie ad aggiornarlo: le create table delle tabelle mancanti, le alter table che
+ * aggiungono o modificano colonne, indici e foreign key, e le create trigger dei trigger mancanti.
+ * Il confronto non cancella mai nulla: tabelle e colonne presenti solo nel db, o primary key diverse,
+ * vengono segnalate come differenze ma non modificate. I trigger e gli indici sono confrontati solo per nome.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class SchemaDiff {
+    /**
+     * Campi della classe:
+     */
+    private static final String TABLES = "select table_name from information_schema.tables where table_schema = ?";
+    private static final String COLUMNS = "select table_name, column_name, column_type, is_nullable, column_key "
+            + "from information_schema.columns where table_schema = ?";
+    private static final String INDEXES = "select distinct table_name, index_name from information_schema.statistics where table_schema = ?";
+    private static final String FOREIGN_KEYS = "select table_name, constraint_name from information_schema.table_constraints "
+            + "where table_schema = ? and constraint_type = 'FOREIGN KEY'";
+    private static final String TRIGGERS = "select trigger_name from information_schema.triggers where trigger_schema = ?";
+
+    private List<Table> missingTables = new ArrayList<>();
+    private List<Trigger> missingTriggers = new ArrayList<>();
+
+    private List<String> alters = new ArrayList<>();
+    private List<String> constraints = new ArrayList<>();
+
+    private List<String> drift = new ArrayList<>();
+
+    /**
+     * costruttore privato, le istanze si ottengono con il metodo compare
+     */
+    private SchemaDiff() {}
+
+    /**
+     * metodo che legge lo schema presente nel db e lo confronta con le tabelle e i trigger
+     * @param conn connessione al db
+     * @param schema nome del database
+     * @param tables tabelle dello schema desiderato
+     * @param triggers trigger dello schema desiderato
+     * @return le differenze tra i due schemi
+     * @throws SQLException se non è stato possibile leggere information_schema
+     */
+    public static SchemaDiff compare(Connection conn, String schema, List<Table> tables, List<Trigger> triggers) throws SQLException {
+        Set<String> existingTables = new HashSet<>();
+        Map<String, Map<String, String[]>> columns = new HashMap<>();
+        Map<String, Set<String>> indexes = new HashMap<>();
+        Map<String, Set<String>> foreignKeys = new HashMap<>();
+        Set<String> existingTriggers = new HashSet<>();
+
+        read(conn, TABLES, schema, r -> existingTables.add(r.getString(1).toLowerCase()));
+        read(conn, COLUMNS, schema, r -> columns.computeIfAbsent(r.getString(1).toLowerCase(), k -> new HashMap<>())
+                .put(r.getString(2).toLowerCase(), new String[] { r.getString(3), r.getString(4), r.getString(5) }));
+        read(conn, INDEXES, schema, r -> indexes.computeIfAbsent(r.getString(1).toLowerCase(), k -> new HashSet<>()).add(r.getString(2).toLowerCase()));
+        read(conn, FOREIGN_KEYS, schema, r -> foreignKeys.computeIfAbsent(r.getString(1).toLowerCase(), k -> new HashSet<>()).add(r.getString(2).toLowerCase()));
+        read(conn, TRIGGERS, schema, r -> existingTriggers.add(r.getString(1).toLowerCase()));
+
+        SchemaDiff diff = new SchemaDiff();
+        Set<String> names = new HashSet<>();
+        for (Table t : tables) {
+            names.add(t.getName());
+            if (existingTables.contains(t.getName()))
+                diff.compareTable(t, columns.getOrDefault(t.getName(), Map.of()), indexes.getOrDefault(t.getName(), Set.of()),
+                        foreignKeys.getOrDefault(t.getName(), Set.of()));
+            else
+                diff.missingTables.add(t);
+        }
+        existingTables.stream()
+                .filter(t -> !names.contains(t))
+                .sorted()
+                .forEach(t -> diff.drift.add("la tabella " + t + " e' presente solo nel db"));
+        triggers.stream()
+                .filter(t -> !existingTriggers.contains(t.getTriggerName().toLowerCase()))
+                .forEach(diff.missingTriggers::add);
+        return diff;
+    }
+
+    /**
+     * metodo getter
+     * @return le tabelle da creare
+     */
+    public List<Table> getMissingTables() { return Collections.unmodifiableList(missingTables); }
+
+    /**
+     * metodo getter
+     * @return le differenze che il confronto non corregge, ad esempio le colonne presenti solo nel db
+     */
+    public List<String> getDrift() { return Collections.unmodifiableList(drift); }
+
+    /**
+     * metodo che ritorna il piano con le sole query necessarie ad aggiornare lo schema
+     * @param deferred true se gli indici non unique e le foreign key delle tabelle da creare verranno aggiunti dopo il caricamento
+     * @return il piano da eseguire, vuoto se lo schema è gia aggiornato
+     */
+    public DdlPlan toPlan(boolean deferred) { return new DdlPlan(missingTables, missingTriggers, deferred, alters, constraints); }
+
+    //-----------------------------------------------METODI PRIVATI-------------------------------------------------//
+
+    /**
+     * Funzione che legge una riga del risultato di una query su information_schema
+     */
+    @FunctionalInterface
+    private interface RowReader {
+        void read(ResultSet row) throws SQLException;
+    }
+
+    private static void read(Connection conn, String query, String schema, RowReader reader) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setString(1, schema);
+            try (ResultSet out = stmt.executeQuery()) {
+                while (out.next())
+                    reader.read(out);
+            }
+        }
+    }
+
+    /**
+     * metodo privato che confronta una tabella gia presente nel db, raccogliendo le modifiche in una sola alter table
+     * per le colonne e gli indici e in una sola per le foreign key
+     */
+    private void compareTable(Table t, Map<String, String[]> columns, Set<String> indexes, Set<String> foreignKeys) {
+        List<String> changes = new ArrayList<>();
+        for (Attribute a : t.getAttributes()) {
+            String[] column = columns.get(a.getName());
+            if (column == null)
+                changes.add("add column " + a.getQuery());
+            else if (!normalize(column[0]).equals(normalize(a.getType().toString())) || column[1].equals("YES") == a.isNotNull())
+                changes.add("modify column " + a.getQuery());
+        }
+        Set<String> keys = t.getAttributes().stream().filter(Attribute::isKey).map(Attribute::getName).collect(Collectors.toSet());
+        Set<String> primary = columns.entrySet().stream()
+                .filter(c -> c.getValue()[2].equals("PRI"))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+        if (!primary.isEmpty() && !primary.equals(keys))
+            drift.add("la primary key di " + t.getName() + " nel db e' " + primary + " invece di " + keys);
+        columns.keySet().stream()
+                .filter(c -> t.getAttribute(c) == null)
+                .sorted()
+                .forEach(c -> drift.add("la colonna " + t.getName() + "." + c + " e' presente solo nel db"));
+
+        t.getIndexDefinitions().forEach((name, definition) -> {
+            if (!indexes.contains(name))
+                changes.add("add " + definition);
+        });
+        if (!changes.isEmpty())
+            alters.add("alter table " + t.getName() + " " + String.join(", ", changes));
+
+        List<String> added = new ArrayList<>();
+        t.getForeignKeyDefinitions().forEach((name, definition) -> {
+            if (!foreignKeys.contains(name))
+                added.add("add " + definition);
+        });
+        if (!added.isEmpty())
+            constraints.add("alter table " + t.getName() + " " + String.join(", ", added));
+    }
+
+    /**
+     * metodo privato che riporta un tipo alla forma di information_schema.columns.column_type,
+     * senza spazi, con le stringhe degli enum tra apici e senza la larghezza di visualizzazione degli interi
+     */
+    private static String normalize(String type) {
+        return type.toLowerCase()
+                .replaceAll("\\s+", "")
+                .replace('"', '\'')
+                .replace("unsigned", "")
+                .replace("zerofill", "")
+                .replaceAll("^(tinyint|smallint|mediumint|int|bigint)\\(\\d+\\)", "$1");
+    }
+}
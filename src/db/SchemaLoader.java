@@ -0,0 +1,516 @@
+package db;
+
+import data.DataType;
+import data.Date;
+import data.DateTime;
+import data.Decimal;
+import data.Enum;
+import data.Int;
+import data.Time;
+import data.VarChar;
+import exceptions.ForeignKeyException;
+import utility.Action;
+import utility.Distribution;
+import utility.Granularity;
+import utility.JsonReader;
+import utility.Order;
+import utility.Timing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Classe che carica uno schema da un file json nel formato:
+ * <pre>
+ * {
+ *   "tables": [
+ *     { "name": "elemento",
+ *       "attributes": [ { "name": "nome", "type": "varchar", "length": 20, "key": true } ] },
+ *     { "name": "arma",
+ *       "attributes": [
+ *         { "name": "nome", "type": "varchar", "length": 20, "key": true },
+ *         { "name": "tipo", "type": "enum", "values": ["spada", "arco"], "weights": [3, 1] },
+ *         { "name": "attacco", "type": "int", "digits": 4, "notNull": true, "distribution": { "type": "zipf", "exponent": 1.2 } },
+ *         { "name": "elemento", "type": "varchar", "length": 20, "index": true }
+ *       ],
+ *       "indexes": [ { "name": "tipo_attacco", "columns": [ "tipo", { "name": "attacco", "order": "desc" } ] } ],
+ *       "vincoli": [ { "attribute": "elemento", "references": "elemento", "foreignKey": "nome" } ],
+ *       "partition": { "type": "key", "attribute": "nome", "partitions": 4 } }
+ *   ],
+ *   "triggers": [
+ *     { "name": "t", "table": "arma", "timing": "before", "action": "insert", "granularity": "row", "body": "..." }
+ *   ]
+ * }
+ * </pre>
+ * Le tabelle vanno scritte dopo quelle che referenziano. Il file viene letto in streaming una tabella alla volta
+ * e ogni tabella viene costruita con i builder, che ne controllano gli attributi; alla fine vengono controllati
+ * i vincoli tra le tabelle.
+ * Se è impostata una cartella di cache, lo schema validato viene salvato in un file binario compatto il cui nome è
+ * l'hash sha-256 del json: i caricamenti successivi dello stesso json leggono il file binario, senza fare il parsing
+ * del json e senza ricontrollare i vincoli tra le tabelle, e il database costruito con lo schema non li ricontrolla nel build.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class SchemaLoader {
+
+    /**
+     * intestazione e versione del file di cache, da incrementare quando il formato cambia
+     */
+    private static final int MAGIC = 0x44425343;
+    private static final int VERSION = 1;
+
+    /**
+     * tipi dei valori salvati nel file di cache
+     */
+    private static final int NULL = 0;
+    private static final int FALSE = 1;
+    private static final int TRUE = 2;
+    private static final int NUMBER = 3;
+    private static final int STRING = 4;
+    private static final int LIST = 5;
+    private static final int MAP = 6;
+
+    private static final Set<String> TABLE_OPTIONS = Set.of("name", "attributes", "indexes", "vincoli", "partition");
+    private static final Set<String> ATTRIBUTE_OPTIONS = Set.of("name", "type", "length", "digits", "precision", "values", "weights",
+            "key", "notNull", "unique", "fill", "autoIncrement", "generated", "index", "distribution");
+    private static final Set<String> INDEX_OPTIONS = Set.of("name", "columns", "unique");
+    private static final Set<String> COLUMN_OPTIONS = Set.of("name", "order", "prefix");
+    private static final Set<String> VINCOLO_OPTIONS = Set.of("attribute", "references", "foreignKey", "distribution");
+    private static final Set<String> PARTITION_OPTIONS = Set.of("type", "attribute", "partitions", "ranges");
+    private static final Set<String> RANGE_OPTIONS = Set.of("name", "lessThan");
+    private static final Set<String> TRIGGER_OPTIONS = Set.of("name", "table", "timing", "action", "granularity", "body");
+    private static final Map<String, Set<String>> DISTRIBUTION_OPTIONS = Map.of(
+            "uniform", Set.of("type"),
+            "zipf", Set.of("type", "exponent"),
+            "normal", Set.of("type", "mean", "stddev"),
+            "hotSet", Set.of("type", "hotFraction", "hotProbability"));
+
+    /**
+     * Campi della classe:
+     */
+    private Path cacheDirectory;
+
+    /**
+     * costruttore della classe senza cache: ogni caricamento fa il parsing e la validazione del json
+     */
+    public SchemaLoader() {}
+
+    /**
+     * costruttore della classe
+     * @param cacheDirectory cartella in cui salvare gli schemi validati
+     */
+    public SchemaLoader(Path cacheDirectory) { this.cacheDirectory = cacheDirectory; }
+
+    /**
+     * metodo che carica uno schema da un file json, o dalla sua cache se il json non è cambiato
+     * @param file percorso del file json
+     * @return lo schema validato
+     * @throws IOException se il file non puo essere letto o non è un json valido
+     * @throws IllegalArgumentException se lo schema contiene proprietà sconosciute o valori non validi
+     * @throws ForeignKeyException se un vincolo non è compatibile con la foreign key che referenzia
+     */
+    public Schema load(Path file) throws IOException, IllegalArgumentException, ForeignKeyException {
+        Path cache = cacheDirectory == null ? null : cacheDirectory.resolve(hash(file) + ".schema");
+        if (cache != null && Files.exists(cache)) {
+            try {
+                return readCache(cache);
+            }
+            catch (IOException e) {
+                System.out.println("ERRORE NELLA LETTURA DELLA CACHE " + cache + ", LO SCHEMA VIENE RILETTO DAL JSON");
+            }
+        }
+
+        //le definizioni delle tabelle servono solo per scrivere la cache
+        List<Object> tableDefinitions = new ArrayList<>();
+        List<Object> triggerDefinitions = new ArrayList<>();
+        Map<String, Table> tables = new LinkedHashMap<>();
+        try (JsonReader in = new JsonReader(new InputStreamReader(new BufferedInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            in.beginObject();
+            while (in.hasNext()) {
+                String property = in.nextName();
+                switch (property) {
+                    case "tables":
+                        //ogni tabella viene costruita appena letta, senza tenere in memoria l'albero dell'intero file
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            Object definition = in.nextValue();
+                            addTable(tables, definition);
+                            if (cache != null)
+                                tableDefinitions.add(definition);
+                        }
+                        in.endArray();
+                        break;
+                    case "triggers":
+                        in.beginArray();
+                        while (in.hasNext())
+                            triggerDefinitions.add(in.nextValue());
+                        in.endArray();
+                        break;
+                    default: throw new IllegalArgumentException("proprietà sconosciuta nello schema: " + property);
+                }
+            }
+            in.endObject();
+        }
+        Schema schema = new Schema(new ArrayList<>(tables.values()), buildTriggers(tables, triggerDefinitions));
+        Database.checkVincoli(schema.getTables(), t -> true);
+
+        if (cache != null)
+            writeCache(cache, tableDefinitions, triggerDefinitions);
+        return schema;
+    }
+
+    //-----------------------------------------------METODI PRIVATI-------------------------------------------------//
+
+    /**
+     * metodo privato che calcola l'hash sha-256 del file leggendolo in streaming
+     */
+    private static String hash(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("sha-256 non disponibile", e);
+        }
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) >= 0);
+        }
+        StringBuilder out = new StringBuilder();
+        for (byte b : digest.digest())
+            out.append(String.format("%02x", b));
+        return out.toString();
+    }
+
+    /**
+     * metodo privato che legge lo schema dal file di cache, costruendo le tabelle senza ricontrollare i vincoli
+     */
+    private static Schema readCache(Path cache) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cache)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("il file " + cache + " non e' una cache di schema valida");
+            Map<String, Table> tables = new LinkedHashMap<>();
+            for (Object definition : (List<?>)readValue(in))
+                addTable(tables, definition);
+            List<Trigger> triggers = buildTriggers(tables, (List<?>)readValue(in));
+            return new Schema(new ArrayList<>(tables.values()), triggers);
+        }
+        catch (ClassCastException | IllegalArgumentException e) {
+            throw new IOException("il file " + cache + " non e' una cache di schema valida", e);
+        }
+    }
+
+    /**
+     * metodo privato che scrive la cache su un file temporaneo e poi la sposta, così una cache interrotta non viene mai letta
+     */
+    private static void writeCache(Path cache, List<Object> tables, List<Object> triggers) throws IOException {
+        Files.createDirectories(cache.getParent());
+        Path tmp = cache.resolveSibling(cache.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeValue(out, tables);
+            writeValue(out, triggers);
+        }
+        Files.move(tmp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null)
+            out.writeByte(NULL);
+        else if (value instanceof Boolean)
+            out.writeByte((Boolean)value ? TRUE : FALSE);
+        else if (value instanceof Double) {
+            out.writeByte(NUMBER);
+            out.writeDouble((Double)value);
+        }
+        else if (value instanceof String) {
+            out.writeByte(STRING);
+            out.writeUTF((String)value);
+        }
+        else if (value instanceof List) {
+            out.writeByte(LIST);
+            out.writeInt(((List<?>)value).size());
+            for (Object o : (List<?>)value)
+                writeValue(out, o);
+        }
+        else {
+            Map<?, ?> map = (Map<?, ?>)value;
+            out.writeByte(MAP);
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> e : map.entrySet()) {
+                out.writeUTF((String)e.getKey());
+                writeValue(out, e.getValue());
+            }
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        int type = in.readByte();
+        switch (type) {
+            case NULL: return null;
+            case FALSE: return false;
+            case TRUE: return true;
+            case NUMBER: return in.readDouble();
+            case STRING: return in.readUTF();
+            case LIST:
+                int size = in.readInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++)
+                    list.add(readValue(in));
+                return list;
+            case MAP:
+                Map<String, Object> map = new LinkedHashMap<>();
+                for (int i = in.readInt(); i > 0; i--)
+                    map.put(in.readUTF(), readValue(in));
+                return map;
+            default: throw new IOException("tipo di valore sconosciuto nella cache: " + type);
+        }
+    }
+
+    /**
+     * metodo privato che costruisce una tabella dalla sua definizione e la aggiunge a quelle gia costruite
+     */
+    private static void addTable(Map<String, Table> tables, Object value) {
+        Map<String, Object> definition = map(value, "la tabella");
+        String name = string(definition, "name", "la tabella");
+        checkOptions(definition, TABLE_OPTIONS, "la tabella " + name);
+        if (tables.containsKey(name.toLowerCase()))
+            throw new IllegalArgumentException("la tabella " + name + " e' definita piu volte");
+
+        Table.TableBuilder builder = new Table.TableBuilder(name);
+        List<String> indexed = new ArrayList<>();
+        for (Object a : list(definition.get("attributes"), "gli attributi della tabella " + name)) {
+            Map<String, Object> attribute = map(a, "un attributo della tabella " + name);
+            builder.addAttribute(buildAttribute(attribute, name));
+            if (flag(attribute, "index"))
+                indexed.add(string(attribute, "name", "un attributo della tabella " + name));
+        }
+        indexed.forEach(builder::addIndex);
+
+        for (Object i : list(definition.get("indexes"), "gli indici della tabella " + name))
+            builder.addIndex(buildIndex(map(i, "un indice della tabella " + name), name));
+
+        for (Object v : list(definition.get("vincoli"), "i vincoli della tabella " + name)) {
+            Map<String, Object> vincolo = map(v, "un vincolo della tabella " + name);
+            checkOptions(vincolo, VINCOLO_OPTIONS, "un vincolo della tabella " + name);
+            String referenced = string(vincolo, "references", "un vincolo della tabella " + name);
+            Table table = tables.get(referenced.toLowerCase());
+            if (table == null)
+                throw new IllegalArgumentException("la tabella " + referenced + " referenziata da " + name
+                        + " deve essere definita prima di " + name);
+            Vincolo built = new Vincolo(string(vincolo, "attribute", "un vincolo della tabella " + name).toLowerCase(), table,
+                    string(vincolo, "foreignKey", "un vincolo della tabella " + name).toLowerCase());
+            if (vincolo.containsKey("distribution"))
+                built.setDistribution(buildDistribution(map(vincolo.get("distribution"), "la distribuzione di un vincolo di " + name)));
+            builder.addVincolo(built);
+        }
+
+        if (definition.containsKey("partition"))
+            builder.setPartition(buildPartition(map(definition.get("partition"), "il partizionamento della tabella " + name)));
+
+        Table table = builder.build();
+        tables.put(table.getName(), table);
+    }
+
+    private static Attribute buildAttribute(Map<String, Object> definition, String tableName) {
+        String name = string(definition, "name", "un attributo della tabella " + tableName);
+        String where = "l'attributo " + tableName + "." + name;
+        checkOptions(definition, ATTRIBUTE_OPTIONS, where);
+        Attribute.AttributeBuilder builder = new Attribute.AttributeBuilder(name, buildType(definition, where));
+        if (flag(definition, "key"))
+            builder.addKey();
+        if (flag(definition, "notNull"))
+            builder.addNotNull();
+        if (flag(definition, "unique"))
+            builder.addUnique();
+        if (flag(definition, "fill"))
+            builder.addFill();
+        if (flag(definition, "autoIncrement"))
+            builder.addAutoIncremental();
+        if (flag(definition, "generated"))
+            builder.addGenerated();
+        if (definition.containsKey("distribution"))
+            builder.addDistribution(buildDistribution(map(definition.get("distribution"), "la distribuzione di " + where)));
+        return builder.build();
+    }
+
+    private static DataType buildType(Map<String, Object> definition, String where) {
+        String type = string(definition, "type", where);
+        switch (type.toLowerCase()) {
+            case "int": return definition.containsKey("digits") ? new Int(integer(definition, "digits", where)) : new Int();
+            case "varchar": return new VarChar(integer(definition, "length", where));
+            case "decimal": return new Decimal(integer(definition, "digits", where), integer(definition, "precision", where));
+            case "date": return new Date();
+            case "datetime": return new DateTime();
+            case "time": return new Time();
+            case "enum":
+                List<String> values = new ArrayList<>();
+                list(definition.get("values"), "i valori di " + where).forEach(v -> values.add(text(v)));
+                if (values.isEmpty())
+                    throw new IllegalArgumentException(where + " e' un enum senza valori");
+                if (!definition.containsKey("weights"))
+                    return new Enum(values);
+                List<Object> weights = list(definition.get("weights"), "i pesi di " + where);
+                double[] w = new double[weights.size()];
+                for (int i = 0; i < w.length; i++)
+                    w[i] = number(weights.get(i), "i pesi di " + where);
+                return new Enum(values, w);
+            default: throw new IllegalArgumentException("tipo sconosciuto per " + where + ": " + type);
+        }
+    }
+
+    private static Distribution buildDistribution(Map<String, Object> definition) {
+        String type = string(definition, "type", "la distribuzione");
+        if (DISTRIBUTION_OPTIONS.containsKey(type))
+            checkOptions(definition, DISTRIBUTION_OPTIONS.get(type), "la distribuzione " + type);
+        switch (type) {
+            case "uniform": return Distribution.uniform();
+            case "zipf": return Distribution.zipf(number(definition.get("exponent"), "l'esponente della zipf"));
+            case "normal": return Distribution.normal(number(definition.get("mean"), "la media della normale"),
+                    number(definition.get("stddev"), "la deviazione standard della normale"));
+            case "hotSet": return Distribution.hotSet(number(definition.get("hotFraction"), "la frazione calda dell'hot set"),
+                    number(definition.get("hotProbability"), "la probabilità calda dell'hot set"));
+            default: throw new IllegalArgumentException("distribuzione sconosciuta: " + type);
+        }
+    }
+
+    private static Index buildIndex(Map<String, Object> definition, String tableName) {
+        String name = string(definition, "name", "un indice della tabella " + tableName);
+        checkOptions(definition, INDEX_OPTIONS, "l'indice " + name);
+        Index.IndexBuilder builder = new Index.IndexBuilder(name);
+        for (Object c : list(definition.get("columns"), "le colonne dell'indice " + name)) {
+            if (c instanceof String) {
+                builder.addColumn(((String)c).toLowerCase());
+                continue;
+            }
+            Map<String, Object> column = map(c, "una colonna dell'indice " + name);
+            checkOptions(column, COLUMN_OPTIONS, "una colonna dell'indice " + name);
+            Object direction = column.getOrDefault("order", "asc");
+            if (!(direction instanceof String) || !Set.of("asc", "desc").contains(((String)direction).toLowerCase()))
+                throw new IllegalArgumentException("l'ordine di una colonna dell'indice " + name + " deve essere \"asc\" o \"desc\"");
+            Order order = "desc".equalsIgnoreCase((String)direction) ? Order.DESCENDING : Order.ASSCENDING;
+            int prefix = column.containsKey("prefix") ? integer(column, "prefix", "l'indice " + name) : 0;
+            builder.addColumn(string(column, "name", "una colonna dell'indice " + name).toLowerCase(), order, prefix);
+        }
+        if (flag(definition, "unique"))
+            builder.setUnique();
+        return builder.build();
+    }
+
+    private static Partition buildPartition(Map<String, Object> definition) {
+        String type = string(definition, "type", "il partizionamento");
+        checkOptions(definition, PARTITION_OPTIONS, "il partizionamento");
+        String attribute = string(definition, "attribute", "il partizionamento").toLowerCase();
+        switch (type.toLowerCase()) {
+            case "hash": return Partition.hash(attribute, integer(definition, "partitions", "il partizionamento"));
+            case "key": return Partition.key(attribute, integer(definition, "partitions", "il partizionamento"));
+            case "range":
+                Partition.PartitionBuilder builder = Partition.range(attribute);
+                for (Object r : list(definition.get("ranges"), "gli intervalli del partizionamento")) {
+                    Map<String, Object> range = map(r, "un intervallo del partizionamento");
+                    checkOptions(range, RANGE_OPTIONS, "un intervallo del partizionamento");
+                    String name = string(range, "name", "un intervallo del partizionamento");
+                    if (range.get("lessThan") == null)
+                        builder.addMaxValue(name);
+                    else
+                        builder.addRange(name, text(range.get("lessThan")));
+                }
+                return builder.build();
+            default: throw new IllegalArgumentException("partizionamento sconosciuto: " + type);
+        }
+    }
+
+    private static List<Trigger> buildTriggers(Map<String, Table> tables, List<?> definitions) {
+        List<Trigger> triggers = new ArrayList<>();
+        for (Object value : definitions) {
+            Map<String, Object> definition = map(value, "un trigger");
+            String name = string(definition, "name", "un trigger");
+            checkOptions(definition, TRIGGER_OPTIONS, "il trigger " + name);
+            String tableName = string(definition, "table", "il trigger " + name);
+            Table table = tables.get(tableName.toLowerCase());
+            if (table == null)
+                throw new IllegalArgumentException("il trigger " + name + " e' definito su una tabella inesistente: " + tableName);
+            triggers.add(new Trigger(table, name,
+                    Timing.valueOf(string(definition, "timing", "il trigger " + name).toUpperCase()),
+                    Action.valueOf(string(definition, "action", "il trigger " + name).toUpperCase()),
+                    Granularity.valueOf(string(definition, "granularity", "il trigger " + name).toUpperCase()),
+                    string(definition, "body", "il trigger " + name)));
+        }
+        return triggers;
+    }
+
+    private static void checkOptions(Map<String, Object> definition, Set<String> options, String where) {
+        for (String option : definition.keySet())
+            if (!options.contains(option))
+                throw new IllegalArgumentException("opzione sconosciuta per " + where + ": " + option);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> map(Object value, String what) {
+        if (!(value instanceof Map))
+            throw new IllegalArgumentException(what + " deve essere un oggetto");
+        return (Map<String, Object>)value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> list(Object value, String what) {
+        if (value == null)
+            return List.of();
+        if (!(value instanceof List))
+            throw new IllegalArgumentException(what + " deve essere un array");
+        return (List<Object>)value;
+    }
+
+    private static String string(Map<String, Object> definition, String property, String where) {
+        Object value = definition.get(property);
+        if (!(value instanceof String))
+            throw new IllegalArgumentException("manca la proprietà " + property + " per " + where);
+        return (String)value;
+    }
+
+    private static boolean flag(Map<String, Object> definition, String property) {
+        Object value = definition.get(property);
+        if (value != null && !(value instanceof Boolean))
+            throw new IllegalArgumentException("la proprietà " + property + " deve essere true o false");
+        return Boolean.TRUE.equals(value);
+    }
+
+    private static double number(Object value, String what) {
+        if (!(value instanceof Double))
+            throw new IllegalArgumentException(what + " deve essere un numero");
+        return (Double)value;
+    }
+
+    private static int integer(Map<String, Object> definition, String property, String where) {
+        double d = number(definition.get(property), "la proprietà " + property + " di " + where);
+        if (d != Math.rint(d))
+            throw new IllegalArgumentException("la proprietà " + property + " di " + where + " deve essere un intero");
+        return (int)d;
+    }
+
+    /**
+     * i numeri interi del json vengono letti come double, li riportiamo alla forma senza decimali
+     */
+    private static String text(Object value) {
+        if (value instanceof Double && (Double)value == Math.rint((Double)value))
+            return String.valueOf(((Double)value).longValue());
+        return String.valueOf(value);
+    }
+}
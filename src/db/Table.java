@@ -20,6 +20,10 @@ public class Table {
         private List<Attribute> attributes = new ArrayList<>();
         private List<Vincolo> vincoli = new ArrayList<>();
 
+        private List<Index> indexes = new ArrayList<>();
+
+        private Partition partition;
+
         /**
          * costruttore del table builder
          * @param name prende in input il nome della tabella che si vuole creare
@@ -54,13 +58,73 @@ public class Table {
             return this;
         }
 
+        /**
+         * metodo che aggiunge un indice su un attributo della tabella
+         * @param attribute nome dell'attributo da indicizzare
+         * @return l'istanza del table builder
+         * @throws IllegalArgumentException se l'attributo non è presente nella tabella
+         */
+        public TableBuilder addIndex(String attribute) throws IllegalArgumentException {
+            Attribute a = attributes.stream()
+                    .filter(x -> x.getName().equals(attribute.toLowerCase()))
+                    .reduce((x, y) -> x)
+                    .orElseThrow(() -> new IllegalArgumentException("l'attributo " + attribute + " non e' presente nella tabella"));
+            a.setIndex();
+            return this;
+        }
+
+        /**
+         * metodo che aggiunge un indice secondario su una o piu colonne della tabella
+         * @param index indice da aggiungere
+         * @return l'istanza del table builder
+         * @throws IllegalArgumentException se esiste gia un indice con lo stesso nome
+         */
+        public TableBuilder addIndex(Index index) throws IllegalArgumentException {
+            if (indexes.stream().anyMatch(i -> i.getName().equals(index.getName())))
+                throw new IllegalArgumentException("esiste gia un indice " + index.getName() + " nella tabella " + name);
+            indexes.add(index);
+            return this;
+        }
+
+        /**
+         * metodo che partiziona la tabella
+         * @param partition partizionamento della tabella
+         * @return l'istanza del table builder
+         * @throws IllegalArgumentException se la tabella è gia partizionata
+         */
+        public TableBuilder setPartition(Partition partition) throws IllegalArgumentException {
+            if (this.partition != null)
+                throw new IllegalArgumentException("la tabella " + name + " e' gia partizionata");
+            this.partition = partition;
+            return this;
+        }
+
+        /**
+         * metodo getter
+         * @return il nome della tabella che si sta creando
+         */
+        public String getName() { return name; }
+
         /**
          * metodo terminale build che controlla se è stata inserita la primary key nella tabella
+         * e se l'eventuale partizionamento è compatibile con le chiavi e i vincoli
          * @return ritorna l'istanza della tabella finale creata con il builder.
          */
         public Table build() {
             if (!attributes.stream().anyMatch(x -> x.isKey()))
                 throw new IllegalArgumentException("la tabella " + name + " non ha primary key");
+            indexes.forEach(i -> i.check(name, attributes));
+            //gli indici sugli attributi usano il nome dell'attributo, non possono avere lo stesso nome di un indice composto
+            for (Attribute a : attributes)
+                if ((a.hasIndex() || a.isUnique()) && indexes.stream().anyMatch(i -> i.getName().equals(a.getName())
+                        || i.getName().equals(a.getName() + "_unique")))
+                    throw new IllegalArgumentException("il nome di un indice della tabella " + name + " coincide con quello dell'indice su " + a.getName());
+            if (partition != null) {
+                partition.check(name, attributes, vincoli);
+                if (indexes.stream().anyMatch(i -> i.isUnique() && !i.getColumns().contains(partition.getAttribute())))
+                    throw new IllegalArgumentException("gli indici unique della tabella partizionata " + name
+                            + " devono contenere l'attributo di partizionamento");
+            }
             return new Table(this);
         }
     }
@@ -75,6 +139,10 @@ public class Table {
     private List<Attribute> attributes = new ArrayList<>();
     private List<Vincolo> vincoli = new ArrayList<>();
 
+    private List<Index> indexes = new ArrayList<>();
+
+    private Partition partition;
+
     /**
      * Costruttore della classe Table che salva i parametri costruiti nel table builder
      * @param builder prende in input l'istanza del table builder costruita
@@ -83,6 +151,8 @@ public class Table {
         name = builder.name;
         attributes.addAll(builder.attributes);
         vincoli.addAll(builder.vincoli);
+        indexes.addAll(builder.indexes);
+        partition = builder.partition;
     }
     
     /**
@@ -125,6 +195,18 @@ public class Table {
 	 * @return ritorna una collection di tutti i vincoli salvati per la tabella
 	 */
     public Collection<Vincolo> getVincoli() { return vincoli; }
+
+    /**
+     * metodo getter
+     * @return gli indici secondari su piu colonne della tabella
+     */
+    public List<Index> getIndexes() { return Collections.unmodifiableList(indexes); }
+
+    /**
+     * metodo getter
+     * @return il partizionamento della tabella, null se non è partizionata
+     */
+    public Partition getPartition() { return partition; }
     
     /**
      * metodo terminale build che controlla se c'è piu' di un attributo settato con auto incremental,
@@ -151,7 +233,16 @@ public class Table {
      * metodo getter 
      * @return ritorna la query fatta a stringa che verrà lanciata in mySQL
      */
-    public String getQuery() {
+    public String getQuery() { return getQuery(false); }
+
+    /**
+     * metodo che ritorna la query di creazione della tabella
+     * @param deferred true se gli indici non unique e le foreign key verranno aggiunti dopo il caricamento dei dati
+     * con getIndexQuery e getForeignKeyQuery; la primary key e gli indici unique restano nella create table
+     * perchè servono a scartare le righe duplicate durante il caricamento
+     * @return la query di create table
+     */
+    public String getQuery(boolean deferred) {
     	//inizio a scrivere la query
         StringBuilder out = new StringBuilder(INTRO + name + "  (");   
         //aggiungo gli attributi della tabella nella query
@@ -170,18 +261,84 @@ public class Table {
                 .forEach(x -> out.append("unique index " + x.getName() 
                 + "_unique (" + x.getName() + " ASC) visible, "));
         //aggiungo gli incidici
-        attributes.stream()
-                .filter(x -> x.hasIndex())
-                .forEach(x -> out.append("index " + x.getName()
-                + " (" + x.getName() + " ASC) visible, "));
+        if (!deferred)
+            attributes.stream()
+                    .filter(x -> x.hasIndex())
+                    .forEach(x -> out.append(indexQuery(x) + ", "));
+        //aggiungo gli indici su piu colonne
+        indexes.stream()
+                .filter(x -> !deferred || x.isUnique())
+                .forEach(x -> out.append(x.getQuery() + ", "));
        //controllo se ci sono vincoli e li aggiungo nella query
-        if (!vincoli.isEmpty())
-            vincoli.forEach(x -> out.append("constraint " + name + "_" + x.getVincolato() + " foreign key (" +
-                    x.getVincolato() + ") references " + x.getReferencedTable() + " ("
-                    + x.getForeignKey() + ") on delete cascade on update cascade, "));
+        if (!deferred)
+            vincoli.forEach(x -> out.append(vincoloQuery(x) + ", "));
         out.delete(out.length() - 2, out.length());
+        out.append(")");
+        //aggiungo il partizionamento
+        if (partition != null)
+            out.append(" " + partition.getQuery(getAttribute(partition.getAttribute())));
         //ritorno la query sottoforma di stringa
-        return out.append(")").toString();
+        return out.toString();
+    }
+
+    /**
+     * metodo che ritorna la query che aggiunge alla tabella gli indici non unique lasciati fuori da getQuery(true)
+     * @return la query di alter table, null se la tabella non ha indici da aggiungere
+     */
+    public String getIndexQuery() {
+        List<String> add = new ArrayList<>();
+        attributes.stream()
+                .filter(x -> x.hasIndex())
+                .forEach(x -> add.add("add " + indexQuery(x)));
+        indexes.stream()
+                .filter(x -> !x.isUnique())
+                .forEach(x -> add.add("add " + x.getQuery()));
+        return add.isEmpty() ? null : "alter table " + name + " " + String.join(", ", add);
+    }
+
+    /**
+     * metodo che ritorna la query che aggiunge alla tabella le foreign key lasciate fuori da getQuery(true)
+     * @return la query di alter table, null se la tabella non ha vincoli
+     */
+    public String getForeignKeyQuery() {
+        if (vincoli.isEmpty())
+            return null;
+        return "alter table " + name + " " + vincoli.stream()
+                .map(x -> "add " + vincoloQuery(x))
+                .collect(Collectors.joining(", "));
+    }
+
+    /**
+     * metodo che ritorna gli indici secondari della tabella, unique compresi
+     * @return mappa dal nome dell'indice alla sua definizione, da usare in una create table o dopo un alter table add
+     */
+    Map<String, String> getIndexDefinitions() {
+        Map<String, String> out = new LinkedHashMap<>();
+        attributes.stream()
+                .filter(x -> x.isUnique())
+                .forEach(x -> out.put(x.getName() + "_unique", "unique index " + x.getName() + "_unique (" + x.getName() + " ASC) visible"));
+        attributes.stream()
+                .filter(x -> x.hasIndex())
+                .forEach(x -> out.put(x.getName(), indexQuery(x)));
+        indexes.forEach(x -> out.put(x.getName(), x.getQuery()));
+        return out;
+    }
+
+    /**
+     * metodo che ritorna le foreign key della tabella
+     * @return mappa dal nome del vincolo alla sua definizione, da usare in una create table o dopo un alter table add
+     */
+    Map<String, String> getForeignKeyDefinitions() {
+        Map<String, String> out = new LinkedHashMap<>();
+        vincoli.forEach(x -> out.put(name + "_" + x.getVincolato(), vincoloQuery(x)));
+        return out;
+    }
+
+    private static String indexQuery(Attribute a) { return "index " + a.getName() + " (" + a.getName() + " ASC) visible"; }
+
+    private String vincoloQuery(Vincolo v) {
+        return "constraint " + name + "_" + v.getVincolato() + " foreign key (" + v.getVincolato() + ") references "
+                + v.getReferencedTable() + " (" + v.getForeignKey() + ") on delete cascade on update cascade";
     }
 
     @Override
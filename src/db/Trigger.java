@@ -5,6 +5,11 @@ import utility.Action;
 import utility.Granularity;
 import utility.Timing;
 
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 /**
  * @author Luca Mattei, Valerio Mezzoprete
  */
@@ -15,10 +20,18 @@ public class Trigger extends Query {
      */
     static final String TRIGGER = "create definer = current_user trigger ";
 
+    /**
+     * istruzioni del corpo che scrivono in una tabella, il gruppo 1 è il nome della tabella
+     */
+    private static final Pattern WRITE = Pattern.compile(
+            "\\b(?:insert\\s+(?:ignore\\s+)?into|replace\\s+into|update|delete\\s+from)\\s+`?(\\w+)`?", Pattern.CASE_INSENSITIVE);
+
     private String triggerName;
 
     private Table table;
 
+    private String body;
+
     /**
      * costruttore della classe trigger
      * @param table table al quale il trigger fa riferimento
@@ -30,9 +43,9 @@ public class Trigger extends Query {
     public Trigger(Table table, String triggerName, Timing timing, Action action, Granularity granularity, String body) throws IllegalArgumentException {
         super(TRIGGER + triggerName.toLowerCase() + " " + timing.toString().toLowerCase() + " " + action.toString().toLowerCase() +
                 " on " + table.getName() + " for each " + granularity.toString().toLowerCase() + " begin " + body + " end");
-        body.replace("\n", "");
         this.table = table;
         this.triggerName = triggerName;
+        this.body = body;
     }
 
     /**
@@ -46,4 +59,16 @@ public class Trigger extends Query {
      * @return nome del table
      */
     public String getTableName() { return table.getName(); }
+
+    /**
+     * metodo che ritorna le tabelle in cui scrive il corpo del trigger
+     * @return nomi delle tabelle modificate dalle insert, update e delete del corpo
+     */
+    Set<String> getWrittenTables() {
+        Set<String> written = new LinkedHashSet<>();
+        Matcher m = WRITE.matcher(body);
+        while (m.find())
+            written.add(m.group(1).toLowerCase());
+        return written;
+    }
 }
@@ -1,5 +1,7 @@
 package db;
 
+import utility.Distribution;
+
 public class Vincolo {
 	/**
 	 * Campi della classe:
@@ -8,6 +10,8 @@ public class Vincolo {
     private String referencedTable;
     private String foreignKey;
 
+    private Distribution distribution;
+
     /**
      * Costruttore della classe
      * @param vincolato nome dell'attributo vincolato della tabella su cui si sta inserendo il vincolo
@@ -45,6 +49,23 @@ public class Vincolo {
      */
     public String getForeignKey() { return foreignKey; }
 
+    /**
+     * metodo che imposta la distribuzione con cui scegliere, nel random populate, la foreign key
+     * tra i valori generati nella tabella referenziata
+     * @param distribution distribuzione da utilizzare
+     * @return l'istanza del vincolo
+     */
+    public Vincolo setDistribution(Distribution distribution) {
+        this.distribution = distribution;
+        return this;
+    }
+
+    /**
+     * metodo getter
+     * @return la distribuzione della foreign key, null se è uniforme
+     */
+    public Distribution getDistribution() { return distribution; }
+
     @Override
     public boolean equals(Object o)
     {
@@ -0,0 +1,418 @@
+package population;
+
+import query.Insert;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Classe che separa la generazione delle righe del random populate dalla loro scrittura nel db.
+ * Il thread che genera riempie dei batch e li mette in una coda limitata; i thread writer, ognuno con
+ * la propria connessione, prendono i batch dalla coda e li scrivono, quindi la generazione e la rete lavorano
+ * in parallelo anche con un solo writer. Quando la coda è piena il thread che genera si blocca finchè un writer
+ * non libera un posto, così la memoria occupata non cresce oltre la capacità della coda.
+ * Le righe di un batch con gli stessi attributi vengono inserite con una sola query multi riga;
+ * se la query fallisce (ad esempio per una duplicate entry) le righe vengono reinserite una alla volta.
+ * Se un writer perde la connessione rimette in coda le righe del batch non ancora scritte e termina, lasciando
+ * il lavoro agli altri; quando non resta nessun writer le righe ancora in coda vengono contate come perse e
+ * il writer fallisce con una IllegalStateException.
+ * Per ogni stadio vengono misurati i tempi di attesa e la profondità della coda.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class BatchWriter implements AutoCloseable {
+    /**
+     * batch vuoto che segnala ad un writer che non arriveranno altri batch
+     */
+    private static final List<Insert> END = Collections.emptyList();
+
+    /**
+     * Campi della classe:
+     */
+    private int batchSize;
+
+    private List<Insert> batch;
+
+    /**
+     * batch generati in attesa di essere scritti
+     */
+    private BlockingQueue<List<Insert>> queue;
+
+    private List<Connection> opened = new ArrayList<>();
+
+    private List<Thread> writers = new ArrayList<>();
+
+    /**
+     * funzione chiamata per ogni riga inserita correttamente, null se non serve
+     */
+    private Consumer<Insert> listener;
+
+    private AtomicLong written = new AtomicLong();
+    private AtomicLong duplicates = new AtomicLong();
+
+    /**
+     * righe non scritte per un errore diverso da una duplicate entry o perchè non restava nessun writer
+     */
+    private AtomicLong failed = new AtomicLong();
+
+    /**
+     * writer ancora in esecuzione e writer terminati per un errore
+     */
+    private AtomicInteger alive = new AtomicInteger();
+    private AtomicInteger failedWriters = new AtomicInteger();
+
+    /**
+     * metriche della pipeline: tempo in cui il generatore è bloccato sulla coda piena,
+     * tempo in cui i writer aspettano un batch e tempo in cui scrivono nel db, in nanosecondi
+     */
+    private long producerStall;
+    private AtomicLong writerStall = new AtomicLong();
+    private AtomicLong writerBusy = new AtomicLong();
+    private AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    private boolean closed;
+
+    /**
+     * costruttore della classe con una coda che contiene due batch per writer
+     * @param factory factory che apre le connessioni al db
+     * @param batchSize numero di righe per batch
+     * @param parallelism numero di writer, ognuno con la propria connessione
+     * @throws SQLException se non è stato possibile aprire le connessioni
+     */
+    public BatchWriter(ConnectionFactory factory, int batchSize, int parallelism) throws SQLException {
+        this(factory, batchSize, parallelism, null);
+    }
+
+    /**
+     * costruttore della classe con una coda che contiene due batch per writer
+     * @param factory factory che apre le connessioni al db
+     * @param batchSize numero di righe per batch
+     * @param parallelism numero di writer, ognuno con la propria connessione
+     * @param listener funzione chiamata, anche da thread diversi, per ogni riga inserita correttamente
+     * @throws SQLException se non è stato possibile aprire le connessioni
+     */
+    public BatchWriter(ConnectionFactory factory, int batchSize, int parallelism, Consumer<Insert> listener) throws SQLException {
+        this(factory, batchSize, parallelism, 2 * parallelism, listener);
+    }
+
+    /**
+     * costruttore della classe
+     * @param factory factory che apre le connessioni al db
+     * @param batchSize numero di righe per batch
+     * @param parallelism numero di writer, ognuno con la propria connessione
+     * @param queueCapacity numero massimo di batch in attesa di essere scritti
+     * @param listener funzione chiamata, anche da thread diversi, per ogni riga inserita correttamente
+     * @throws SQLException se non è stato possibile aprire le connessioni
+     */
+    public BatchWriter(ConnectionFactory factory, int batchSize, int parallelism, int queueCapacity,
+                       Consumer<Insert> listener) throws SQLException {
+        if (batchSize <= 0 || parallelism <= 0 || queueCapacity <= 0)
+            throw new IllegalArgumentException("la dimensione dei batch, il parallelismo e la capacità della coda devono essere positivi");
+        this.batchSize = batchSize;
+        this.listener = listener;
+        batch = new ArrayList<>(batchSize);
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        try {
+            for (int i = 0; i < parallelism; i++)
+                opened.add(factory.open());
+        }
+        catch (SQLException e) {
+            closeConnections();
+            throw e;
+        }
+        alive.set(opened.size());
+        for (Connection c : opened) {
+            Thread writer = new Thread(() -> drain(c), "batch-writer-" + writers.size());
+            writer.setDaemon(true);
+            writers.add(writer);
+            writer.start();
+        }
+    }
+
+    /**
+     * aggiunge una riga al batch corrente, mettendo il batch in coda quando è pieno
+     * @param row insert da eseguire
+     */
+    public void write(Insert row) {
+        batch.add(row);
+        if (batch.size() >= batchSize)
+            flush();
+    }
+
+    /**
+     * mette in coda le righe del batch corrente, bloccandosi se la coda è piena
+     * @throws IllegalStateException se tutti i writer sono terminati per un errore
+     */
+    public void flush() {
+        if (batch.isEmpty())
+            return;
+        List<Insert> rows = batch;
+        batch = new ArrayList<>(batchSize);
+        put(rows);
+    }
+
+    /**
+     * metodo getter
+     * @return numero di righe inserite correttamente
+     */
+    public long getWritten() { return written.get(); }
+
+    /**
+     * metodo getter
+     * @return numero di righe non inserite perchè duplicate
+     */
+    public long getDuplicates() { return duplicates.get(); }
+
+    /**
+     * metodo getter
+     * @return numero di righe non inserite per un errore diverso da una duplicate entry
+     *         o perchè non restava nessun writer a scriverle
+     */
+    public long getFailed() { return failed.get(); }
+
+    /**
+     * metodo getter
+     * @return numero di writer terminati perchè la loro connessione non poteva piu scrivere
+     */
+    public int getFailedWriters() { return failedWriters.get(); }
+
+    /**
+     * metodo getter
+     * @return numero di batch attualmente in coda
+     */
+    public int getQueueDepth() { return queue.size(); }
+
+    /**
+     * metodo getter
+     * @return numero massimo di batch che sono stati in coda contemporaneamente
+     */
+    public int getMaxQueueDepth() { return maxQueueDepth.get(); }
+
+    /**
+     * metodo getter
+     * @return millisecondi in cui il generatore è rimasto bloccato sulla coda piena
+     */
+    public long getProducerStallMillis() { return producerStall / 1_000_000; }
+
+    /**
+     * metodo getter
+     * @return millisecondi, sommati su tutti i writer, passati ad aspettare un batch dalla coda vuota
+     */
+    public long getWriterStallMillis() { return writerStall.get() / 1_000_000; }
+
+    /**
+     * metodo getter
+     * @return millisecondi, sommati su tutti i writer, passati a scrivere nel db
+     */
+    public long getWriterBusyMillis() { return writerBusy.get() / 1_000_000; }
+
+    /**
+     * mette in coda le righe rimaste, aspetta che i writer abbiano scritto tutti i batch e chiude le connessioni
+     * @throws IllegalStateException se tutti i writer sono terminati per un errore
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            if (alive.get() > 0)
+                flush();
+            else
+                failed.addAndGet(batch.size());
+            //ogni writer termina quando riceve il batch vuoto, dopo aver scritto quelli precedenti
+            for (int i = 0; i < writers.size() && alive.get() > 0; i++)
+                put(END);
+            for (Thread w : writers) {
+                try { w.join(); }
+                catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+            }
+            //i batch rimessi in coda da un writer fallito dopo che gli altri erano gia terminati non sono stati scritti
+            for (List<Insert> rows : queue)
+                failed.addAndGet(rows.size());
+            queue.clear();
+        }
+        finally {
+            closeConnections();
+        }
+        if (failedWriters.get() == writers.size())
+            throw new IllegalStateException("nessun writer attivo, " + failed.get() + " righe non inserite");
+    }
+
+    /**
+     * metodo privato che mette un batch in coda misurando il tempo di attesa del generatore.
+     * Il batch vuoto di fine non viene messo se tutti i writer sono gia terminati
+     * @throws IllegalStateException se un batch di righe non puo essere scritto perchè non resta nessun writer
+     */
+    private void put(List<Insert> rows) {
+        long start = System.nanoTime();
+        boolean queued = false;
+        try {
+            //controlliamo periodicamente che ci sia ancora un writer a svuotare la coda
+            while (!(queued = queue.offer(rows, 100, TimeUnit.MILLISECONDS))) {
+                if (alive.get() == 0)
+                    break;
+            }
+        }
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        producerStall += System.nanoTime() - start;
+        maxQueueDepth.accumulateAndGet(queue.size(), Math::max);
+        if (rows != END && alive.get() == 0) {
+            //nessuno scriverà piu le righe in coda
+            if (!queued)
+                failed.addAndGet(rows.size());
+            queue.forEach(r -> failed.addAndGet(r.size()));
+            queue.clear();
+            throw new IllegalStateException("nessun writer attivo, " + failed.get() + " righe non inserite");
+        }
+    }
+
+    /**
+     * metodo privato eseguito da ogni writer: prende i batch dalla coda e li scrive finchè non riceve il batch vuoto
+     * @param conn connessione del writer
+     */
+    private void drain(Connection conn) {
+        //righe del batch corrente non ancora scritte
+        Set<Insert> pending = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Insert> rows = null;
+        try (Statement stmt = conn.createStatement()) {
+            while (true) {
+                long start = System.nanoTime();
+                rows = queue.take();
+                long taken = System.nanoTime();
+                writerStall.addAndGet(taken - start);
+                if (rows == END) {
+                    alive.decrementAndGet();
+                    return;
+                }
+                pending.addAll(rows);
+                execute(stmt, rows, pending);
+                writerBusy.addAndGet(System.nanoTime() - taken);
+            }
+        }
+        catch (InterruptedException e) {
+            alive.decrementAndGet();
+            Thread.currentThread().interrupt();
+        }
+        catch (SQLException e) {
+            System.out.println("ERRORE: il writer " + Thread.currentThread().getName() + " non puo piu scrivere nel db");
+            e.printStackTrace();
+            failedWriters.incrementAndGet();
+            List<Insert> left = new ArrayList<>();
+            if (rows != null)
+                rows.stream().filter(pending::contains).forEach(left::add);
+            //se restano altri writer il batch torna in coda, altrimenti le sue righe sono perse
+            if (alive.decrementAndGet() == 0)
+                failed.addAndGet(left.size());
+            else
+                requeue(left);
+        }
+    }
+
+    /**
+     * metodo privato con cui un writer fallito rimette in coda le righe non scritte, aspettando che un altro writer
+     * liberi un posto se la coda è piena; se nel frattempo non resta nessun writer le righe sono contate come perse
+     */
+    private void requeue(List<Insert> left) {
+        try {
+            while (!left.isEmpty() && !queue.offer(left, 100, TimeUnit.MILLISECONDS)) {
+                if (alive.get() == 0) {
+                    failed.addAndGet(left.size());
+                    return;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            failed.addAndGet(left.size());
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * metodo privato che scrive un batch
+     * @param stmt statement della connessione del writer
+     * @param rows righe del batch
+     * @param pending righe del batch non ancora scritte, da cui vengono tolte quelle scritte o scartate
+     * @throws SQLException se la connessione del writer non puo piu scrivere
+     */
+    private void execute(Statement stmt, List<Insert> rows, Set<Insert> pending) throws SQLException {
+        //raggruppiamo le righe che hanno la stessa tabella e gli stessi attributi
+        Map<String, List<Insert>> groups = new LinkedHashMap<>();
+        for (Insert row : rows)
+            groups.computeIfAbsent(row.getTableName() + row.getValues().keySet(), k -> new ArrayList<>()).add(row);
+
+        for (List<Insert> group : groups.values()) {
+            if (group.size() > 1) {
+                try {
+                    stmt.executeUpdate(Insert.multiRow(group));
+                    written.addAndGet(group.size());
+                    group.forEach(pending::remove);
+                    if (listener != null)
+                        group.forEach(listener);
+                    continue;
+                }
+                catch (SQLException e) {
+                    if (isConnectionError(e))
+                        throw e;
+                } //riproviamo una riga alla volta per scartare solo quelle errate
+            }
+            for (Insert row : group) {
+                executeSingle(stmt, row);
+                pending.remove(row);
+            }
+        }
+    }
+
+    /**
+     * metodo privato che esegue una singola insert contando le duplicate entry e le righe scartate per altri errori
+     * @throws SQLException se la connessione del writer non puo piu scrivere
+     */
+    private void executeSingle(Statement stmt, Insert row) throws SQLException {
+        try {
+            stmt.executeUpdate(row.toString());
+            written.incrementAndGet();
+            if (listener != null)
+                listener.accept(row);
+        }
+        catch (SQLException e) {
+            if (isConnectionError(e))
+                throw e;
+            if (e.getMessage() != null && e.getMessage().startsWith("Duplicate"))
+                duplicates.incrementAndGet();
+            else {
+                failed.incrementAndGet();
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @return true se l'errore indica che la connessione non puo piu essere usata (sql state della classe 08)
+     */
+    private static boolean isConnectionError(SQLException e) {
+        return e instanceof SQLNonTransientConnectionException || e instanceof SQLRecoverableException
+                || (e.getSQLState() != null && e.getSQLState().startsWith("08"));
+    }
+
+    private void closeConnections() {
+        for (Connection c : opened) {
+            try { c.close(); }
+            catch (SQLException e) {}
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package population;
+
+import utility.Coppia;
+import utility.Distribution;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Classe che genera le righe delle tabelle figlie e delle tabelle ponte durante il random populate
+ * rispettando un numero massimo di figli per ogni padre.
+ * Sulle tabelle ponte genera coppie (padre, figlio) distinte; sulle tabelle figlie, in cui il figlio
+ * viene generato dal consumer, sceglie solo il padre.
+ * I padri che hanno raggiunto il massimo vengono tolti dall'insieme dei padri disponibili e i figli di
+ * ogni padre vengono estratti con un DistinctSampler, quindi nessuna estrazione viene scartata e
+ * ogni riga costa O(1): generarne n costa O(n) anche quando la capacità sta per esaurirsi.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class BridgeGenerator {
+    /**
+     * Campi della classe:
+     */
+    private List<String> parents;
+    private List<String> children;
+
+    private Distribution parentDistribution;
+    private Distribution childDistribution;
+
+    /**
+     * padri con capacità residua nelle prime active posizioni
+     */
+    private int[] available;
+    private int active;
+
+    /**
+     * righe ancora generabili per ogni padre
+     */
+    private int[] capacity;
+
+    /**
+     * figli non ancora estratti per ogni padre, creati alla prima estrazione
+     */
+    private DistinctSampler[] samplers;
+
+    private boolean started;
+
+    /**
+     * costruttore per le tabelle figlie, in cui il generatore sceglie solo il padre
+     * @param parents valori della chiave dei padri
+     * @param maxPerParent numero massimo di righe per ogni padre
+     * @param parentDistribution distribuzione con cui scegliere i padri
+     */
+    public BridgeGenerator(List<String> parents, int maxPerParent, Distribution parentDistribution) {
+        this(parents, null, maxPerParent, parentDistribution, null);
+    }
+
+    /**
+     * costruttore per le tabelle ponte, in cui il generatore sceglie coppie (padre, figlio) distinte
+     * @param parents valori della chiave dei padri
+     * @param children valori della chiave dei figli
+     * @param maxPerParent numero massimo di figli per ogni padre
+     * @param parentDistribution distribuzione con cui scegliere i padri
+     * @param childDistribution distribuzione con cui scegliere i figli
+     */
+    public BridgeGenerator(List<String> parents, List<String> children, int maxPerParent,
+                           Distribution parentDistribution, Distribution childDistribution) {
+        if (maxPerParent <= 0)
+            throw new IllegalArgumentException("il numero massimo di figli per padre deve essere positivo");
+        this.parents = parents;
+        this.children = children;
+        this.parentDistribution = parentDistribution;
+        this.childDistribution = childDistribution;
+
+        //un padre non puo avere piu figli distinti di quelli esistenti
+        int cap = children == null ? maxPerParent : Math.min(maxPerParent, children.size());
+        int n = cap == 0 ? 0 : parents.size();
+        available = new int[n];
+        capacity = new int[n];
+        for (int i = 0; i < n; i++) {
+            available[i] = i;
+            capacity[i] = cap;
+        }
+        active = n;
+        if (children != null)
+            samplers = new DistinctSampler[n];
+    }
+
+    /**
+     * metodo che toglie dalla capacità di ogni padre le righe gia presenti nella tabella,
+     * da chiamare prima di generare quando si aggiungono righe ad una tabella gia popolata
+     * @param existing numero di righe gia presenti per ogni padre
+     * @return il generatore stesso
+     * @throws IllegalStateException se il generatore ha gia generato delle righe
+     */
+    public BridgeGenerator withExisting(Map<String, Integer> existing) throws IllegalStateException {
+        if (started)
+            throw new IllegalStateException("le righe esistenti vanno contate prima di generare");
+        for (int i = 0; i < active; ) {
+            int p = available[i];
+            capacity[p] = Math.max(0, capacity[p] - existing.getOrDefault(parents.get(p), 0));
+            if (capacity[p] == 0) {
+                //il padre è gia pieno: lo spostiamo dopo l'ultimo disponibile
+                available[i] = available[--active];
+                available[active] = p;
+            }
+            else
+                i++;
+        }
+        return this;
+    }
+
+    /**
+     * metodo che, sulle tabelle ponte gia popolate, toglie dalla capacità di ogni padre le coppie gia presenti
+     * ed esclude i figli gia associati ad ogni padre dalle sue estrazioni, cosi le nuove coppie non duplicano
+     * quelle esistenti
+     * @param existing figli gia presenti nella tabella per ogni padre
+     * @return il generatore stesso
+     * @throws IllegalStateException se il generatore non ha figli o ha gia generato delle righe
+     */
+    public BridgeGenerator withExistingChildren(Map<String, ? extends Collection<String>> existing)
+            throws IllegalStateException {
+        if (children == null)
+            throw new IllegalStateException("il generatore non ha una lista di figli");
+        Map<String, Integer> counts = new HashMap<>();
+        existing.forEach((parent, list) -> counts.put(parent, list.size()));
+        withExisting(counts);
+
+        Map<String, Integer> childIndexes = new HashMap<>();
+        for (int i = 0; i < children.size(); i++)
+            childIndexes.put(children.get(i), i);
+        //creiamo subito il sampler dei soli padri ancora disponibili che hanno gia dei figli
+        for (int i = 0; i < active; i++) {
+            int p = available[i];
+            Collection<String> present = existing.get(parents.get(p));
+            if (present == null || present.isEmpty())
+                continue;
+            List<Integer> excluded = new ArrayList<>(present.size());
+            for (String child : present) {
+                Integer index = childIndexes.get(child);
+                if (index != null)
+                    excluded.add(index);
+            }
+            samplers[p] = new DistinctSampler(children.size(), excluded);
+        }
+        return this;
+    }
+
+    /**
+     * @return true se esiste ancora un padre con capacità residua, false altrimenti
+     */
+    public boolean hasNext() { return active > 0; }
+
+    /**
+     * sceglie un padre con capacità residua e ne consuma un posto
+     * @param r generatore di numeri casuali da utilizzare
+     * @return il padre scelto
+     * @throws IllegalStateException se tutti i padri hanno raggiunto il massimo
+     */
+    public String nextParent(Random r) throws IllegalStateException { return parents.get(takeParent(r)); }
+
+    /**
+     * genera una coppia (padre, figlio) non ancora generata
+     * @param r generatore di numeri casuali da utilizzare
+     * @return la coppia generata
+     * @throws IllegalStateException se il generatore non ha figli o se tutti i padri hanno raggiunto il massimo
+     */
+    public Coppia<String, String> next(Random r) throws IllegalStateException {
+        if (children == null)
+            throw new IllegalStateException("il generatore non ha una lista di figli");
+        int p = takeParent(r);
+        if (samplers[p] == null)
+            samplers[p] = new DistinctSampler(children.size());
+        String child = children.get(samplers[p].next(r, childDistribution));
+        //il padre pieno non verrà piu scelto, liberiamo la memoria dei suoi figli estratti
+        if (capacity[p] == 0)
+            samplers[p] = null;
+        return new Coppia<>(parents.get(p), child);
+    }
+
+    /**
+     * metodo privato che sceglie un padre disponibile, togliendolo dai disponibili quando si riempie
+     */
+    private int takeParent(Random r) {
+        if (active == 0)
+            throw new IllegalStateException("tutti i padri hanno raggiunto il numero massimo di figli");
+        started = true;
+        int i = parentDistribution.sample(r, active);
+        int p = available[i];
+        if (--capacity[p] == 0) {
+            //spostiamo il padre pieno dopo l'ultimo disponibile
+            available[i] = available[--active];
+            available[active] = p;
+        }
+        return p;
+    }
+}
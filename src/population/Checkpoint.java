@@ -0,0 +1,313 @@
+package population;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Classe che salva su un file locale lo stato di un random populate prima di ogni tabella,
+ * in modo che un'esecuzione interrotta possa ripartire dalla tabella interrotta invece che dall'inizio.
+ * Il checkpoint è formato da due file:
+ * il file principale contiene l'elenco delle tabelle del populate, quante ne sono state completate, lo stato del
+ * generatore di numeri casuali, il punto di partenza della tabella successiva e la lunghezza valida del file dei dati;
+ * il file dei dati contiene i valori generati per le foreign key e le righe salvate nei tuple store.
+ * Ad ogni salvataggio nel file dei dati vengono aggiunti solo i valori generati dopo il salvataggio precedente,
+ * poi il file principale viene scritto su un file temporaneo e spostato: un'interruzione durante il salvataggio
+ * lascia intatto il checkpoint precedente, e i dati scritti oltre la lunghezza valida vengono ignorati e sovrascritti.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class Checkpoint {
+
+    /**
+     * versione del formato del file, da incrementare quando il formato cambia
+     */
+    private static final int VERSION = 2;
+
+    private static final byte POOL = 0;
+
+    private static final byte STORE = 1;
+
+    /**
+     * Campi della classe:
+     */
+    private Path file;
+
+    private Path data;
+
+    private Random random;
+
+    private int duplicates;
+
+    private long startRows;
+
+    private long startId;
+
+    /**
+     * lunghezza del file dei dati scritta nel file principale, i byte successivi non fanno parte del checkpoint
+     */
+    private long dataLength;
+
+    /**
+     * numero di valori di ogni pool e di righe di ogni tuple store gia presenti nel file dei dati
+     */
+    private Map<String, Integer> savedPools = new HashMap<>();
+
+    private Map<String, Integer> savedStores = new HashMap<>();
+
+    /**
+     * costruttore della classe
+     * @param file percorso del file di checkpoint, il file dei dati ha lo stesso nome con l'estensione .data
+     */
+    public Checkpoint(Path file) {
+        this.file = file;
+        data = file.resolveSibling(file.getFileName() + ".data");
+    }
+
+    /**
+     * @return true se esiste un checkpoint da cui ripartire, false altrimenti
+     */
+    public boolean exists() { return Files.exists(file); }
+
+    /**
+     * metodo che salva lo stato del populate prima di iniziare una tabella
+     * @param tables nomi delle tabelle del populate nell'ordine in cui vengono popolate
+     * @param completed numero di tabelle gia popolate
+     * @param random generatore di numeri casuali del populate
+     * @param duplicates numero di duplicate entry scartate fino ad ora
+     * @param startRows numero di righe della tabella che sta per essere popolata
+     * @param startId primo id autoincrementale che verra assegnato nella tabella, 0 se non ne ha uno
+     * @param pools valori generati per ogni attributo nel formato table.attribute
+     * @param stores tuple store delle tabelle
+     * @throws IOException se il file non puo essere scritto
+     */
+    public void save(List<String> tables, int completed, Random random, int duplicates, long startRows, long startId,
+                     Map<String, KeyPool> pools, Map<String, TupleStore> stores) throws IOException {
+        long length = appendData(pools, stores);
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(VERSION);
+            out.writeInt(tables.size());
+            for (String t : tables)
+                out.writeUTF(t);
+            out.writeInt(completed);
+            out.writeObject(random);
+            out.writeInt(duplicates);
+            out.writeLong(startRows);
+            out.writeLong(startId);
+            out.writeLong(length);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dataLength = length;
+        this.startRows = startRows;
+        this.startId = startId;
+    }
+
+    /**
+     * metodo che carica il checkpoint riempiendo i pool e i tuple store passati
+     * @param tables nomi delle tabelle del populate, devono coincidere con quelle salvate
+     * @param pools mappa in cui inserire i valori generati
+     * @param poolFactory funzione che crea il pool vuoto per una chiave nel formato table.attribute
+     * @param stores tuple store gia registrati, in cui vengono reinserite le righe salvate
+     * @return numero di tabelle gia popolate
+     * @throws IOException se i file non possono essere letti o non sono un checkpoint valido
+     * @throws IllegalStateException se il checkpoint appartiene ad un populate con tabelle o tuple store diversi
+     */
+    public int load(List<String> tables, Map<String, KeyPool> pools, Function<String, KeyPool> poolFactory,
+                    Map<String, TupleStore> stores) throws IOException, IllegalStateException {
+        int completed;
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != VERSION)
+                throw new IOException("versione del checkpoint non supportata");
+            int n = in.readInt();
+            boolean sameTables = n == tables.size();
+            for (int i = 0; i < n; i++)
+                sameTables &= in.readUTF().equals(i < tables.size() ? tables.get(i) : null);
+            if (!sameTables)
+                throw new IllegalStateException("il checkpoint " + file + " appartiene ad un populate con tabelle diverse");
+            completed = in.readInt();
+            try { random = (Random)in.readObject(); }
+            catch (ClassNotFoundException e) { throw new IOException("checkpoint non valido", e); }
+            duplicates = in.readInt();
+            startRows = in.readLong();
+            startId = in.readLong();
+            dataLength = in.readLong();
+        }
+        savedPools.clear();
+        savedStores.clear();
+        if (dataLength == 0)
+            return completed;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(data)))) {
+            long read = 0;
+            while (read < dataLength)
+                read += in.readByte() == POOL ? readPool(in, pools, poolFactory) : readStore(in, stores);
+            if (read != dataLength)
+                throw new IOException("file dei dati del checkpoint non valido");
+        }
+        return completed;
+    }
+
+    /**
+     * metodo getter
+     * @return il generatore di numeri casuali letto dal checkpoint, null prima del caricamento
+     */
+    public Random getRandom() { return random; }
+
+    /**
+     * metodo getter
+     * @return numero di duplicate entry letto dal checkpoint
+     */
+    public int getDuplicates() { return duplicates; }
+
+    /**
+     * metodo getter
+     * @return numero di righe che la tabella interrotta aveva prima di essere popolata
+     */
+    public long getStartRows() { return startRows; }
+
+    /**
+     * metodo getter
+     * @return primo id autoincrementale assegnato nella tabella interrotta, 0 se non ne ha uno
+     */
+    public long getStartId() { return startId; }
+
+    /**
+     * cancella il checkpoint, da chiamare quando il populate è terminato
+     * @throws IOException se i file non possono essere cancellati
+     */
+    public void delete() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(data);
+        dataLength = 0;
+        savedPools.clear();
+        savedStores.clear();
+    }
+
+    //-----------------------------------------------METODI PRIVATI-------------------------------------------------//
+
+    /**
+     * metodo privato che aggiunge al file dei dati i valori e le righe non ancora salvati
+     * @return la nuova lunghezza valida del file dei dati
+     */
+    private long appendData(Map<String, KeyPool> pools, Map<String, TupleStore> stores) throws IOException {
+        try (FileChannel channel = FileChannel.open(data, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            //i byte oltre la lunghezza valida sono di un salvataggio interrotto
+            channel.truncate(dataLength);
+            channel.position(dataLength);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            for (Map.Entry<String, KeyPool> e : pools.entrySet()) {
+                KeyPool pool = e.getValue();
+                int from = savedPools.getOrDefault(e.getKey(), 0);
+                int size = pool.size();
+                if (size == from)
+                    continue;
+                out.writeByte(POOL);
+                out.writeUTF(e.getKey());
+                out.writeInt(size - from);
+                for (int i = from; i < size; i++)
+                    out.writeUTF(pool.get(i));
+            }
+            for (TupleStore store : stores.values()) {
+                int from = savedStores.getOrDefault(store.getTableName(), 0);
+                int size = store.size();
+                if (size == from)
+                    continue;
+                List<String> columns = store.getColumns();
+                out.writeByte(STORE);
+                out.writeUTF(store.getTableName());
+                out.writeInt(columns.size());
+                for (String c : columns)
+                    out.writeUTF(c);
+                out.writeInt(size - from);
+                for (String c : columns)
+                    for (int i = from; i < size; i++)
+                        out.writeUTF(store.get(i, c));
+            }
+            out.flush();
+            channel.force(false);
+            //i contatori vengono aggiornati solo dopo che i dati sono su disco
+            pools.forEach((k, pool) -> savedPools.put(k, pool.size()));
+            stores.values().forEach(store -> savedStores.put(store.getTableName(), store.size()));
+            return channel.size();
+        }
+    }
+
+    /**
+     * metodo privato che legge un segmento di valori di un pool
+     * @return numero di byte letti, compreso il tipo del segmento
+     */
+    private long readPool(DataInputStream in, Map<String, KeyPool> pools, Function<String, KeyPool> poolFactory) throws IOException {
+        String key = in.readUTF();
+        long read = 1 + utfLength(key) + 4;
+        KeyPool pool = pools.computeIfAbsent(key, poolFactory);
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            String value = in.readUTF();
+            read += utfLength(value);
+            pool.add(value);
+        }
+        savedPools.merge(key, size, Integer::sum);
+        return read;
+    }
+
+    /**
+     * metodo privato che legge un segmento di righe di un tuple store
+     * @return numero di byte letti, compreso il tipo del segmento
+     */
+    private long readStore(DataInputStream in, Map<String, TupleStore> stores) throws IOException {
+        String tableName = in.readUTF();
+        TupleStore store = stores.get(tableName);
+        if (store == null)
+            throw new IllegalStateException("il checkpoint contiene il tuple store non registrato della tabella " + tableName);
+        long read = 1 + utfLength(tableName) + 4 + 4;
+        String[] columns = new String[in.readInt()];
+        for (int c = 0; c < columns.length; c++) {
+            columns[c] = in.readUTF();
+            read += utfLength(columns[c]);
+        }
+        int size = in.readInt();
+        //le colonne sono salvate una dopo l'altra, ricostruiamo le righe prima di aggiungerle
+        String[][] values = new String[columns.length][size];
+        for (int c = 0; c < columns.length; c++)
+            for (int i = 0; i < size; i++) {
+                values[c][i] = in.readUTF();
+                read += utfLength(values[c][i]);
+            }
+        for (int i = 0; i < size; i++) {
+            Map<String, String> row = new HashMap<>();
+            for (int c = 0; c < columns.length; c++)
+                row.put(columns[c], values[c][i]);
+            store.add(row);
+        }
+        savedStores.merge(tableName, size, Integer::sum);
+        return read;
+    }
+
+    /**
+     * @return numero di byte scritti da writeUTF per la stringa, compresi i due byte della lunghezza
+     */
+    private static long utfLength(String s) {
+        long length = 2;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            length += c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3;
+        }
+        return length;
+    }
+}
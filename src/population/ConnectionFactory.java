@@ -0,0 +1,13 @@
+package population;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Interfaccia funzionale che apre una nuova connessione al db, utilizzata dai thread che scrivono in parallelo
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+@FunctionalInterface
+public interface ConnectionFactory {
+    public Connection open() throws SQLException;
+}
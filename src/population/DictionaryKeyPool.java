@@ -0,0 +1,58 @@
+package population;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pool per valori che si ripetono spesso (enum e foreign key non univoche).
+ * Ogni valore distinto viene salvato una sola volta nel dizionario e il pool contiene solo i codici.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class DictionaryKeyPool extends KeyPool {
+    /**
+     * Campi della classe:
+     */
+    private List<String> dictionary = new ArrayList<>();
+
+    private Map<String, Integer> codes = new HashMap<>();
+
+    private int[] entries = new int[0];
+
+    private int size;
+
+    @Override
+    public boolean add(String value) {
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = dictionary.size();
+            dictionary.add(value);
+            codes.put(value, code);
+        }
+        if (size == entries.length)
+            entries = Arrays.copyOf(entries, grow(entries.length, size + 1));
+        entries[size++] = code;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public String get(int index) {
+        checkIndex(index);
+        return dictionary.get(entries[index]);
+    }
+
+    @Override
+    public boolean contains(Object o) { return codes.containsKey(o); }
+
+    @Override
+    public int size() { return size; }
+
+    /**
+     * metodo getter
+     * @return numero di valori distinti salvati nel dizionario
+     */
+    public int distinct() { return dictionary.size(); }
+}
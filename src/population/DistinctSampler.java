@@ -0,0 +1,99 @@
+package population;
+
+import utility.Distribution;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Classe che estrae indici distinti tra 0 e n-1 senza mai scartare un'estrazione.
+ * Usa un Fisher-Yates parziale: l'indice estratto viene scambiato con l'ultimo ancora disponibile,
+ * e solo le posizioni scambiate vengono salvate in una mappa, quindi ogni estrazione costa O(1)
+ * e la memoria cresce con il numero di estrazioni e non con n.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class DistinctSampler {
+    /**
+     * Campi della classe:
+     */
+    private int left;
+
+    /**
+     * posizioni scambiate: alla posizione chiave si trova l'indice valore
+     */
+    private Map<Integer, Integer> swaps = new HashMap<>();
+
+    /**
+     * costruttore della classe
+     * @param n numero di indici tra cui estrarre
+     */
+    public DistinctSampler(int n) {
+        if (n < 0)
+            throw new IllegalArgumentException("il numero di valori non puo essere negativo");
+        left = n;
+    }
+
+    /**
+     * costruttore della classe che esclude alcuni indici dall'estrazione, ad esempio quelli gia usati nel db
+     * @param n numero di indici tra cui estrarre
+     * @param excluded indici da non estrarre; quelli fuori da [0, n) vengono ignorati
+     */
+    public DistinctSampler(int n, Collection<Integer> excluded) {
+        this(n);
+        //posizione attuale degli indici spostati dalle esclusioni precedenti
+        Map<Integer, Integer> positions = new HashMap<>();
+        for (int index : new HashSet<>(excluded)) {
+            if (index < 0 || index >= n)
+                continue;
+            int i = positions.getOrDefault(index, index);
+            int last = --left;
+            if (i != last) {
+                //come in next: la posizione dell'indice escluso prende quello nell'ultima posizione disponibile
+                Integer moved = swaps.remove(last);
+                int value = moved == null ? last : moved;
+                swaps.put(i, value);
+                positions.put(value, i);
+            }
+            else
+                swaps.remove(last);
+            positions.remove(index);
+        }
+    }
+
+    /**
+     * @return true se ci sono ancora indici da estrarre, false altrimenti
+     */
+    public boolean hasNext() { return left > 0; }
+
+    /**
+     * metodo getter
+     * @return numero di indici non ancora estratti
+     */
+    public int remaining() { return left; }
+
+    /**
+     * estrae un indice non ancora estratto. La distribuzione viene applicata alle posizioni
+     * degli indici rimasti, che dopo i primi scambi non coincidono piu con l'ordine originale
+     * @param r generatore di numeri casuali da utilizzare
+     * @param distribution distribuzione con cui scegliere la posizione
+     * @return l'indice estratto
+     * @throws IllegalStateException se tutti gli indici sono gia stati estratti
+     */
+    public int next(Random r, Distribution distribution) throws IllegalStateException {
+        if (left == 0)
+            throw new IllegalStateException("tutti i valori sono gia stati estratti");
+        int i = distribution.sample(r, left);
+        int last = --left;
+        Integer value = swaps.remove(i);
+        int index = value == null ? i : value;
+        if (i != last) {
+            //la posizione estratta prende l'indice che si trovava nell'ultima posizione disponibile
+            Integer moved = swaps.remove(last);
+            swaps.put(i, moved == null ? last : moved);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,96 @@
+package population;
+
+import data.DataType;
+import data.Int;
+import data.VarChar;
+import db.Attribute;
+
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.Random;
+import java.util.RandomAccess;
+
+/**
+ * Classe astratta che rappresenta l'insieme dei valori generati per un attributo durante il random populate.
+ * Ogni implementazione salva i valori in una rappresentazione compatta al posto di una String per valore,
+ * ma continua ad esporli come una lista di stringhe con accesso casuale in tempo costante.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public abstract class KeyPool extends AbstractList<String> implements RandomAccess, AutoCloseable {
+
+    /**
+     * numero massimo di cifre di un intero che puo essere salvato in un long
+     */
+    private static final int MAX_LONG_DIGITS = 18;
+
+    /**
+     * metodo factory che sceglie la codifica piu compatta in base al tipo di dato dell'attributo:
+     * gli interi vengono salvati come range o come long[], gli enum e i varchar non univoci
+     * con un dizionario, tutti gli altri valori impacchettati in un unico array di byte
+     * @param a attributo di cui si vogliono salvare i valori generati
+     * @return un pool vuoto adatto all'attributo
+     */
+    public static KeyPool of(Attribute a) {
+        DataType type = a.getType();
+        if (type instanceof Int && ((Int)type).getDecimals() <= MAX_LONG_DIGITS)
+            return new LongKeyPool();
+        if (type instanceof data.Enum)
+            return new DictionaryKeyPool();
+        if (type instanceof VarChar && !a.isKey() && !a.isUnique())
+            return new DictionaryKeyPool();
+        return new StringKeyPool();
+    }
+
+    /**
+     * metodo factory che crea un pool che viene riversato su disco quando supera la soglia
+     * @param a attributo di cui si vogliono salvare i valori generati
+     * @param threshold numero di valori oltre il quale il pool viene spostato fuori dall'heap, 0 per non spostarlo mai
+     * @param directory cartella in cui creare i file dei pool
+     * @return un pool vuoto adatto all'attributo
+     */
+    public static KeyPool of(Attribute a, int threshold, Path directory) {
+        return threshold > 0 ? new SpillableKeyPool(a, threshold, directory) : of(a);
+    }
+
+    /**
+     * aggiunge un valore in coda al pool
+     * @param value valore generato
+     * @return true
+     */
+    @Override
+    public abstract boolean add(String value);
+
+    /**
+     * metodo che estrae in tempo costante un valore casuale tra quelli salvati
+     * @param r generatore di numeri casuali da utilizzare
+     * @return un valore del pool scelto in modo uniforme
+     */
+    public String random(Random r) { return get(r.nextInt(size())); }
+
+    /**
+     * rilascia le risorse occupate dal pool, di default non fa nulla
+     */
+    @Override
+    public void close() {}
+
+    /**
+     * metodo di utilità che controlla se l'indice è valido
+     * @param index indice da controllare
+     * @throws IndexOutOfBoundsException se l'indice non è valido
+     */
+    protected void checkIndex(int index) throws IndexOutOfBoundsException {
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException("indice " + index + " fuori dal pool di dimensione " + size());
+    }
+
+    /**
+     * metodo di utilità che calcola la nuova capacità di un array che deve crescere
+     * @param capacity capacità attuale
+     * @param needed capacità minima richiesta
+     * @return la nuova capacità
+     */
+    protected static int grow(int capacity, int needed) {
+        int newCapacity = Math.max(16, capacity + (capacity >> 1));
+        return Math.max(newCapacity, needed);
+    }
+}
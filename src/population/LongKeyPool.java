@@ -0,0 +1,89 @@
+package population;
+
+import java.util.Arrays;
+
+/**
+ * Pool per i valori interi. Finchè i valori vengono aggiunti in sequenza (come gli id auto incremental)
+ * il pool salva solo l'intervallo [lo, hi], appena arriva un valore non contiguo passa ad un long[].
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class LongKeyPool extends KeyPool {
+    /**
+     * Campi della classe:
+     */
+    private long lo;
+
+    private int size;
+
+    /**
+     * valori salvati, null finchè il pool è un intervallo contiguo
+     */
+    private long[] values;
+
+    @Override
+    public boolean add(String value) { return add(parse(value)); }
+
+    /**
+     * aggiunge un valore numerico al pool
+     * @param value valore da aggiungere
+     * @return true
+     */
+    public boolean add(long value) {
+        if (values == null) {
+            if (size == 0)
+                lo = value;
+            if (value == lo + size) {
+                size++;
+                modCount++;
+                return true;
+            }
+            //il valore non è contiguo, passiamo alla rappresentazione esplicita
+            values = new long[grow(size, size + 1)];
+            for (int i = 0; i < size; i++)
+                values[i] = lo + i;
+        }
+        if (size == values.length)
+            values = Arrays.copyOf(values, grow(values.length, size + 1));
+        values[size++] = value;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * metodo getter
+     * @param index posizione del valore
+     * @return il valore numerico in posizione index
+     */
+    public long getLong(int index) {
+        checkIndex(index);
+        return values == null ? lo + index : values[index];
+    }
+
+    @Override
+    public String get(int index) { return Long.toString(getLong(index)); }
+
+    @Override
+    public int size() { return size; }
+
+    /**
+     * metodo che controlla se il pool è ancora rappresentato come intervallo contiguo
+     * @return true se il pool occupa solo gli estremi dell'intervallo, false altrimenti
+     */
+    public boolean isRange() { return values == null; }
+
+    /**
+     * metodo privato che converte il valore in long controllando che la rappresentazione non cambi
+     * @param value valore da convertire
+     * @return il valore convertito
+     * @throws IllegalArgumentException se il valore non è un intero in forma canonica
+     */
+    private static long parse(String value) throws IllegalArgumentException {
+        try {
+            long l = Long.parseLong(value);
+            if (Long.toString(l).equals(value))
+                return l;
+        }
+        catch (NumberFormatException e) {}
+        throw new IllegalArgumentException("il valore " + value + " non puo essere salvato in un pool di interi");
+    }
+}
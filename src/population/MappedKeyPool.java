@@ -0,0 +1,164 @@
+package population;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pool salvato fuori dall'heap in un file mappato in memoria.
+ * I valori sono record a lunghezza fissa, quindi la posizione dell'i-esimo valore si calcola
+ * in tempo costante e l'estrazione casuale resta O(1) anche con centinaia di milioni di valori.
+ * Il file viene diviso in segmenti mappati separatamente perchè un singolo mapping non puo superare 2GB.
+ * Come ogni List gli indici sono int, quindi il pool contiene al massimo Integer.MAX_VALUE valori:
+ * oltre questo limite add lancia IllegalStateException.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class MappedKeyPool extends KeyPool {
+    /**
+     * Campi della classe:
+     */
+    private static final int SEGMENT_BYTES = 1 << 26;
+
+    private Path file;
+
+    private FileChannel channel;
+
+    private List<MappedByteBuffer> segments = new ArrayList<>();
+
+    /**
+     * true se i valori sono salvati come long, false se sono salvati come stringhe
+     */
+    private boolean numeric;
+
+    private int width;
+    private int recordSize;
+    private int recordsPerSegment;
+    private int size;
+
+    private boolean closed;
+
+    /**
+     * costruttore della classe
+     * @param file file in cui salvare i valori, viene creato se non esiste
+     * @param numeric true se i valori sono interi da salvare come long
+     * @param width lunghezza massima in byte di un valore non numerico
+     * @throws UncheckedIOException se non è stato possibile aprire il file
+     */
+    public MappedKeyPool(Path file, boolean numeric, int width) throws UncheckedIOException {
+        if (!numeric && (width <= 0 || width > Short.MAX_VALUE))
+            throw new IllegalArgumentException("la lunghezza dei valori deve essere compresa tra 1 e " + Short.MAX_VALUE);
+        this.file = file;
+        this.numeric = numeric;
+        this.width = width;
+        //un valore numerico occupa 8 byte, una stringa 2 byte di lunghezza piu i caratteri
+        recordSize = numeric ? Long.BYTES : Short.BYTES + width;
+        recordsPerSegment = SEGMENT_BYTES / recordSize;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("impossibile aprire il file " + file, e);
+        }
+    }
+
+    @Override
+    public boolean add(String value) {
+        if (closed)
+            throw new IllegalStateException("il pool " + file + " e' stato chiuso");
+        if (size == Integer.MAX_VALUE)
+            throw new IllegalStateException("il pool " + file + " ha raggiunto il massimo di " + Integer.MAX_VALUE + " valori");
+        int offset = offset(size);
+        MappedByteBuffer segment = segment(size);
+        if (numeric)
+            segment.putLong(offset, Long.parseLong(value));
+        else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > width)
+                throw new IllegalArgumentException("il valore " + value + " supera la lunghezza massima di " + width + " byte");
+            segment.putShort(offset, (short)bytes.length);
+            segment.put(offset + Short.BYTES, bytes);
+        }
+        size++;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public String get(int index) {
+        if (closed)
+            throw new IllegalStateException("il pool " + file + " e' stato chiuso");
+        checkIndex(index);
+        int offset = offset(index);
+        MappedByteBuffer segment = segments.get(index / recordsPerSegment);
+        if (numeric)
+            return Long.toString(segment.getLong(offset));
+        byte[] bytes = new byte[segment.getShort(offset)];
+        segment.get(offset + Short.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int size() { return size; }
+
+    /**
+     * metodo getter
+     * @return il file in cui sono salvati i valori
+     */
+    public Path getFile() { return file; }
+
+    /**
+     * chiude il file e lo cancella dal disco. I segmenti mappati non possono essere rilasciati esplicitamente:
+     * il pool smette di usarli, così vengono liberati dal garbage collector, e se il sistema operativo
+     * non permette di cancellare un file ancora mappato la cancellazione viene rimandata all'uscita della jvm.
+     * Dopo la chiusura il pool non puo piu essere letto nè modificato
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        segments.clear();
+        size = 0;
+        try {
+            channel.close();
+        }
+        catch (IOException e) { System.out.println("ERRORE DURANTE LA CHIUSURA DEL FILE " + file); }
+        try {
+            Files.deleteIfExists(file);
+        }
+        catch (IOException e) { file.toFile().deleteOnExit(); }
+    }
+
+    /**
+     * metodo privato che calcola la posizione del record all'interno del suo segmento
+     * @param index indice del valore
+     * @return offset in byte del record nel segmento
+     */
+    private int offset(int index) { return (index % recordsPerSegment) * recordSize; }
+
+    /**
+     * metodo privato che ritorna il segmento che contiene il record, mappandone uno nuovo se necessario
+     * @param index indice del valore
+     * @return il segmento mappato in memoria
+     */
+    private MappedByteBuffer segment(int index) {
+        int segment = index / recordsPerSegment;
+        if (segment == segments.size()) {
+            try {
+                long bytes = (long)recordsPerSegment * recordSize;
+                segments.add(channel.map(FileChannel.MapMode.READ_WRITE, segment * bytes, bytes));
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("impossibile mappare il file " + file, e);
+            }
+        }
+        return segments.get(segment);
+    }
+}
@@ -0,0 +1,291 @@
+package population;
+
+import utility.JsonReader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Classe che descrive quante righe generare in ogni tabella durante il random populate.
+ * Per ogni tabella si puo indicare un numero assoluto di righe oppure un rapporto rispetto ad una
+ * tabella padre, la dimensione dei batch di inserimento e il numero di connessioni che scrivono in parallelo.
+ * Il piano si costruisce con il PlanBuilder oppure si carica da un file json nel formato:
+ * <pre>
+ * {
+ *   "defaultRows": 1000,
+ *   "batchSize": 100,
+ *   "parallelism": 1,
+ *   "tables": {
+ *     "clima": { "rows": 10 },
+ *     "missione_completata": { "ratio": 20, "parent": "cacciatore", "batchSize": 500, "parallelism": 4 }
+ *   }
+ * }
+ * </pre>
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class PopulationPlan {
+
+    /**
+     * Classe builder interna alla classe PopulationPlan
+     */
+    public static class PlanBuilder {
+        /**
+         * Campi della classe builder:
+         */
+        private int defaultRows;
+        private int defaultBatchSize = 1;
+        private int defaultParallelism = 1;
+
+        private Map<String, Integer> rows = new HashMap<>();
+        private Map<String, Double> ratios = new HashMap<>();
+        private Map<String, String> parents = new HashMap<>();
+        private Map<String, Integer> batchSizes = new HashMap<>();
+        private Map<String, Integer> parallelisms = new HashMap<>();
+
+        /**
+         * costruttore della classe builder
+         * @param defaultRows numero di righe da generare nelle tabelle non presenti nel piano
+         */
+        public PlanBuilder(int defaultRows) {
+            if (defaultRows < 0)
+                throw new IllegalArgumentException("il numero di righe non puo essere negativo");
+            this.defaultRows = defaultRows;
+        }
+
+        /**
+         * metodo che imposta il numero assoluto di righe da generare in una tabella
+         * @param table nome della tabella
+         * @param n numero di righe
+         * @return l'istanza del plan builder
+         */
+        public PlanBuilder setRows(String table, int n) {
+            if (n < 0)
+                throw new IllegalArgumentException("il numero di righe non puo essere negativo");
+            table = table.toLowerCase();
+            ratios.remove(table);
+            parents.remove(table);
+            rows.put(table, n);
+            return this;
+        }
+
+        /**
+         * metodo che imposta il numero di righe di una tabella come multiplo delle righe di un'altra tabella
+         * @param table nome della tabella
+         * @param parent nome della tabella padre
+         * @param ratio righe da generare per ogni riga della tabella padre
+         * @return l'istanza del plan builder
+         */
+        public PlanBuilder setRatio(String table, String parent, double ratio) {
+            if (ratio < 0)
+                throw new IllegalArgumentException("il rapporto non puo essere negativo");
+            table = table.toLowerCase();
+            rows.remove(table);
+            ratios.put(table, ratio);
+            parents.put(table, parent.toLowerCase());
+            return this;
+        }
+
+        /**
+         * metodo che imposta quante righe inserire con una sola query in una tabella
+         * @param table nome della tabella
+         * @param batchSize numero di righe per batch
+         * @return l'istanza del plan builder
+         */
+        public PlanBuilder setBatchSize(String table, int batchSize) {
+            batchSizes.put(table.toLowerCase(), checkPositive(batchSize));
+            return this;
+        }
+
+        /**
+         * metodo che imposta la dimensione dei batch per tutte le tabelle che non ne hanno una propria
+         * @param batchSize numero di righe per batch
+         * @return l'istanza del plan builder
+         */
+        public PlanBuilder setDefaultBatchSize(int batchSize) {
+            defaultBatchSize = checkPositive(batchSize);
+            return this;
+        }
+
+        /**
+         * metodo che imposta il numero di connessioni che scrivono in parallelo in una tabella
+         * @param table nome della tabella
+         * @param parallelism numero di connessioni
+         * @return l'istanza del plan builder
+         */
+        public PlanBuilder setParallelism(String table, int parallelism) {
+            parallelisms.put(table.toLowerCase(), checkPositive(parallelism));
+            return this;
+        }
+
+        /**
+         * metodo che imposta il parallelismo per tutte le tabelle che non ne hanno uno proprio
+         * @param parallelism numero di connessioni
+         * @return l'istanza del plan builder
+         */
+        public PlanBuilder setDefaultParallelism(int parallelism) {
+            defaultParallelism = checkPositive(parallelism);
+            return this;
+        }
+
+        /**
+         * metodo terminale build che controlla che i rapporti tra le tabelle non formino un ciclo
+         * @return l'istanza del piano
+         * @throws IllegalArgumentException se una tabella dipende, anche indirettamente, da se stessa
+         */
+        public PopulationPlan build() throws IllegalArgumentException {
+            for (String table : parents.keySet()) {
+                Set<String> visited = new HashSet<>();
+                for (String t = table; parents.containsKey(t); t = parents.get(t))
+                    if (!visited.add(t))
+                        throw new IllegalArgumentException("i rapporti del piano formano un ciclo sulla tabella " + t);
+            }
+            return new PopulationPlan(this);
+        }
+
+        private static int checkPositive(int n) {
+            if (n <= 0)
+                throw new IllegalArgumentException("il valore deve essere positivo");
+            return n;
+        }
+    }
+
+    /**
+     * Campi della classe:
+     */
+    private int defaultRows;
+    private int defaultBatchSize;
+    private int defaultParallelism;
+
+    private Map<String, Integer> rows;
+    private Map<String, Double> ratios;
+    private Map<String, String> parents;
+    private Map<String, Integer> batchSizes;
+    private Map<String, Integer> parallelisms;
+
+    /**
+     * Costruttore della classe che salva i parametri del builder
+     * @param builder prende in input l'istanza del plan builder
+     */
+    private PopulationPlan(PlanBuilder builder) {
+        defaultRows = builder.defaultRows;
+        defaultBatchSize = builder.defaultBatchSize;
+        defaultParallelism = builder.defaultParallelism;
+        rows = new HashMap<>(builder.rows);
+        ratios = new HashMap<>(builder.ratios);
+        parents = new HashMap<>(builder.parents);
+        batchSizes = new HashMap<>(builder.batchSizes);
+        parallelisms = new HashMap<>(builder.parallelisms);
+    }
+
+    /**
+     * metodo che carica un piano da un file json
+     * @param file percorso del file
+     * @return il piano letto dal file
+     * @throws IOException se il file non puo essere letto o non è un json valido
+     * @throws IllegalArgumentException se il file contiene proprietà sconosciute o valori non validi
+     */
+    public static PopulationPlan load(Path file) throws IOException, IllegalArgumentException {
+        try (JsonReader in = new JsonReader(Files.newBufferedReader(file))) {
+            PlanBuilder builder = null;
+            Integer batchSize = null;
+            Integer parallelism = null;
+            Map<String, Map<String, Object>> tables = new HashMap<>();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String property = in.nextName();
+                switch (property) {
+                    case "defaultRows": builder = new PlanBuilder(in.nextInt()); break;
+                    case "batchSize": batchSize = in.nextInt(); break;
+                    case "parallelism": parallelism = in.nextInt(); break;
+                    case "tables":
+                        in.beginObject();
+                        while (in.hasNext()) {
+                            String table = in.nextName();
+                            Map<String, Object> options = new HashMap<>();
+                            in.beginObject();
+                            while (in.hasNext()) {
+                                String option = in.nextName();
+                                options.put(option, option.equals("parent") ? in.nextString() : (Object)in.nextDouble());
+                            }
+                            in.endObject();
+                            tables.put(table, options);
+                        }
+                        in.endObject();
+                        break;
+                    default: throw new IllegalArgumentException("proprietà sconosciuta nel piano: " + property);
+                }
+            }
+            in.endObject();
+
+            if (builder == null)
+                throw new IllegalArgumentException("il piano deve contenere la proprietà defaultRows");
+            if (batchSize != null)
+                builder.setDefaultBatchSize(batchSize);
+            if (parallelism != null)
+                builder.setDefaultParallelism(parallelism);
+            for (Map.Entry<String, Map<String, Object>> e : tables.entrySet())
+                applyOptions(builder, e.getKey(), e.getValue());
+            return builder.build();
+        }
+    }
+
+    /**
+     * metodo che ritorna il numero di righe da generare in una tabella, risolvendo i rapporti con le tabelle padre
+     * @param table nome della tabella
+     * @return numero di righe da generare
+     */
+    public int getRows(String table) {
+        if (rows.containsKey(table))
+            return rows.get(table);
+        if (ratios.containsKey(table))
+            return (int)Math.round(ratios.get(table) * getRows(parents.get(table)));
+        return defaultRows;
+    }
+
+    /**
+     * @param table nome della tabella
+     * @return numero di righe da inserire con una sola query nella tabella
+     */
+    public int getBatchSize(String table) { return batchSizes.getOrDefault(table, defaultBatchSize); }
+
+    /**
+     * @param table nome della tabella
+     * @return numero di connessioni che scrivono in parallelo nella tabella
+     */
+    public int getParallelism(String table) { return parallelisms.getOrDefault(table, defaultParallelism); }
+
+    /**
+     * metodo privato che applica al builder le opzioni lette dal file per una tabella
+     */
+    private static void applyOptions(PlanBuilder builder, String table, Map<String, Object> options) {
+        for (String option : options.keySet())
+            if (!Set.of("rows", "ratio", "parent", "batchSize", "parallelism").contains(option))
+                throw new IllegalArgumentException("opzione sconosciuta per la tabella " + table + ": " + option);
+        if (options.containsKey("rows") && options.containsKey("ratio"))
+            throw new IllegalArgumentException("la tabella " + table + " non puo avere sia rows che ratio");
+        if (options.containsKey("rows"))
+            builder.setRows(table, toInt(options.get("rows")));
+        if (options.containsKey("ratio")) {
+            if (!options.containsKey("parent"))
+                throw new IllegalArgumentException("la tabella " + table + " ha un ratio ma non ha una tabella parent");
+            builder.setRatio(table, (String)options.get("parent"), (Double)options.get("ratio"));
+        }
+        if (options.containsKey("batchSize"))
+            builder.setBatchSize(table, toInt(options.get("batchSize")));
+        if (options.containsKey("parallelism"))
+            builder.setParallelism(table, toInt(options.get("parallelism")));
+    }
+
+    private static int toInt(Object value) {
+        double d = (Double)value;
+        if (d != Math.rint(d))
+            throw new IllegalArgumentException("atteso un intero ma trovato " + d);
+        return (int)d;
+    }
+}
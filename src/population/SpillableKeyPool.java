@@ -0,0 +1,102 @@
+package population;
+
+import db.Attribute;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Pool che tiene i valori nell'heap finchè non supera una soglia, dopodichè li riversa
+ * in un MappedKeyPool e continua a salvare i nuovi valori su disco.
+ * In questo modo la dimensione dei dati generabili è limitata dal disco e non da -Xmx.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class SpillableKeyPool extends KeyPool {
+    /**
+     * Campi della classe:
+     */
+    private Attribute attribute;
+
+    private KeyPool pool;
+
+    private int threshold;
+
+    private Path directory;
+
+    private boolean spilled;
+
+    /**
+     * costruttore della classe
+     * @param attribute attributo di cui si salvano i valori
+     * @param threshold numero di valori oltre il quale il pool viene riversato su disco
+     * @param directory cartella in cui creare il file del pool
+     */
+    public SpillableKeyPool(Attribute attribute, int threshold, Path directory) {
+        if (threshold <= 0)
+            throw new IllegalArgumentException("la soglia deve essere positiva");
+        this.attribute = attribute;
+        this.threshold = threshold;
+        this.directory = directory;
+        pool = KeyPool.of(attribute);
+    }
+
+    @Override
+    public boolean add(String value) {
+        //un LongKeyPool ancora in forma di intervallo occupa due long, lo riversiamo solo quando il valore lo interrompe
+        if (!spilled && pool.size() >= threshold && !extendsRange(value))
+            spill();
+        modCount++;
+        return pool.add(value);
+    }
+
+    @Override
+    public String get(int index) { return pool.get(index); }
+
+    @Override
+    public int size() { return pool.size(); }
+
+    /**
+     * metodo che controlla se il pool è stato riversato su disco
+     * @return true se i valori sono salvati su disco, false se sono ancora nell'heap
+     */
+    public boolean isSpilled() { return spilled; }
+
+    @Override
+    public void close() { pool.close(); }
+
+    /**
+     * metodo privato che controlla se il valore allunga l'intervallo contiguo di un LongKeyPool
+     */
+    private boolean extendsRange(String value) {
+        if (!(pool instanceof LongKeyPool) || !((LongKeyPool)pool).isRange())
+            return false;
+        LongKeyPool range = (LongKeyPool)pool;
+        return range.size() == 0 || value.equals(Long.toString(range.getLong(range.size() - 1) + 1));
+    }
+
+    /**
+     * metodo privato che sposta tutti i valori in un pool mappato in memoria
+     */
+    private void spill() {
+        boolean numeric = pool instanceof LongKeyPool;
+        MappedKeyPool mapped;
+        try {
+            Files.createDirectories(directory);
+            Path file = Files.createTempFile(directory, attribute.getName() + "_", ".pool");
+            //se la population termina in modo anomalo il file viene comunque cancellato all'uscita
+            file.toFile().deleteOnExit();
+            //la larghezza dei record è in byte UTF-8, limitata alla lunghezza massima di un record
+            mapped = new MappedKeyPool(file, numeric, Math.min(attribute.getType().getMaxBytes(), Short.MAX_VALUE));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("impossibile creare il file del pool in " + directory, e);
+        }
+        for (int i = 0; i < pool.size(); i++)
+            mapped.add(pool.get(i));
+        System.out.println("pool " + attribute.getName() + " riversato su disco in " + mapped.getFile());
+        pool = mapped;
+        spilled = true;
+    }
+}
@@ -0,0 +1,46 @@
+package population;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Pool per valori testuali che impacchetta tutte le stringhe in un unico array di byte.
+ * Le chiavi generate sono ascii, quindi ogni carattere occupa un solo byte al posto dei due di una String.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class StringKeyPool extends KeyPool {
+    /**
+     * Campi della classe:
+     */
+    private byte[] data = new byte[0];
+
+    /**
+     * offset di inizio di ogni valore, offsets[size] è la fine dell'ultimo valore
+     */
+    private int[] offsets = new int[1];
+
+    private int size;
+
+    @Override
+    public boolean add(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int end = offsets[size];
+        if (end + bytes.length > data.length)
+            data = Arrays.copyOf(data, grow(data.length, end + bytes.length));
+        System.arraycopy(bytes, 0, data, end, bytes.length);
+        if (size + 2 > offsets.length)
+            offsets = Arrays.copyOf(offsets, grow(offsets.length, size + 2));
+        offsets[++size] = end + bytes.length;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public String get(int index) {
+        checkIndex(index);
+        return new String(data, offsets[index], offsets[index + 1] - offsets[index], StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int size() { return size; }
+}
@@ -0,0 +1,180 @@
+package population;
+
+import db.Attribute;
+import db.Table;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Classe che tiene in memoria alcune colonne delle righe generate per una tabella durante il random populate,
+ * indicizzate per alcuni attributi. I consumer che dipendono da righe generate in precedenza
+ * (ad esempio i cacciatori di un account o le armi di un tipo) le trovano con una ricerca in una hash map
+ * al posto di una select sul db.
+ * Ogni colonna è salvata in un KeyPool, quindi occupa la stessa memoria compatta dei valori generati.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class TupleStore {
+
+    /**
+     * Lista di interi che cresce senza creare un oggetto per ogni elemento
+     */
+    private static final class IntList {
+        private int[] values = new int[2];
+        private int size;
+
+        private void add(int value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * Campi della classe:
+     */
+    private String tableName;
+
+    private Map<String, KeyPool> columns = new LinkedHashMap<>();
+
+    private Map<String, Map<String, IntList>> indexes = new LinkedHashMap<>();
+
+    private int size;
+
+    /**
+     * costruttore della classe
+     * @param table tabella di cui salvare le righe
+     * @param columns nomi delle colonne da salvare
+     * @throws IllegalArgumentException se una colonna non è presente nella tabella
+     */
+    public TupleStore(Table table, String... columns) throws IllegalArgumentException {
+        tableName = table.getName();
+        for (String c : columns) {
+            Attribute a = table.getAttribute(c.toLowerCase());
+            if (a == null)
+                throw new IllegalArgumentException("l'attributo " + c + " non e' presente nella tabella " + tableName);
+            //le colonne che ammettono null non possono usare un pool numerico, il null è salvato come stringa vuota
+            this.columns.put(a.getName(), a.isNotNull() ? KeyPool.of(a) : new DictionaryKeyPool());
+        }
+    }
+
+    /**
+     * metodo che aggiunge un indice su una delle colonne salvate
+     * @param attribute nome della colonna da indicizzare
+     * @return l'istanza del tuple store
+     * @throws IllegalArgumentException se la colonna non è tra quelle salvate
+     */
+    public synchronized TupleStore addIndex(String attribute) throws IllegalArgumentException {
+        attribute = attribute.toLowerCase();
+        KeyPool column = columns.get(attribute);
+        if (column == null)
+            throw new IllegalArgumentException("la colonna " + attribute + " non e' salvata nel tuple store di " + tableName);
+        Map<String, IntList> index = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++)
+            index.computeIfAbsent(column.get(i), k -> new IntList()).add(i);
+        indexes.put(attribute, index);
+        return this;
+    }
+
+    /**
+     * metodo che salva una riga, gli attributi non salvati vengono ignorati
+     * @param row mappa da nome dell'attributo a valore della riga
+     */
+    public synchronized void add(Map<String, String> row) {
+        for (Map.Entry<String, KeyPool> c : columns.entrySet()) {
+            String value = row.get(c.getKey());
+            c.getValue().add(value == null ? "" : value);
+        }
+        for (Map.Entry<String, Map<String, IntList>> index : indexes.entrySet())
+            index.getValue().computeIfAbsent(columns.get(index.getKey()).get(size), k -> new IntList()).add(size);
+        size++;
+    }
+
+    /**
+     * metodo che cerca le righe con un certo valore di un attributo indicizzato
+     * @param attribute attributo indicizzato
+     * @param value valore cercato
+     * @param column colonna da restituire
+     * @return la lista dei valori della colonna nelle righe trovate, vuota se non ce ne sono
+     * @throws IllegalArgumentException se l'attributo non è indicizzato o la colonna non è salvata
+     */
+    public synchronized List<String> lookup(String attribute, String value, String column) throws IllegalArgumentException {
+        IntList rows = index(attribute).get(value);
+        KeyPool pool = columns.get(column);
+        if (pool == null)
+            throw new IllegalArgumentException("la colonna " + column + " non e' salvata nel tuple store di " + tableName);
+        if (rows == null)
+            return Collections.emptyList();
+        return new Rows(rows, pool);
+    }
+
+    /**
+     * metodo che ritorna i valori distinti di un attributo indicizzato
+     * @param attribute attributo indicizzato
+     * @return insieme dei valori presenti nelle righe salvate
+     */
+    public synchronized Set<String> keys(String attribute) { return Collections.unmodifiableSet(index(attribute).keySet()); }
+
+    /**
+     * metodo getter
+     * @return il nome della tabella
+     */
+    public String getTableName() { return tableName; }
+
+    /**
+     * metodo getter
+     * @return numero di righe salvate
+     */
+    public synchronized int size() { return size; }
+
+    /**
+     * @return nomi delle colonne salvate, nell'ordine in cui sono state passate al costruttore
+     */
+    public List<String> getColumns() { return List.copyOf(columns.keySet()); }
+
+    /**
+     * @param row indice della riga
+     * @param column nome della colonna
+     * @return il valore della colonna nella riga, stringa vuota se era null
+     */
+    synchronized String get(int row, String column) { return columns.get(column).get(row); }
+
+    private Map<String, IntList> index(String attribute) {
+        Map<String, IntList> index = indexes.get(attribute);
+        if (index == null)
+            throw new IllegalArgumentException("l'attributo " + attribute + " non e' indicizzato nel tuple store di " + tableName);
+        return index;
+    }
+
+    /**
+     * Vista in sola lettura sui valori di una colonna nelle righe trovate da una ricerca
+     */
+    private static final class Rows extends AbstractList<String> implements RandomAccess {
+        private final int[] ids;
+        private final int size;
+        private final KeyPool column;
+
+        private Rows(IntList rows, KeyPool column) {
+            //copiamo il riferimento e la dimensione: le righe aggiunte dopo la ricerca non fanno parte del risultato
+            ids = rows.values;
+            size = rows.size;
+            this.column = column;
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException("indice " + index + " fuori dal risultato di dimensione " + size);
+            return column.get(ids[index]);
+        }
+
+        @Override
+        public int size() { return size; }
+    }
+}
@@ -1,7 +1,5 @@
 package query;
 
-import java.util.TreeMap;
-
 /**
  * Classe utilizzata per creare delle query di cancellazione dalle tabelle
  * Sfruttata principalmente per essere data in pasto al metodo executeQuery della classe Database
@@ -11,10 +9,36 @@ public final class Delete extends Query {
 
     private static final String DELETE = "delete from ";
 
+    private String tableName;
+
     /**
      * costruttore della classe delete che prende in input table dal quale cancellare e condizione di eliminazione
      * @param tableName nome dal quale cancellare una o piu occorrenze
-     * @param where condizione per la quale ogni occorrenza viene cancellata
+     * @param where condizione per la quale ogni occorrenza viene cancellata, con gli eventuali segnaposto ?
+     * @param parameters valori dei segnaposto, nell'ordine in cui compaiono
+     * @throws IllegalArgumentException se i valori non corrispondono ai segnaposto
+     */
+    public Delete(String tableName, String where, Object... parameters) throws IllegalArgumentException {
+        super(DELETE + tableName + " where " + where, checkParameters(where, parameters));
+        this.tableName = tableName;
+    }
+
+    private Delete(Delete delete, Object[] parameters) {
+        super(delete, parameters);
+        tableName = delete.tableName;
+    }
+
+    /**
+     * metodo getter
+     * @return il nome della tabella da cui vengono cancellate le righe
+     */
+    public String getTableName() { return tableName; }
+
+    /**
+     * metodo che ritorna la stessa delete con altri valori dei segnaposto, senza ricostruire l'sql
+     * @param parameters valori dei segnaposto, nell'ordine in cui compaiono
+     * @return la delete con i nuovi valori
+     * @throws IllegalArgumentException se i valori non corrispondono ai segnaposto
      */
-    public Delete(String tableName, String where) { super(DELETE + tableName + " where " + where); }
+    public Delete withParameters(Object... parameters) throws IllegalArgumentException { return new Delete(this, parameters); }
 }
@@ -0,0 +1,47 @@
+package query;
+
+/**
+ * Classe che rappresenta la query EXPLAIN FORMAT=JSON di un'altra query.
+ * Eseguendola si ottiene il piano di esecuzione scelto da mySQL, che si puo leggere con la classe QueryPlan
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class Explain extends Query {
+
+    static final String EXPLAIN = "explain format=json ";
+
+    /**
+     * costruttore della classe
+     * @param query query di cui si vuole il piano di esecuzione
+     * @throws IllegalArgumentException se la query non è una select, insert, update, delete o replace
+     */
+    public Explain(Query query) throws IllegalArgumentException {
+        //i valori dei segnaposto servono anche all'explain, che va eseguito come prepared statement
+        super(EXPLAIN + check(query.toString()), query.getParameters());
+    }
+
+    /**
+     * costruttore della classe
+     * @param query query sottoforma di stringa di cui si vuole il piano di esecuzione
+     * @throws IllegalArgumentException se la query non è una select, insert, update, delete o replace
+     */
+    public Explain(String query) throws IllegalArgumentException {
+        super(EXPLAIN + check(query));
+    }
+
+    /**
+     * metodo che controlla se mySQL puo fare l'explain della query
+     * @param query query sottoforma di stringa
+     * @return true se la query è una select, insert, update, delete o replace, false altrimenti
+     */
+    public static boolean isExplainable(String query) {
+        String q = query.stripLeading().toLowerCase();
+        return q.startsWith("select") || q.startsWith("insert") || q.startsWith("update")
+                || q.startsWith("delete") || q.startsWith("replace") || q.startsWith("(");
+    }
+
+    private static String check(String query) {
+        if (!isExplainable(query))
+            throw new IllegalArgumentException("mySQL non puo fare l'explain della query: " + query);
+        return query;
+    }
+}
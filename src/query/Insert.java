@@ -1,5 +1,8 @@
 package query;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
 import java.util.TreeMap;
 
 /**
@@ -63,9 +66,58 @@ public final class Insert extends Query {
         }
     }
 
+    /**
+     * Campi della classe:
+     */
+    private String tableName;
+
+    private SortedMap<String, String> values;
+
     /**
      * Costruttore della classe Insert che salva la query generata dal builder
      * @param builder query builder
      */
-    private Insert(QueryBuilder builder) { super(builder.query); }
+    private Insert(QueryBuilder builder) {
+        super(builder.query);
+        tableName = builder.tableName;
+        values = Collections.unmodifiableSortedMap(new TreeMap<>(builder.attributes));
+    }
+
+    /**
+     * metodo getter
+     * @return il nome della tabella in cui viene fatta l'insert
+     */
+    public String getTableName() { return tableName; }
+
+    /**
+     * metodo getter
+     * @return mappa ordinata da nome dell'attributo a valore inserito
+     */
+    public SortedMap<String, String> getValues() { return values; }
+
+    /**
+     * metodo che unisce piu insert sulla stessa tabella e sugli stessi attributi in una sola query
+     * con piu righe, in modo da fare un solo round trip verso il db
+     * @param rows insert da unire
+     * @return la query di inserimento di tutte le righe sottoforma di stringa
+     * @throws IllegalArgumentException se le insert non sono sulla stessa tabella e sugli stessi attributi
+     */
+    public static String multiRow(List<Insert> rows) throws IllegalArgumentException {
+        if (rows.isEmpty())
+            throw new IllegalArgumentException("non sono state inserite righe");
+        Insert first = rows.get(0);
+
+        StringBuilder query = new StringBuilder(QueryBuilder.INSERT);
+        query.append(first.tableName + " (");
+        first.values.forEach((k, v) -> query.append(k + ", "));
+        query.delete(query.length() -2, query.length()).append(") values ");
+        for (Insert row : rows) {
+            if (!row.tableName.equals(first.tableName) || !row.values.keySet().equals(first.values.keySet()))
+                throw new IllegalArgumentException("le righe devono essere sulla stessa tabella e sugli stessi attributi");
+            query.append("(");
+            row.values.forEach((k, v) -> query.append("\"" + v + "\", "));
+            query.delete(query.length() -2, query.length()).append("), ");
+        }
+        return query.delete(query.length() -2, query.length()).toString();
+    }
 }
@@ -0,0 +1,137 @@
+package query;
+
+import utility.Order;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Classe che legge il risultato di una select una pagina alla volta con la paginazione a chiave (keyset):
+ * le righe sono ordinate per una chiave univoca e ogni pagina parte dalla riga successiva all'ultima chiave letta,
+ * invece che saltare le righe precedenti con un offset. Con un indice sulla chiave ogni pagina costa un range scan
+ * delle sole righe restituite, per quanto lontana sia dall'inizio.
+ * La posizione raggiunta è un token opaco che contiene i valori della chiave dell'ultima riga letta:
+ * si passa al metodo getPage per leggere la pagina successiva, anche da un'altra istanza con la stessa select.
+ * Le pagine vengono lette con il metodo fetchPage della classe Database.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class KeysetPagination {
+    /**
+     * Campi della classe:
+     * prefisso dei token, cambia se cambia il loro formato
+     */
+    private static final String VERSION = "k1";
+
+    private Select select;
+
+    private List<String> keys;
+
+    private Order order;
+
+    private int pageSize;
+
+    /**
+     * costruttore della classe con l'ordinamento crescente
+     * @param select select da paginare, senza order by, limit e select combinate
+     * @param pageSize numero massimo di righe per pagina
+     * @param keys attributi della chiave di ordinamento, che insieme devono essere univoci nel risultato
+     * @throws IllegalArgumentException se la chiave è vuota o la dimensione della pagina non è positiva
+     */
+    public KeysetPagination(Select select, int pageSize, String... keys) throws IllegalArgumentException {
+        this(select, pageSize, Order.ASSCENDING, List.of(keys));
+    }
+
+    /**
+     * costruttore della classe
+     * @param select select da paginare, senza order by, limit e select combinate
+     * @param pageSize numero massimo di righe per pagina
+     * @param order verso dell'ordinamento, lo stesso per tutti gli attributi della chiave
+     * @param keys attributi della chiave di ordinamento, che insieme devono essere univoci nel risultato
+     * @throws IllegalArgumentException se la chiave è vuota o la dimensione della pagina non è positiva
+     * @throws IllegalStateException se la select ha gia un order by, un limit o delle select combinate
+     */
+    public KeysetPagination(Select select, int pageSize, Order order, List<String> keys) throws IllegalArgumentException, IllegalStateException {
+        if (keys.isEmpty())
+            throw new IllegalArgumentException("la paginazione ha bisogno di almeno un attributo nella chiave");
+        if (pageSize <= 0)
+            throw new IllegalArgumentException("la dimensione della pagina deve essere positiva");
+        this.select = select;
+        this.pageSize = pageSize;
+        this.order = order;
+        this.keys = new ArrayList<>();
+        keys.forEach(k -> this.keys.add(k.toLowerCase()));
+        this.keys = List.copyOf(this.keys);
+        //controlliamo subito che la select si possa paginare
+        select.seek(this.keys, order, pageSize, null);
+    }
+
+    /**
+     * metodo che ritorna la select di una pagina
+     * @param token token restituito con la pagina precedente, null per la prima pagina
+     * @return la select della pagina
+     * @throws IllegalArgumentException se il token non è valido per questa chiave
+     */
+    public Select getPage(String token) throws IllegalArgumentException {
+        return select.seek(keys, order, pageSize, token == null ? null : decode(token));
+    }
+
+    /**
+     * metodo che crea il token della pagina successiva a partire dall'ultima riga letta
+     * @param lastKey valori della chiave nell'ultima riga della pagina, nell'ordine degli attributi della chiave
+     * @return il token da passare a getPage
+     * @throws IllegalArgumentException se il numero di valori non corrisponde alla chiave o un valore è null
+     */
+    public String nextToken(List<String> lastKey) throws IllegalArgumentException {
+        if (lastKey.size() != keys.size() || lastKey.stream().anyMatch(Objects::isNull))
+            throw new IllegalArgumentException("la chiave dell'ultima riga deve avere un valore non null per ogni attributo");
+        //ogni valore è preceduto dalla sua lunghezza, cosi puo contenere qualunque carattere
+        StringBuilder out = new StringBuilder(VERSION);
+        lastKey.forEach(v -> out.append(v.length()).append(':').append(v));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(out.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * metodo getter
+     * @return gli attributi della chiave di ordinamento
+     */
+    public List<String> getKeys() { return keys; }
+
+    /**
+     * metodo getter
+     * @return il numero massimo di righe per pagina
+     */
+    public int getPageSize() { return pageSize; }
+
+    /**
+     * metodo getter
+     * @return la select paginata
+     */
+    public Select getSelect() { return select; }
+
+    //-----------------------------------------------METODI PRIVATI-------------------------------------------------//
+
+    private List<String> decode(String token) throws IllegalArgumentException {
+        String s;
+        try { s = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8); }
+        catch (IllegalArgumentException e) { throw new IllegalArgumentException("token di paginazione non valido: " + token); }
+        if (!s.startsWith(VERSION))
+            throw new IllegalArgumentException("token di paginazione non valido: " + token);
+        List<String> values = new ArrayList<>();
+        int i = VERSION.length();
+        try {
+            while (i < s.length()) {
+                int colon = s.indexOf(':', i);
+                int length = Integer.parseInt(s.substring(i, colon));
+                values.add(s.substring(colon + 1, colon + 1 + length));
+                i = colon + 1 + length;
+            }
+        }
+        catch (RuntimeException e) { throw new IllegalArgumentException("token di paginazione non valido: " + token); }
+        if (values.size() != keys.size())
+            throw new IllegalArgumentException("il token di paginazione non corrisponde alla chiave " + keys);
+        return values;
+    }
+}
@@ -0,0 +1,59 @@
+package query;
+
+import java.util.List;
+
+/**
+ * Classe che contiene una pagina del risultato di una select letta con una KeysetPagination
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class Page {
+    /**
+     * Campi della classe:
+     */
+    private final List<String> columns;
+
+    private final List<List<String>> rows;
+
+    /**
+     * token della pagina successiva, null se questa è l'ultima
+     */
+    private final String nextToken;
+
+    /**
+     * costruttore della classe
+     * @param columns nomi delle colonne
+     * @param rows valori delle righe, nell'ordine delle colonne
+     * @param nextToken token della pagina successiva, null se questa è l'ultima
+     */
+    public Page(List<String> columns, List<List<String>> rows, String nextToken) {
+        this.columns = List.copyOf(columns);
+        this.rows = List.copyOf(rows);
+        this.nextToken = nextToken;
+    }
+
+    /**
+     * metodo getter
+     * @return nomi delle colonne
+     */
+    public List<String> getColumns() { return columns; }
+
+    /**
+     * metodo getter
+     * @return valori delle righe, nell'ordine delle colonne; i null restano null
+     */
+    public List<List<String>> getRows() { return rows; }
+
+    /**
+     * metodo getter
+     * @return il token da passare a KeysetPagination.getPage per leggere la pagina successiva, null se questa è l'ultima
+     */
+    public String getNextToken() { return nextToken; }
+
+    /**
+     * @return true se dopo questa pagina ce ne sono altre da leggere
+     */
+    public boolean hasNext() { return nextToken != null; }
+
+    @Override
+    public String toString() { return rows.size() + " righe" + (hasNext() ? ", token " + nextToken : ", ultima pagina"); }
+}
@@ -1,16 +1,147 @@
 package query;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * @author Luca Mattei, Valerio Mezzoprete
  */
 public abstract class Query {
+    /**
+     * buffer riusato da ogni thread per scrivere le query che vengono rese in sql alla prima richiesta
+     */
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
     /**
      * Campi della classe:
+     * sql della query, per le query rese alla prima richiesta resta null finchè non viene chiesto
      */
     private String query;
 
-    protected Query(String query) { this.query = query; }
+    /**
+     * valori dei segnaposto ? della query, nell'ordine in cui compaiono
+     */
+    private List<Object> parameters;
+
+    protected Query(String query) { this(query, List.of()); }
+
+    /**
+     * costruttore di una query con dei segnaposto ?, che va eseguita come prepared statement
+     * @param query query con i segnaposto
+     * @param parameters valori dei segnaposto, nell'ordine in cui compaiono
+     */
+    protected Query(String query, List<Object> parameters) {
+        this.query = query;
+        this.parameters = Collections.unmodifiableList(new ArrayList<>(parameters));
+    }
+
+    /**
+     * costruttore di una query il cui sql viene scritto dal metodo render solo alla prima richiesta e poi riusato
+     * @param parameters valori dei segnaposto, nell'ordine in cui compaiono
+     */
+    protected Query(List<Object> parameters) { this(null, parameters); }
+
+    /**
+     * costruttore di una query che condivide l'sql gia reso di un'altra query ma con valori diversi dei segnaposto
+     * @param query query da cui prendere l'sql
+     * @param parameters nuovi valori dei segnaposto, nell'ordine in cui compaiono
+     * @throws IllegalArgumentException se i valori non corrispondono ai segnaposto della query
+     */
+    protected Query(Query query, Object... parameters) throws IllegalArgumentException {
+        this(query.toString(), checkParameters(query.toString(), parameters));
+    }
+
+    /**
+     * metodo getter
+     * @return i valori dei segnaposto della query, vuota se la query non ha segnaposto
+     */
+    public List<Object> getParameters() { return parameters; }
+
+    /**
+     * metodo che controlla se la query ha dei segnaposto da legare
+     * @return true se la query va eseguita come prepared statement
+     */
+    public boolean isParameterized() { return !parameters.isEmpty(); }
+
+    /**
+     * metodo che lega i valori dei segnaposto ad un prepared statement creato con la stringa della query
+     * @param stmt prepared statement della query
+     * @throws SQLException se un valore non puo essere legato
+     */
+    public void bind(PreparedStatement stmt) throws SQLException {
+        for (int i = 0; i < parameters.size(); i++)
+            stmt.setObject(i + 1, parameters.get(i));
+    }
+
+    /**
+     * metodo che scrive l'sql delle query costruite senza stringa, chiamato una sola volta alla prima richiesta
+     * @return l'sql della query
+     */
+    protected String render() { throw new IllegalStateException("la query non ha un sql da rendere"); }
+
+    /**
+     * metodo che ritorna il buffer del thread corrente svuotato, da usare in render per non allocarne uno nuovo ogni volta;
+     * il contenuto va copiato con toString prima di rendere un'altra query
+     * @return il buffer vuoto
+     */
+    protected static StringBuilder buffer() {
+        StringBuilder out = BUFFER.get();
+        out.setLength(0);
+        return out;
+    }
 
     @Override
-    public String toString() { return query; }
-}
\ No newline at end of file
+    public String toString() {
+        //piu thread possono rendere la stessa query contemporaneamente, ottengono la stessa stringa
+        String sql = query;
+        if (sql == null)
+            query = sql = render();
+        return sql;
+    }
+
+    /**
+     * metodo che controlla i valori da legare ad una parte di query: devono essere tanti quanti i segnaposto ?
+     * fuori dalle stringhe e di un tipo che il driver sa legare (stringhe, numeri, booleani, date e orari o null)
+     * @param sql parte di query con i segnaposto
+     * @param parameters valori dei segnaposto
+     * @return la lista dei valori
+     * @throws IllegalArgumentException se il numero o il tipo dei valori non è valido
+     */
+    protected static List<Object> checkParameters(String sql, Object... parameters) throws IllegalArgumentException {
+        int placeholders = 0;
+        char quote = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                if (c == '\\')
+                    i++;
+                else if (c == quote)
+                    quote = 0;
+            }
+            else if (c == '\'' || c == '"')
+                quote = c;
+            else if (c == '?')
+                placeholders++;
+        }
+        if (placeholders != parameters.length)
+            throw new IllegalArgumentException("la condizione " + sql + " ha " + placeholders + " segnaposto ma sono stati passati "
+                    + parameters.length + " valori");
+        for (Object p : parameters)
+            if (p != null && !(p instanceof String || p instanceof Integer || p instanceof Long || p instanceof Short
+                    || p instanceof Byte || p instanceof Double || p instanceof Float || p instanceof BigDecimal
+                    || p instanceof BigInteger || p instanceof Boolean || p instanceof LocalDate || p instanceof LocalDateTime
+                    || p instanceof LocalTime || p instanceof java.util.Date))
+                throw new IllegalArgumentException("tipo non supportato per il valore di un segnaposto: " + p.getClass().getName());
+        List<Object> out = new ArrayList<>();
+        Collections.addAll(out, parameters);
+        return out;
+    }
+}
@@ -0,0 +1,114 @@
+package query;
+
+import utility.JsonReader;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Classe che legge il piano di esecuzione restituito da EXPLAIN FORMAT=JSON e ne estrae i problemi
+ * piu comuni: le tabelle lette per intero (access_type ALL), gli ordinamenti fatti con un filesort
+ * e le tabelle temporanee create per group by, distinct, union o order by.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class QueryPlan {
+    /**
+     * Campi della classe:
+     */
+    private String json;
+
+    private List<String> fullScans = new ArrayList<>();
+
+    private boolean filesort;
+    private boolean temporaryTable;
+
+    private double cost = -1;
+
+    /**
+     * costruttore della classe
+     * @param json piano in formato json restituito da mySQL
+     * @throws IllegalArgumentException se il piano non è un json valido
+     */
+    public QueryPlan(String json) throws IllegalArgumentException {
+        this.json = json;
+        try (JsonReader in = new JsonReader(new StringReader(json))) {
+            visit(in.nextValue());
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("piano di esecuzione non valido: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * metodo getter
+     * @return il piano in formato json
+     */
+    public String getJson() { return json; }
+
+    /**
+     * metodo getter
+     * @return nomi (o alias) delle tabelle lette per intero
+     */
+    public List<String> getFullScans() { return Collections.unmodifiableList(fullScans); }
+
+    /**
+     * @return true se almeno un ordinamento viene fatto con un filesort
+     */
+    public boolean usesFilesort() { return filesort; }
+
+    /**
+     * @return true se l'esecuzione crea almeno una tabella temporanea
+     */
+    public boolean usesTemporaryTable() { return temporaryTable; }
+
+    /**
+     * metodo getter
+     * @return costo stimato della query, -1 se il piano non lo riporta
+     */
+    public double getCost() { return cost; }
+
+    /**
+     * @return true se il piano contiene una full scan, un filesort o una tabella temporanea
+     */
+    public boolean hasWarnings() { return !fullScans.isEmpty() || filesort || temporaryTable; }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder("costo " + (cost < 0 ? "n/d" : cost));
+        if (!fullScans.isEmpty())
+            out.append(", full scan su " + String.join(", ", fullScans));
+        if (filesort)
+            out.append(", filesort");
+        if (temporaryTable)
+            out.append(", tabella temporanea");
+        return out.toString();
+    }
+
+    /**
+     * metodo privato che visita ricorsivamente l'albero del piano
+     */
+    private void visit(Object node) {
+        if (node instanceof List)
+            ((List<?>)node).forEach(this::visit);
+        if (!(node instanceof Map))
+            return;
+        Map<?, ?> map = (Map<?, ?>)node;
+        if ("ALL".equals(map.get("access_type")))
+            fullScans.add(String.valueOf(map.get("table_name")));
+        if (Boolean.TRUE.equals(map.get("using_filesort")))
+            filesort = true;
+        if (Boolean.TRUE.equals(map.get("using_temporary_table")))
+            temporaryTable = true;
+        //il costo della query è nel cost_info del query_block piu esterno, il primo che incontriamo
+        if (cost < 0 && map.get("cost_info") instanceof Map && map.containsKey("select_id")) {
+            Object c = ((Map<?, ?>)map.get("cost_info")).get("query_cost");
+            if (c != null)
+                cost = Double.parseDouble(c.toString());
+        }
+        map.values().forEach(this::visit);
+    }
+}
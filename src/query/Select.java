@@ -7,7 +7,10 @@ import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
 /**
  * Classe utilizzata per creare delle query di selezione dalle tabelle
@@ -21,8 +24,6 @@ public final class Select extends Query {
          * Campi della classe builder:
          */
         static final String SELECT = "select ";
-
-        private String query;
         private String orderBy;
         private String where;
         private String having;
@@ -37,10 +38,21 @@ public final class Select extends Query {
         private List<Query> intersectQueries = new ArrayList<>();
         private List<OperationType> intersectOperations = new ArrayList<>();
 
+        /**
+         * valori dei segnaposto del where e dell'having, e di tutta la query una volta costruita
+         */
+        private List<Object> whereParameters = new ArrayList<>();
+        private List<Object> havingParameters = new ArrayList<>();
+        private List<Object> parameters = new ArrayList<>();
+
+        private List<SetOperation> setOperations;
+
         private Order order;
 
         private int maxRow = 0;
 
+        private boolean rewriteSubqueries;
+
         /**
          * costruttore generale della classe builder
          * @param attributes lista di attributi della select
@@ -131,14 +143,19 @@ public final class Select extends Query {
         }
 
         /**
-         * metodo che aggiunge tutte le condizioni di where alla query
+         * metodo che aggiunge tutte le condizioni di where alla query. I valori possono essere scritti nella condizione
+         * oppure indicati con dei segnaposto ? e passati come parametri: in questo caso la query viene eseguita come
+         * prepared statement e il server riusa il piano per valori diversi
          * @param conditions stringa formattata con il where della query
+         * @param parameters valori dei segnaposto, nell'ordine in cui compaiono
          * @return l'istanza del query builder
+         * @throws IllegalArgumentException se il where è gia stato inserito o i valori non corrispondono ai segnaposto
          */
-        public QueryBuilder addWhere(String conditions) throws IllegalArgumentException
+        public QueryBuilder addWhere(String conditions, Object... parameters) throws IllegalArgumentException
         {
             if (where != null)
                 throw new IllegalArgumentException("hai gia inserito la clausula where");
+            whereParameters = checkParameters(conditions, parameters);
             where = conditions.toLowerCase();
             return this;
         }
@@ -146,12 +163,15 @@ public final class Select extends Query {
         /**
          * metodo che aggiunge tutte le condizioni all'having della query
          * @param conditions stringa formattata con l'having della query
+         * @param parameters valori degli eventuali segnaposto ?, nell'ordine in cui compaiono
          * @return l'istanza del query builder
+         * @throws IllegalArgumentException se l'having è gia stato inserito o i valori non corrispondono ai segnaposto
          */
-        public QueryBuilder addHaving(String conditions) throws IllegalArgumentException
+        public QueryBuilder addHaving(String conditions, Object... parameters) throws IllegalArgumentException
         {
             if (having != null)
                 throw new IllegalArgumentException("hai gia inserito la clausula where");
+            havingParameters = checkParameters(conditions, parameters);
             having = conditions.toLowerCase();
             return this;
         }
@@ -217,7 +237,19 @@ public final class Select extends Query {
         }
 
         /**
-         * builder della classe che dopo aver fatto i controlli sulla query la crea
+         * metodo che fa riscrivere dal build le subquery in e not in del where in exists e not exists,
+         * anche nelle select combinate; la select originale resta disponibile con getOriginal
+         * @return l'istanza del query builder
+         */
+        public QueryBuilder rewriteSubqueries()
+        {
+            rewriteSubqueries = true;
+            return this;
+        }
+
+        /**
+         * builder della classe che dopo aver fatto i controlli sulla query la crea.
+         * L'sql non viene scritto qui ma alla prima richiesta, una sola volta
          * @return l'istanza della query costruita
          */
         public Select build()
@@ -225,48 +257,369 @@ public final class Select extends Query {
             if (tableNames.size() == 0)
                 throw new IllegalArgumentException("la select prevede almeno una tabella per eseguire la query con la clausula from");
 
-            //cominciamo a costruire la query sottoforma di stringa
-            StringBuilder query = new StringBuilder(SELECT);
+            //le operazioni insiemistiche mantengono l'ordine: prima le union, poi le intersect e infine le except
+            setOperations = new ArrayList<>();
+            for (int i = 0; i < unionQueries.size(); i++)
+                setOperations.add(new SetOperation(SetOperation.Kind.UNION, unionOperations.get(i), (Select)unionQueries.get(i)));
+            for (int i = 0; i < intersectQueries.size(); i++)
+                setOperations.add(new SetOperation(SetOperation.Kind.INTERSECT, intersectOperations.get(i), (Select)intersectQueries.get(i)));
+            for (int i = 0; i < exceptQueries.size(); i++)
+                setOperations.add(new SetOperation(SetOperation.Kind.EXCEPT, exceptOperations.get(i), (Select)exceptQueries.get(i)));
 
-            //per ogni attributo della tabella aggiungiamo alla query la corrispettiva stringa
-            attributes.forEach(a -> query.append(a + ", "));
-            query.delete(query.length() -2, query.length()).append(" from ");
-            tableNames.forEach(t -> query.append(t + ", "));
-            query.delete(query.length() -2, query.length());
-            if (where != null)
-                    query.append(" where " + where);
-            if (groupBys.size() > 0) {
-                query.append(" group by ");
-                groupBys.forEach(g -> query.append(g + ", "));
-                query.delete(query.length() -2, query.length());
-            }
-            if (having != null)
-                query.append(" having " + having);
-            if (orderBy != null)
-                query.append(" order by " + orderBy + " " + order.toString() + " ");
-            if (maxRow > 0)
-                query.append(" limit " + maxRow);
-            if (unionQueries.size() > 0)
-                for (int i = 0; i < unionOperations.size(); i++)
-                    query.append(" union " + unionOperations.get(i) + " " + unionQueries.get(i).toString().toLowerCase());
-            if (intersectQueries.size() > 0)
-                for (int i = 0; i < intersectQueries.size(); i++)
-                    query.append(" union " + intersectOperations.get(i) + " " + intersectQueries.get(i).toString().toLowerCase());
-            if (exceptQueries.size() > 0)
-                for (int i = 0; i < exceptQueries.size(); i++)
-                    query.append(" union " + exceptOperations.get(i) + " " + exceptQueries.get(i).toString().toLowerCase());
-
-            this.query = query.toString();
-
-            return new Select(this);
+            //i valori dei segnaposto seguono l'ordine in cui le parti compaiono nella query
+            parameters = new ArrayList<>(whereParameters);
+            parameters.addAll(havingParameters);
+            setOperations.forEach(o -> parameters.addAll(o.getQuery().getParameters()));
+
+            Select select = new Select(this);
+            return rewriteSubqueries ? select.rewriteSubqueries() : select;
         }
     }
 
+    /**
+     * Nodo della select che combina il suo risultato con quello di un'altra select
+     */
+    public static final class SetOperation {
+
+        /**
+         * Operazioni insiemistiche tra due select
+         */
+        public enum Kind {
+            UNION,
+            INTERSECT,
+            EXCEPT
+        }
+
+        /**
+         * Campi della classe:
+         */
+        private final Kind kind;
+        private final OperationType type;
+        private final Select query;
+
+        private SetOperation(Kind kind, OperationType type, Select query) {
+            this.kind = kind;
+            this.type = type;
+            this.query = query;
+        }
+
+        /**
+         * metodo getter
+         * @return l'operazione insiemistica
+         */
+        public Kind getKind() { return kind; }
+
+        /**
+         * metodo getter
+         * @return se l'operazione tiene i duplicati o no
+         */
+        public OperationType getType() { return type; }
+
+        /**
+         * metodo getter
+         * @return la select combinata
+         */
+        public Select getQuery() { return query; }
+    }
+
+    /**
+     * Campi della classe:
+     * l'albero della query, immutabile, da cui viene scritto l'sql alla prima richiesta
+     */
+    private List<String> attributes;
+    private List<String> tableNames;
+    private List<String> groupBys;
+    private List<SetOperation> setOperations;
+
+    private String where;
+    private String having;
+    private String orderBy;
+
+    private Order order;
+
+    private int limit;
+
+    /**
+     * select da cui è stata ottenuta questa riscrivendo le subquery, null se non è stata riscritta
+     */
+    private Select original;
 
     /**
-     * Costruttore della classe Select che salva la query generata dal builder
+     * Costruttore della classe Select che salva l'albero della query costruito dal builder
      * @param builder query builder
      */
-    private Select(QueryBuilder builder) { super(builder.query); }
+    private Select(QueryBuilder builder)
+    {
+        super(builder.parameters);
+        attributes = List.copyOf(builder.attributes);
+        tableNames = List.copyOf(builder.tableNames);
+        groupBys = List.copyOf(builder.groupBys);
+        setOperations = List.copyOf(builder.setOperations);
+        where = builder.where;
+        having = builder.having;
+        orderBy = builder.orderBy;
+        order = builder.order;
+        limit = builder.maxRow;
+    }
+
+    /**
+     * Costruttore della classe che condivide l'albero e l'sql gia reso di un'altra select con nuovi valori dei segnaposto
+     * @param select select da riusare
+     * @param parameters nuovi valori dei segnaposto
+     */
+    private Select(Select select, Object[] parameters)
+    {
+        super(select, parameters);
+        attributes = select.attributes;
+        tableNames = select.tableNames;
+        groupBys = select.groupBys;
+        setOperations = select.setOperations;
+        where = select.where;
+        having = select.having;
+        orderBy = select.orderBy;
+        order = select.order;
+        limit = select.limit;
+        original = select.original;
+    }
+
+    /**
+     * Costruttore della classe che copia l'albero di un'altra select con il where e le select combinate riscritti
+     * @param select select originale
+     * @param where where riscritto
+     * @param setOperations operazioni insiemistiche con le select combinate riscritte
+     */
+    private Select(Select select, String where, List<SetOperation> setOperations)
+    {
+        super(select.getParameters());
+        attributes = select.attributes;
+        tableNames = select.tableNames;
+        groupBys = select.groupBys;
+        this.setOperations = setOperations;
+        this.where = where;
+        having = select.having;
+        orderBy = select.orderBy;
+        order = select.order;
+        limit = select.limit;
+        original = select;
+    }
+
+    /**
+     * metodo che riscrive le condizioni "x in (select ...)" e "x not in (select ...)" del where, e di quello delle select
+     * combinate, in exists e not exists correlate, che mySQL puo eseguire come semi join e anti join.
+     * Il risultato resta lo stesso anche con i null; le condizioni che non si possono riscrivere in modo sicuro restano invariate.
+     * Per confrontare i piani prima e dopo si usa il metodo compareRewrite della classe Database
+     * @return la select riscritta, o questa stessa select se non c'è nulla da riscrivere
+     */
+    public Select rewriteSubqueries()
+    {
+        String rewritten = SubqueryRewriter.rewrite(where, tableNames);
+        List<SetOperation> operations = new ArrayList<>();
+        boolean changed = !Objects.equals(rewritten, where);
+        for (SetOperation o : setOperations)
+        {
+            Select q = o.query.rewriteSubqueries();
+            changed |= q != o.query;
+            operations.add(new SetOperation(o.kind, o.type, q));
+        }
+        return changed ? new Select(this, rewritten, List.copyOf(operations)) : this;
+    }
+
+    /**
+     * Costruttore della classe che copia l'albero di un'altra select per leggerne una pagina
+     * @param select select da paginare
+     * @param attributes attributi selezionati, compresi quelli della chiave di ordinamento
+     * @param where where con la condizione che parte dopo l'ultima chiave letta
+     * @param orderBy attributi della chiave di ordinamento
+     * @param order verso dell'ordinamento
+     * @param limit numero di righe della pagina
+     * @param parameters valori dei segnaposto della condizione sulla chiave seguiti da quelli della select
+     */
+    private Select(Select select, List<String> attributes, String where, String orderBy, Order order, int limit, List<Object> parameters)
+    {
+        super(parameters);
+        this.attributes = attributes;
+        tableNames = select.tableNames;
+        groupBys = select.groupBys;
+        setOperations = select.setOperations;
+        this.where = where;
+        having = select.having;
+        this.orderBy = orderBy;
+        this.order = order;
+        this.limit = limit;
+    }
+
+    /**
+     * metodo che ritorna una pagina della select ordinata per una chiave, a partire dalla riga successiva ad una chiave gia letta.
+     * La condizione sulla chiave è scritta come k1 >= ? and (k1 > ? or (k2 >= ? and (k2 > ? or ...))): la prima
+     * disuguaglianza permette a mySQL di leggere la pagina con un range scan sull'indice della chiave
+     * @param keys attributi della chiave di ordinamento, che insieme devono essere univoci
+     * @param order verso dell'ordinamento, lo stesso per tutti gli attributi
+     * @param pageSize numero massimo di righe della pagina
+     * @param after valori della chiave dell'ultima riga letta, null per la prima pagina
+     * @return la select della pagina
+     * @throws IllegalStateException se la select ha gia un order by, un limit o delle select combinate
+     */
+    Select seek(List<String> keys, Order order, int pageSize, List<String> after) throws IllegalStateException
+    {
+        if (orderBy != null || limit > 0 || !setOperations.isEmpty())
+            throw new IllegalStateException("non si puo paginare una select con order by, limit o select combinate");
+        List<String> selected = new ArrayList<>(attributes);
+        if (!selected.contains("*"))
+            keys.stream().filter(k -> !selected.contains(k)).forEach(selected::add);
+
+        List<Object> seekParameters = new ArrayList<>();
+        String condition = null;
+        if (after != null)
+        {
+            String greater = order == Order.DESCENDING ? " < ?" : " > ?";
+            String greaterOrEqual = order == Order.DESCENDING ? " <= ?" : " >= ?";
+            StringBuilder out = new StringBuilder();
+            for (int i = 0; i < keys.size(); i++)
+            {
+                if (i == keys.size() - 1)
+                    out.append(keys.get(i)).append(greater);
+                else
+                    out.append(keys.get(i)).append(greaterOrEqual).append(" and (").append(keys.get(i)).append(greater).append(" or (");
+                seekParameters.add(after.get(i));
+                if (i < keys.size() - 1)
+                    seekParameters.add(after.get(i));
+            }
+            out.append("))".repeat(keys.size() - 1));
+            condition = out.toString();
+        }
+        //la condizione sulla chiave viene prima del where, cosi i suoi segnaposto precedono tutti quelli della select
+        String pageWhere = condition == null ? where : where == null ? condition : condition + " and (" + where + ")";
+        seekParameters.addAll(getParameters());
+
+        StringBuilder orderBy = new StringBuilder();
+        for (int i = 0; i < keys.size() - 1; i++)
+            orderBy.append(keys.get(i)).append(' ').append(order).append(", ");
+        orderBy.append(keys.get(keys.size() - 1));
+        return new Select(this, List.copyOf(selected), pageWhere, orderBy.toString(), order, pageSize, seekParameters);
+    }
+
+    /**
+     * metodo getter
+     * @return la select prima della riscrittura delle subquery, o questa stessa select se non è stata riscritta
+     */
+    public Select getOriginal() { return original == null ? this : original; }
 
+    /**
+     * metodo che ritorna la stessa select con altri valori dei segnaposto: l'sql non viene riscritto,
+     * quindi la stessa query si puo eseguire molte volte con valori diversi senza costruirla di nuovo
+     * @param parameters valori dei segnaposto, nell'ordine in cui compaiono in tutta la query
+     * @return la select con i nuovi valori
+     * @throws IllegalArgumentException se i valori non corrispondono ai segnaposto
+     */
+    public Select withParameters(Object... parameters) throws IllegalArgumentException { return new Select(this, parameters); }
+
+    /**
+     * metodo getter
+     * @return attributi selezionati
+     */
+    public List<String> getAttributes() { return attributes; }
+
+    /**
+     * metodo getter
+     * @return tabelle della clausola from, con l'eventuale alias nella forma "tabella as alias"
+     */
+    public List<String> getTableNames() { return tableNames; }
+
+    /**
+     * metodo getter
+     * @return condizioni della clausola where, null se non c'è
+     */
+    public String getWhere() { return where; }
+
+    /**
+     * metodo getter
+     * @return condizioni della clausola having, null se non c'è
+     */
+    public String getHaving() { return having; }
+
+    /**
+     * metodo getter
+     * @return attributi del group by
+     */
+    public List<String> getGroupBys() { return groupBys; }
+
+    /**
+     * metodo getter
+     * @return attributo dell'order by, null se non c'è
+     */
+    public String getOrderBy() { return orderBy; }
+
+    /**
+     * metodo getter
+     * @return verso dell'order by, null se non c'è
+     */
+    public Order getOrder() { return order; }
+
+    /**
+     * metodo getter
+     * @return numero massimo di righe, 0 se non c'è limite
+     */
+    public int getLimit() { return limit; }
+
+    /**
+     * metodo getter
+     * @return le operazioni insiemistiche con altre select, nell'ordine in cui compaiono nella query
+     */
+    public List<SetOperation> getSetOperations() { return setOperations; }
+
+    /**
+     * metodo getter
+     * @return query combinate con union, intersect ed except
+     */
+    public List<Select> getCombinedQueries() { return setOperations.stream().map(SetOperation::getQuery).collect(Collectors.toList()); }
+
+    /**
+     * metodo che ritorna la query EXPLAIN FORMAT=JSON della select, da eseguire con il metodo explain della classe Database
+     * @return la query di explain
+     */
+    public Explain explain() { return new Explain(this); }
+
+    @Override
+    protected String render()
+    {
+        StringBuilder out = buffer();
+        appendTo(out);
+        return out.toString();
+    }
+
+    /**
+     * metodo privato che scrive la select in coda al buffer, comprese le select combinate
+     */
+    private void appendTo(StringBuilder out)
+    {
+        out.append(QueryBuilder.SELECT);
+        join(out, attributes);
+        out.append(" from ");
+        join(out, tableNames);
+        if (where != null)
+            out.append(" where ").append(where);
+        if (!groupBys.isEmpty())
+            join(out.append(" group by "), groupBys);
+        if (having != null)
+            out.append(" having ").append(having);
+        if (orderBy != null)
+            out.append(" order by ").append(orderBy).append(' ').append(order).append(' ');
+        if (limit > 0)
+            out.append(" limit ").append(limit);
+        for (SetOperation o : setOperations)
+        {
+            out.append(' ').append(o.kind.name().toLowerCase()).append(' ').append(o.type).append(' ');
+            o.query.appendTo(out);
+        }
+    }
+
+    private static void join(StringBuilder out, List<String> parts)
+    {
+        for (int i = 0; i < parts.size(); i++)
+        {
+            if (i > 0)
+                out.append(", ");
+            out.append(parts.get(i));
+        }
+    }
 }
@@ -0,0 +1,49 @@
+package query;
+
+/**
+ * Classe che rappresenta una voce del log delle query lente: la query, quanto è durata e il suo piano di esecuzione
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class SlowQuery {
+    /**
+     * Campi della classe:
+     */
+    private String query;
+
+    private long millis;
+
+    private QueryPlan plan;
+
+    /**
+     * costruttore della classe
+     * @param query query eseguita
+     * @param millis durata dell'esecuzione in millisecondi
+     * @param plan piano di esecuzione, null se non è stato possibile ottenerlo
+     */
+    public SlowQuery(String query, long millis, QueryPlan plan) {
+        this.query = query;
+        this.millis = millis;
+        this.plan = plan;
+    }
+
+    /**
+     * metodo getter
+     * @return la query eseguita
+     */
+    public String getQuery() { return query; }
+
+    /**
+     * metodo getter
+     * @return durata dell'esecuzione in millisecondi
+     */
+    public long getMillis() { return millis; }
+
+    /**
+     * metodo getter
+     * @return il piano di esecuzione, null se la query non ammette explain o l'explain è fallito
+     */
+    public QueryPlan getPlan() { return plan; }
+
+    @Override
+    public String toString() { return millis + " ms: " + query + (plan == null ? "" : " [" + plan + "]"); }
+}
@@ -0,0 +1,264 @@
+package query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Classe che riscrive le condizioni "x in (select y ...)" e "x not in (select y ...)" del where di una select
+ * in "exists" e "not exists" correlate, che mySQL esegue come semi join e anti join invece che come subquery
+ * dipendenti valutate per ogni riga.
+ * Il not in restituisce null, e quindi scarta la riga, se x è null o se la subquery contiene un null:
+ * la not exists riscritta mantiene lo stesso risultato cercando anche le righe con y null o con x null.
+ * Vengono riscritte solo le condizioni che formano da sole un termine in and al primo livello del where: senza not
+ * intorno scartare una riga per un null o per un false è la stessa cosa, anche se il termine è in or con altre condizioni.
+ * Le subquery devono essere senza group by, having, order by, limit o union.
+ * La x deve essere un attributo della select esterna: se non è qualificato lo diventa con l'unica tabella
+ * della from; se la subquery usa la stessa tabella senza alias, alla tabella della subquery viene dato un alias.
+ * Le condizioni che non rispettano questi vincoli restano invariate.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+final class SubqueryRewriter {
+
+    /**
+     * condizione "x [not] in (" seguita dalla subquery, il gruppo 1 è la x e il gruppo 2 l'eventuale not
+     */
+    private static final Pattern IN = Pattern.compile("^([a-z_][a-z0-9_]*(?:\\.[a-z_][a-z0-9_]*)?)\\s+(not\\s+)?in\\s*\\(\\s*select\\s", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern TABLE = Pattern.compile("^([a-z_][a-z0-9_]*)(?:\\s+(?:as\\s+)?([a-z_][a-z0-9_]*))?$", Pattern.CASE_INSENSITIVE);
+
+    private static final String ALIAS = "_sq";
+
+    private SubqueryRewriter() {}
+
+    /**
+     * metodo che riscrive le subquery in e not in di un where
+     * @param where condizioni del where
+     * @param tables tabelle della from della select, nella forma "tabella" o "tabella as alias"
+     * @return il where riscritto, uguale a quello in input se non c'è nulla da riscrivere
+     */
+    static String rewrite(String where, List<String> tables) {
+        if (where == null)
+            return where;
+        List<String> conditions = splitConjuncts(where);
+        boolean changed = false;
+        for (int i = 0; i < conditions.size(); i++) {
+            String rewritten = rewriteCondition(conditions.get(i).trim(), tables);
+            if (rewritten != null) {
+                conditions.set(i, rewritten);
+                changed = true;
+            }
+        }
+        return changed ? String.join(" and ", conditions) : where;
+    }
+
+    //-----------------------------------------------METODI PRIVATI-------------------------------------------------//
+
+    /**
+     * metodo privato che riscrive una singola condizione, ritorna null se non è una subquery in riscrivibile
+     */
+    private static String rewriteCondition(String condition, List<String> outerTables) {
+        Matcher m = IN.matcher(condition);
+        if (!m.find())
+            return null;
+        int open = condition.indexOf('(', m.end(2) < 0 ? m.end(1) : m.end(2));
+        if (closing(condition, open) != condition.length() - 1)
+            return null;
+        String subquery = condition.substring(open + 1, condition.length() - 1).trim();
+
+        //la subquery deve essere "select y from f [where c]"
+        int from = find(subquery, "from", 0);
+        if (from < 0)
+            return null;
+        for (String clause : new String[] { "group", "having", "order", "limit", "union", "intersect", "except" })
+            if (find(subquery, clause, from) >= 0)
+                return null;
+        int whereAt = find(subquery, "where", from);
+        String selected = subquery.substring("select".length(), from).trim();
+        if (selected.startsWith("distinct "))
+            selected = selected.substring("distinct ".length()).trim();
+        if (selected.isEmpty() || indexOfTopLevel(selected, ',') >= 0 || selected.contains("?"))
+            return null;
+        String innerFrom = subquery.substring(from + "from".length(), whereAt < 0 ? subquery.length() : whereAt).trim();
+        String innerWhere = whereAt < 0 ? null : subquery.substring(whereAt + "where".length()).trim();
+
+        List<String> innerTables = splitTopLevel(innerFrom, ',');
+        String outer = qualify(m.group(1), outerTables);
+        if (outer == null)
+            return null;
+        String qualifier = outer.substring(0, outer.indexOf('.'));
+
+        //se la subquery usa la tabella della x senza alias, il qualificatore indicherebbe la tabella interna
+        for (int i = 0; i < innerTables.size(); i++) {
+            Matcher t = TABLE.matcher(innerTables.get(i).trim());
+            if (!t.matches())
+                return null;
+            if (qualifier.equals(t.group(2)))
+                return null;
+            if (t.group(2) == null && t.group(1).equals(qualifier)) {
+                if (countTableReferences(subquery, qualifier) != 1)
+                    return null;
+                innerTables.set(i, qualifier + " as " + qualifier + ALIAS);
+                Pattern ref = Pattern.compile("(?<![\\w.])" + Pattern.quote(qualifier) + "\\.");
+                selected = ref.matcher(selected).replaceAll(qualifier + ALIAS + ".");
+                if (innerWhere != null)
+                    innerWhere = ref.matcher(innerWhere).replaceAll(qualifier + ALIAS + ".");
+            }
+        }
+        if (innerWhere != null)
+            innerWhere = rewrite(innerWhere, innerTables);
+
+        boolean not = m.group(2) != null;
+        String correlation = not
+                ? "(" + selected + " = " + outer + " or " + selected + " is null or " + outer + " is null)"
+                : selected + " = " + outer;
+        return (not ? "not exists" : "exists") + " (select 1 from " + String.join(", ", trim(innerTables)) + " where "
+                + (innerWhere == null ? "" : "(" + innerWhere + ") and ") + correlation + ")";
+    }
+
+    /**
+     * metodo privato che qualifica la x con la tabella esterna, null se non è possibile sapere a quale tabella appartiene
+     */
+    private static String qualify(String attribute, List<String> outerTables) {
+        attribute = attribute.toLowerCase();
+        if (attribute.contains("."))
+            return attribute;
+        if (outerTables.size() != 1)
+            return null;
+        Matcher t = TABLE.matcher(outerTables.get(0).trim());
+        if (!t.matches())
+            return null;
+        return (t.group(2) == null ? t.group(1) : t.group(2)) + "." + attribute;
+    }
+
+    /**
+     * metodo privato che divide il where nelle condizioni in and al primo livello, senza dividere i between x and y
+     */
+    private static List<String> splitConjuncts(String where) {
+        List<String> out = new ArrayList<>();
+        int start = 0;
+        boolean between = false;
+        int depth = 0;
+        for (int i = 0; i < where.length(); i++) {
+            char c = where.charAt(i);
+            if (c == '"' || c == '\'') {
+                i = skipString(where, i);
+                continue;
+            }
+            if (c == '(')
+                depth++;
+            else if (c == ')')
+                depth--;
+            else if (depth == 0 && isWord(where, i, "between"))
+                between = true;
+            else if (depth == 0 && isWord(where, i, "and")) {
+                if (between)
+                    between = false;
+                else {
+                    out.add(where.substring(start, i).trim());
+                    start = i + 3;
+                }
+            }
+        }
+        out.add(where.substring(start).trim());
+        return out;
+    }
+
+    /**
+     * metodo privato che conta quante volte una tabella compare senza alias, o con un alias, in una from o join della query
+     */
+    private static int countTableReferences(String sql, String table) {
+        int count = 0;
+        Matcher m = Pattern.compile("\\b(?:from|join)\\s+([^()]*?)(?=\\bwhere\\b|\\bon\\b|\\bgroup\\b|\\border\\b|\\blimit\\b|\\bjoin\\b|\\)|$)").matcher(sql);
+        while (m.find())
+            for (String t : m.group(1).split(",")) {
+                Matcher tm = TABLE.matcher(t.trim());
+                if (tm.matches() && tm.group(1).equals(table))
+                    count++;
+            }
+        return count;
+    }
+
+    /**
+     * metodo privato che cerca una parola al primo livello di parentesi e fuori dalle stringhe
+     * @return l'indice della parola, -1 se non c'è
+     */
+    private static int find(String s, String word, int from) {
+        int depth = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\'')
+                i = skipString(s, i);
+            else if (c == '(')
+                depth++;
+            else if (c == ')')
+                depth--;
+            else if (depth == 0 && i >= from && isWord(s, i, word))
+                return i;
+        }
+        return -1;
+    }
+
+    private static int indexOfTopLevel(String s, char separator) {
+        List<String> parts = splitTopLevel(s, separator);
+        return parts.size() > 1 ? parts.get(0).length() : -1;
+    }
+
+    private static List<String> splitTopLevel(String s, char separator) {
+        List<String> out = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\'')
+                i = skipString(s, i);
+            else if (c == '(')
+                depth++;
+            else if (c == ')')
+                depth--;
+            else if (depth == 0 && c == separator) {
+                out.add(s.substring(start, i));
+                start = i + 1;
+            }
+        }
+        out.add(s.substring(start));
+        return out;
+    }
+
+    /**
+     * @return l'indice della parentesi che chiude quella aperta in open, -1 se non è chiusa
+     */
+    private static int closing(String s, int open) {
+        int depth = 0;
+        for (int i = open; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\'')
+                i = skipString(s, i);
+            else if (c == '(')
+                depth++;
+            else if (c == ')' && --depth == 0)
+                return i;
+        }
+        return -1;
+    }
+
+    private static int skipString(String s, int open) {
+        int end = s.indexOf(s.charAt(open), open + 1);
+        return end < 0 ? s.length() : end;
+    }
+
+    private static boolean isWord(String s, int i, String word) {
+        return s.regionMatches(true, i, word, 0, word.length())
+                && (i == 0 || !isIdentifierChar(s.charAt(i - 1)))
+                && (i + word.length() == s.length() || !isIdentifierChar(s.charAt(i + word.length())));
+    }
+
+    private static boolean isIdentifierChar(char c) { return Character.isLetterOrDigit(c) || c == '_' || c == '.'; }
+
+    private static List<String> trim(List<String> parts) {
+        List<String> out = new ArrayList<>();
+        parts.forEach(p -> out.add(p.trim()));
+        return out;
+    }
+}
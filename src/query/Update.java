@@ -1,5 +1,7 @@
 package query;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.TreeMap;
 
 /**
@@ -21,6 +23,14 @@ public class Update extends Query {
 
         private TreeMap<String, String> attributes = new TreeMap<>();
 
+        /**
+         * attributi il cui nuovo valore è legato ad un segnaposto
+         */
+        private TreeMap<String, Object> boundAttributes = new TreeMap<>();
+
+        private List<Object> whereParameters = new ArrayList<>();
+        private List<Object> parameters = new ArrayList<>();
+
         /**
          * costruttore della classe builder
          * @param tableName table nel quale va fatto l'update
@@ -36,17 +46,35 @@ public class Update extends Query {
          * @return l'istanza del query builder
          */
         public Update.QueryBuilder addValue(String attributeName, String value) {
+            boundAttributes.remove(attributeName);
             attributes.put(attributeName, value);
             return this;
         }
 
+        /**
+         * modifica nel db il valore dell'attributo con un valore legato ad un segnaposto invece che scritto nella query
+         * @param attributeName nome dell'attributo da modificare
+         * @param value valore da sostituire al vecchio, di un tipo accettato dai prepared statement
+         * @return l'istanza del query builder
+         * @throws IllegalArgumentException se il tipo del valore non è supportato
+         */
+        public Update.QueryBuilder addParameter(String attributeName, Object value) throws IllegalArgumentException {
+            checkParameters("?", value);
+            attributes.remove(attributeName);
+            boundAttributes.put(attributeName, value);
+            return this;
+        }
+
         /**
          * aggiunge la condizione di where
-         * @param conditions
-         * @return
+         * @param conditions condizione, con gli eventuali segnaposto ?
+         * @param parameters valori dei segnaposto, nell'ordine in cui compaiono
+         * @return l'istanza del query builder
+         * @throws IllegalArgumentException se i valori non corrispondono ai segnaposto
          */
-        public Update.QueryBuilder addWhere(String conditions)
+        public Update.QueryBuilder addWhere(String conditions, Object... parameters) throws IllegalArgumentException
         {
+            whereParameters = checkParameters(conditions, parameters);
             where = conditions;
             return this;
         }
@@ -55,8 +83,8 @@ public class Update extends Query {
          * builder della classe che dopo aver fatto i controlli sulla query la crea
          * @return l'istanza della query costruita
          */
-        public Query build() throws IllegalArgumentException {
-            if (attributes.size() == 0)
+        public Update build() throws IllegalArgumentException {
+            if (attributes.size() == 0 && boundAttributes.size() == 0)
                 throw new IllegalArgumentException("non sono stati inseriti attributi con i rispettivi valori");
 
             //cominciamo a costruire la query sottoforma di stringa
@@ -65,19 +93,49 @@ public class Update extends Query {
 
             //per ogni attributo della tabella aggiungiamo alla query la corrispettiva stringa
             attributes.forEach((k, v) -> query.append(k + " = \"" + v + "\", "));
+            boundAttributes.keySet().forEach(k -> query.append(k + " = ?, "));
             query.delete(query.length() -2, query.length());
             if (where != null)
                 query.append(" where " + where);
 
             this.query = query.toString();
+            parameters = new ArrayList<>(boundAttributes.values());
+            parameters.addAll(whereParameters);
 
             return new Update(this);
         }
     }
 
+    /**
+     * Campi della classe:
+     */
+    private String tableName;
+
     /**
      * Costruttore della classe Update che salva la query generata dal builder
      * @param builder query builder
      */
-    private Update(Update.QueryBuilder builder) { super(builder.query); }
+    private Update(Update.QueryBuilder builder) {
+        super(builder.query, builder.parameters);
+        tableName = builder.tableName;
+    }
+
+    private Update(Update update, Object[] parameters) {
+        super(update, parameters);
+        tableName = update.tableName;
+    }
+
+    /**
+     * metodo getter
+     * @return il nome della tabella modificata dall'update
+     */
+    public String getTableName() { return tableName; }
+
+    /**
+     * metodo che ritorna lo stesso update con altri valori dei segnaposto, senza ricostruire l'sql
+     * @param parameters valori dei segnaposto, nell'ordine in cui compaiono
+     * @return l'update con i nuovi valori
+     * @throws IllegalArgumentException se i valori non corrispondono ai segnaposto
+     */
+    public Update withParameters(Object... parameters) throws IllegalArgumentException { return new Update(this, parameters); }
 }
@@ -0,0 +1,81 @@
+package utility;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
+/**
+ * Tabella degli alias di Vose: dopo una costruzione in O(n) permette di estrarre
+ * un indice con probabilità proporzionale al suo peso in tempo costante.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class AliasTable {
+    /**
+     * Campi della classe:
+     */
+    private final double[] probability;
+
+    private final int[] alias;
+
+    /**
+     * costruttore della classe
+     * @param weights pesi non negativi dei valori, non devono essere tutti nulli
+     */
+    public AliasTable(double[] weights) {
+        int n = weights.length;
+        double total = 0;
+        for (double w : weights) {
+            if (w < 0 || Double.isNaN(w) || Double.isInfinite(w))
+                throw new IllegalArgumentException("i pesi devono essere numeri finiti non negativi");
+            total += w;
+        }
+        if (n == 0 || total == 0)
+            throw new IllegalArgumentException("serve almeno un peso positivo");
+
+        probability = new double[n];
+        alias = new int[n];
+        double[] scaled = new double[n];
+        Deque<Integer> small = new ArrayDeque<>();
+        Deque<Integer> large = new ArrayDeque<>();
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1)
+                small.push(i);
+            else
+                large.push(i);
+        }
+        //ogni colonna piccola viene completata con una parte di una colonna grande
+        while (!small.isEmpty() && !large.isEmpty()) {
+            int s = small.pop();
+            int l = large.pop();
+            probability[s] = scaled[s];
+            alias[s] = l;
+            scaled[l] = scaled[l] + scaled[s] - 1;
+            if (scaled[l] < 1)
+                small.push(l);
+            else
+                large.push(l);
+        }
+        //le colonne rimaste sono piene a meno di errori di arrotondamento
+        while (!large.isEmpty())
+            probability[large.pop()] = 1;
+        while (!small.isEmpty())
+            probability[small.pop()] = 1;
+    }
+
+    /**
+     * estrae un indice con probabilità proporzionale al suo peso
+     * @param r generatore di numeri casuali da utilizzare
+     * @return l'indice estratto
+     */
+    public int sample(Random r) {
+        int i = r.nextInt(probability.length);
+        return r.nextDouble() < probability[i] ? i : alias[i];
+    }
+
+    /**
+     * metodo getter
+     * @return numero di valori della tabella
+     */
+    public int size() { return probability.length; }
+}
@@ -0,0 +1,69 @@
+package utility;
+
+import java.util.Random;
+
+/**
+ * Interfaccia che rappresenta una distribuzione con cui scegliere un indice tra n valori.
+ * Viene utilizzata nel random populate per scegliere le foreign key e i valori degli enum
+ * in modo non uniforme. Ogni implementazione estrae un indice in tempo costante.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+@FunctionalInterface
+public interface Distribution {
+
+    /**
+     * estrae un indice secondo la distribuzione
+     * @param r generatore di numeri casuali da utilizzare
+     * @param n numero di valori tra cui scegliere
+     * @return un indice compreso tra 0 e n-1
+     */
+    public int sample(Random r, int n);
+
+    /**
+     * @return la distribuzione uniforme
+     */
+    public static Distribution uniform() { return (r, n) -> r.nextInt(n); }
+
+    /**
+     * distribuzione di Zipf, l'indice i viene estratto con probabilità proporzionale a 1/(i+1)^exponent
+     * @param exponent esponente della distribuzione, più è alto più i primi valori sono frequenti
+     * @return la distribuzione di Zipf
+     */
+    public static Distribution zipf(double exponent) { return new Zipf(exponent); }
+
+    /**
+     * distribuzione normale troncata sull'intervallo dei valori
+     * @param mean media espressa come frazione tra 0 e 1 dei valori
+     * @param stddev deviazione standard espressa come frazione dei valori
+     * @return la distribuzione normale
+     */
+    public static Distribution normal(double mean, double stddev) {
+        if (mean < 0 || mean > 1 || stddev <= 0)
+            throw new IllegalArgumentException("la media deve essere compresa tra 0 e 1 e la deviazione standard deve essere positiva");
+        return (r, n) -> {
+            //scartiamo i valori fuori dall'intervallo, con una media nell'intervallo servono pochi tentativi in media
+            while (true) {
+                int i = (int)Math.floor((mean + stddev * r.nextGaussian()) * n);
+                if (i >= 0 && i < n)
+                    return i;
+            }
+        };
+    }
+
+    /**
+     * distribuzione hot set: una frazione dei valori riceve una percentuale fissata delle estrazioni
+     * @param hotFraction frazione dei valori che fanno parte dell'hot set (i primi generati)
+     * @param hotProbability probabilità di estrarre un valore dell'hot set
+     * @return la distribuzione hot set
+     */
+    public static Distribution hotSet(double hotFraction, double hotProbability) {
+        if (hotFraction <= 0 || hotFraction > 1 || hotProbability < 0 || hotProbability > 1)
+            throw new IllegalArgumentException("la frazione e la probabilità dell'hot set devono essere comprese tra 0 e 1");
+        return (r, n) -> {
+            int hot = Math.max(1, (int)Math.ceil(hotFraction * n));
+            if (hot == n || r.nextDouble() < hotProbability)
+                return r.nextInt(hot);
+            return hot + r.nextInt(n - hot);
+        };
+    }
+}
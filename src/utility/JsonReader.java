@@ -0,0 +1,354 @@
+package utility;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parser json in streaming: legge un token alla volta dal reader senza costruire il documento in memoria.
+ * Si usa chiamando peek() per conoscere il prossimo token e i metodi begin/end/next per consumarlo.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class JsonReader implements Closeable {
+
+    /**
+     * Tipi di token restituiti dal metodo peek
+     */
+    public enum Token {
+        BEGIN_OBJECT,
+        END_OBJECT,
+        BEGIN_ARRAY,
+        END_ARRAY,
+        NAME,
+        STRING,
+        NUMBER,
+        BOOLEAN,
+        NULL,
+        END_DOCUMENT
+    }
+
+    /**
+     * Campi della classe:
+     * stati del contesto in cui si trova il parser
+     */
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int DANGLING_NAME = 3;
+    private static final int NONEMPTY_OBJECT = 4;
+    private static final int EMPTY_ARRAY = 5;
+    private static final int NONEMPTY_ARRAY = 6;
+
+    private final Reader in;
+
+    private int[] stack = new int[32];
+    private int depth = 1;
+
+    private Token peeked;
+    private String value;
+
+    private int pushback = -2;
+    private int line = 1;
+
+    private StringBuilder buffer = new StringBuilder();
+
+    /**
+     * costruttore della classe
+     * @param in reader da cui leggere il documento json
+     */
+    public JsonReader(Reader in) {
+        this.in = in;
+        stack[0] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * metodo che ritorna il tipo del prossimo token senza consumarlo
+     * @return il prossimo token
+     * @throws IOException se il documento non è un json valido
+     */
+    public Token peek() throws IOException {
+        if (peeked != null)
+            return peeked;
+        int c;
+        switch (stack[depth - 1]) {
+            case EMPTY_OBJECT:
+                c = nextNonWhitespace();
+                if (c == '}')
+                    return peeked = Token.END_OBJECT;
+                return readName(c);
+            case NONEMPTY_OBJECT:
+                c = nextNonWhitespace();
+                if (c == '}')
+                    return peeked = Token.END_OBJECT;
+                if (c != ',')
+                    throw syntaxError("attesa ',' o '}'");
+                return readName(nextNonWhitespace());
+            case DANGLING_NAME:
+                if (nextNonWhitespace() != ':')
+                    throw syntaxError("atteso ':'");
+                stack[depth - 1] = NONEMPTY_OBJECT;
+                return readValue(nextNonWhitespace());
+            case EMPTY_ARRAY:
+                c = nextNonWhitespace();
+                if (c == ']')
+                    return peeked = Token.END_ARRAY;
+                stack[depth - 1] = NONEMPTY_ARRAY;
+                return readValue(c);
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+                if (c == ']')
+                    return peeked = Token.END_ARRAY;
+                if (c != ',')
+                    throw syntaxError("attesa ',' o ']'");
+                return readValue(nextNonWhitespace());
+            case EMPTY_DOCUMENT:
+                stack[depth - 1] = NONEMPTY_DOCUMENT;
+                return readValue(nextNonWhitespace());
+            default:
+                if (nextNonWhitespace() != -1)
+                    throw syntaxError("il documento contiene piu di un valore");
+                return peeked = Token.END_DOCUMENT;
+        }
+    }
+
+    /**
+     * metodo che controlla se l'oggetto o l'array corrente ha ancora elementi
+     * @return true se ci sono altri elementi, false altrimenti
+     */
+    public boolean hasNext() throws IOException {
+        Token t = peek();
+        return t != Token.END_OBJECT && t != Token.END_ARRAY && t != Token.END_DOCUMENT;
+    }
+
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        depth--;
+    }
+
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        depth--;
+    }
+
+    /**
+     * @return il nome della prossima proprietà dell'oggetto
+     */
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        return value;
+    }
+
+    /**
+     * @return il prossimo valore come stringa, accetta anche numeri e booleani
+     */
+    public String nextString() throws IOException {
+        Token t = peek();
+        if (t != Token.STRING && t != Token.NUMBER && t != Token.BOOLEAN)
+            throw syntaxError("attesa una stringa ma trovato " + t);
+        peeked = null;
+        return value;
+    }
+
+    public double nextDouble() throws IOException {
+        String s = nextString();
+        try { return Double.parseDouble(s); }
+        catch (NumberFormatException e) { throw syntaxError("atteso un numero ma trovato " + s); }
+    }
+
+    public long nextLong() throws IOException {
+        double d = nextDouble();
+        if (d != Math.rint(d))
+            throw syntaxError("atteso un intero ma trovato " + d);
+        return (long)d;
+    }
+
+    public int nextInt() throws IOException { return Math.toIntExact(nextLong()); }
+
+    public boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        return value.equals("true");
+    }
+
+    public void nextNull() throws IOException { expect(Token.NULL); }
+
+    /**
+     * salta il prossimo valore, compresi tutti gli oggetti e gli array annidati
+     */
+    public void skipValue() throws IOException {
+        int count = 0;
+        do {
+            switch (peek()) {
+                case BEGIN_OBJECT: beginObject(); count++; break;
+                case BEGIN_ARRAY: beginArray(); count++; break;
+                case END_OBJECT: endObject(); count--; break;
+                case END_ARRAY: endArray(); count--; break;
+                default: peeked = null;
+            }
+        } while (count > 0);
+    }
+
+    /**
+     * legge il prossimo valore costruendone l'albero: gli oggetti diventano Map, gli array List,
+     * i numeri Double, i booleani Boolean e il null di json null
+     * @return il valore letto
+     */
+    public Object nextValue() throws IOException {
+        switch (peek()) {
+            case BEGIN_OBJECT:
+                Map<String, Object> map = new LinkedHashMap<>();
+                beginObject();
+                while (hasNext())
+                    map.put(nextName(), nextValue());
+                endObject();
+                return map;
+            case BEGIN_ARRAY:
+                List<Object> list = new ArrayList<>();
+                beginArray();
+                while (hasNext())
+                    list.add(nextValue());
+                endArray();
+                return list;
+            case NUMBER: return nextDouble();
+            case BOOLEAN: return nextBoolean();
+            case NULL: nextNull(); return null;
+            default: return nextString();
+        }
+    }
+
+    @Override
+    public void close() throws IOException { in.close(); }
+
+    //-----------------------------------------------METODI PRIVATI-------------------------------------------------//
+
+    private void expect(Token expected) throws IOException {
+        Token t = peek();
+        if (t != expected)
+            throw syntaxError("atteso " + expected + " ma trovato " + t);
+        peeked = null;
+    }
+
+    private void push(int context) {
+        if (depth == stack.length)
+            stack = Arrays.copyOf(stack, depth * 2);
+        stack[depth++] = context;
+    }
+
+    private Token readName(int c) throws IOException {
+        if (c != '"')
+            throw syntaxError("atteso il nome di una proprietà");
+        value = readString();
+        stack[depth - 1] = DANGLING_NAME;
+        return peeked = Token.NAME;
+    }
+
+    private Token readValue(int c) throws IOException {
+        switch (c) {
+            case '{': return peeked = Token.BEGIN_OBJECT;
+            case '[': return peeked = Token.BEGIN_ARRAY;
+            case '"':
+                value = readString();
+                return peeked = Token.STRING;
+            case 't':
+                readLiteral("true");
+                return peeked = Token.BOOLEAN;
+            case 'f':
+                readLiteral("false");
+                return peeked = Token.BOOLEAN;
+            case 'n':
+                readLiteral("null");
+                value = null;
+                return peeked = Token.NULL;
+            default:
+                if (c != '-' && (c < '0' || c > '9'))
+                    throw syntaxError(c == -1 ? "fine del documento inattesa" : "carattere inatteso '" + (char)c + "'");
+                buffer.setLength(0);
+                while (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E' || (c >= '0' && c <= '9')) {
+                    buffer.append((char)c);
+                    c = read();
+                }
+                pushback = c;
+                value = buffer.toString();
+                return peeked = Token.NUMBER;
+        }
+    }
+
+    private void readLiteral(String literal) throws IOException {
+        for (int i = 1; i < literal.length(); i++)
+            if (read() != literal.charAt(i))
+                throw syntaxError("atteso " + literal);
+        value = literal;
+    }
+
+    private String readString() throws IOException {
+        buffer.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == -1)
+                throw syntaxError("stringa non terminata");
+            if (c == '"')
+                return buffer.toString();
+            if (c == '\\') {
+                c = read();
+                switch (c) {
+                    case 'b': buffer.append('\b'); break;
+                    case 'f': buffer.append('\f'); break;
+                    case 'n': buffer.append('\n'); break;
+                    case 'r': buffer.append('\r'); break;
+                    case 't': buffer.append('\t'); break;
+                    case 'u':
+                        int code = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int digit = Character.digit(read(), 16);
+                            if (digit < 0)
+                                throw syntaxError("sequenza unicode non valida");
+                            code = code * 16 + digit;
+                        }
+                        buffer.append((char)code);
+                        break;
+                    case '"': case '\\': case '/': buffer.append((char)c); break;
+                    default: throw syntaxError("sequenza di escape non valida");
+                }
+            }
+            else
+                buffer.append((char)c);
+        }
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c = read();
+        while (c == ' ' || c == '\t' || c == '\n' || c == '\r')
+            c = read();
+        return c;
+    }
+
+    private int read() throws IOException {
+        int c;
+        if (pushback != -2) {
+            c = pushback;
+            pushback = -2;
+        }
+        else {
+            c = in.read();
+            if (c == '\n')
+                line++;
+        }
+        return c;
+    }
+
+    private IOException syntaxError(String message) { return new IOException("json non valido alla riga " + line + ": " + message); }
+}
@@ -30,8 +30,13 @@ public enum Month
 
     public int getMonth() { return month; }
 
-    public static Month randomMonth(){
-        Random r = new Random();
+    public static Month randomMonth(){ return randomMonth(new Random()); }
+
+    /**
+     * @param r generatore di numeri casuali da utilizzare
+     * @return un mese casuale
+     */
+    public static Month randomMonth(Random r){
         return values()[r.nextInt(values().length)];
     }
 }
\ No newline at end of file
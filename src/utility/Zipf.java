@@ -0,0 +1,104 @@
+package utility;
+
+import java.util.Random;
+
+/**
+ * Distribuzione di Zipf campionata con il metodo rejection-inversion di Hörmann e Derflinger,
+ * che estrae un valore in tempo costante atteso senza precalcolare tabelle grandi quanto n.
+ * Le costanti dipendono da n e vengono ricalcolate solo quando il numero di valori cambia.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class Zipf implements Distribution {
+
+    /**
+     * Costanti del campionamento per un dato numero di valori
+     */
+    private static final class Params {
+        private final int n;
+        private final double hIntegralX1;
+        private final double hIntegralN;
+        private final double s;
+
+        private Params(int n, Zipf z) {
+            this.n = n;
+            hIntegralX1 = z.hIntegral(1.5) - 1d;
+            hIntegralN = z.hIntegral(n + 0.5);
+            s = 2d - z.hIntegralInverse(z.hIntegral(2.5) - z.h(2));
+        }
+    }
+
+    /**
+     * Campi della classe:
+     */
+    private final double exponent;
+
+    private volatile Params params;
+
+    /**
+     * costruttore della classe
+     * @param exponent esponente della distribuzione
+     */
+    public Zipf(double exponent) {
+        if (exponent <= 0)
+            throw new IllegalArgumentException("l'esponente della distribuzione di zipf deve essere positivo");
+        this.exponent = exponent;
+    }
+
+    @Override
+    public int sample(Random r, int n) {
+        if (n == 1)
+            return 0;
+        Params p = params;
+        if (p == null || p.n != n)
+            params = p = new Params(n, this);
+        while (true) {
+            double u = p.hIntegralN + r.nextDouble() * (p.hIntegralX1 - p.hIntegralN);
+            double x = hIntegralInverse(u);
+            int k = (int)(x + 0.5);
+            if (k < 1)
+                k = 1;
+            else if (k > n)
+                k = n;
+            if (k - x <= p.s || u >= hIntegral(k + 0.5) - h(k))
+                return k - 1;
+        }
+    }
+
+    /**
+     * metodo getter
+     * @return l'esponente della distribuzione
+     */
+    public double getExponent() { return exponent; }
+
+    private double h(double x) { return Math.exp(-exponent * Math.log(x)); }
+
+    private double hIntegral(double x) {
+        double logX = Math.log(x);
+        return helper2((1d - exponent) * logX) * logX;
+    }
+
+    private double hIntegralInverse(double x) {
+        double t = x * (1d - exponent);
+        if (t < -1d)
+            t = -1d;
+        return Math.exp(helper1(t) * x);
+    }
+
+    /**
+     * log(1+x)/x calcolato in modo stabile anche per x vicino a 0
+     */
+    private static double helper1(double x) {
+        if (Math.abs(x) > 1e-8)
+            return Math.log1p(x) / x;
+        return 1 - x * (0.5 - x * (1d / 3 - 0.25 * x));
+    }
+
+    /**
+     * (exp(x)-1)/x calcolato in modo stabile anche per x vicino a 0
+     */
+    private static double helper2(double x) {
+        if (Math.abs(x) > 1e-8)
+            return Math.expm1(x) / x;
+        return 1 + x * 0.5 * (1 + x * (1d / 3) * (1 + 0.25 * x));
+    }
+}
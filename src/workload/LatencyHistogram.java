@@ -0,0 +1,108 @@
+package workload;
+
+/**
+ * Istogramma delle latenze in microsecondi con bucket logaritmici: i valori sotto 128 sono salvati esattamente,
+ * gli altri in 64 bucket per ogni potenza di due, quindi ogni percentile ha un errore relativo inferiore al 2%
+ * e la memoria occupata non dipende dal numero di valori registrati.
+ * Non è thread safe: ogni client registra nel proprio istogramma e alla fine gli istogrammi vengono uniti.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class LatencyHistogram {
+
+    /**
+     * numero di bucket per ogni potenza di due
+     */
+    private static final int SUB_BUCKETS = 64;
+
+    /**
+     * bucket sufficienti per rappresentare qualunque long non negativo
+     */
+    private static final int BUCKETS = SUB_BUCKETS * (64 - 6) + 2 * SUB_BUCKETS;
+
+    /**
+     * Campi della classe:
+     */
+    private long[] counts = new long[BUCKETS];
+
+    private long count;
+    private long sum;
+    private long max;
+
+    /**
+     * registra una latenza
+     * @param micros latenza in microsecondi, i valori negativi vengono registrati come 0
+     */
+    public void record(long micros) {
+        micros = Math.max(0, micros);
+        counts[index(micros)]++;
+        count++;
+        sum += micros;
+        max = Math.max(max, micros);
+    }
+
+    /**
+     * aggiunge a questo istogramma tutti i valori di un altro istogramma
+     * @param other istogramma da unire
+     */
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++)
+            counts[i] += other.counts[i];
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * metodo che ritorna il percentile richiesto
+     * @param percentile percentile compreso tra 0 e 100, ad esempio 99.9
+     * @return la latenza in microsecondi sotto cui cade la percentuale richiesta dei valori, 0 se l'istogramma è vuoto
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("il percentile deve essere compreso tra 0 e 100");
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long)Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(max, upperBound(i));
+        }
+        return max;
+    }
+
+    /**
+     * metodo getter
+     * @return numero di latenze registrate
+     */
+    public long getCount() { return count; }
+
+    /**
+     * metodo getter
+     * @return latenza media in microsecondi
+     */
+    public double getMean() { return count == 0 ? 0 : (double)sum / count; }
+
+    /**
+     * metodo getter
+     * @return latenza massima in microsecondi
+     */
+    public long getMax() { return max; }
+
+    private static int index(long v) {
+        if (v < 2 * SUB_BUCKETS)
+            return (int)v;
+        //teniamo i 7 bit piu significativi del valore: il primo è sempre 1, gli altri 6 scelgono il bucket
+        int shift = 63 - Long.numberOfLeadingZeros(v) - 6;
+        return shift * SUB_BUCKETS + (int)(v >>> shift);
+    }
+
+    private static long upperBound(int index) {
+        if (index < 2 * SUB_BUCKETS)
+            return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long mantissa = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,352 @@
+package workload;
+
+import population.ConnectionFactory;
+import query.Query;
+import utility.AliasTable;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Classe che esegue un mix pesato di operazioni da piu client concorrenti, ognuno con la propria connessione,
+ * e misura throughput e latenze di ogni operazione.
+ * In closed loop ogni client esegue un'operazione, aspetta il think time e ricomincia.
+ * In open loop le operazioni arrivano a frequenza costante indipendentemente dalla velocità del db e la latenza
+ * è misurata dall'istante in cui l'operazione doveva partire, quindi comprende anche l'attesa di un client libero.
+ * Le operazioni eseguite durante il warmup non vengono misurate.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class WorkloadDriver {
+
+    /**
+     * Classe builder interna alla classe WorkloadDriver
+     */
+    public static class WorkloadBuilder {
+        /**
+         * Campi della classe builder:
+         */
+        private ConnectionFactory factory;
+
+        private Map<String, Query> operations = new LinkedHashMap<>();
+        private Map<String, Double> weights = new LinkedHashMap<>();
+
+        private int clients = 1;
+        private Duration warmup = Duration.ZERO;
+        private Duration duration = Duration.ofMinutes(1);
+        private Duration thinkTime = Duration.ZERO;
+        private double arrivalRate = 0;
+        private long seed = System.nanoTime();
+
+        /**
+         * costruttore della classe builder
+         * @param factory factory che apre la connessione di ogni client
+         */
+        public WorkloadBuilder(ConnectionFactory factory) { this.factory = factory; }
+
+        /**
+         * metodo che aggiunge un'operazione al mix
+         * @param name nome dell'operazione nel report
+         * @param query query da eseguire
+         * @param weight peso dell'operazione, la frequenza è proporzionale al peso
+         * @return l'istanza del workload builder
+         */
+        public WorkloadBuilder addOperation(String name, Query query, double weight) {
+            if (weight < 0)
+                throw new IllegalArgumentException("il peso di un'operazione non puo essere negativo");
+            if (operations.containsKey(name))
+                throw new IllegalArgumentException("il nome delle operazioni deve essere univoco");
+            operations.put(name, query);
+            weights.put(name, weight);
+            return this;
+        }
+
+        /**
+         * metodo che aggiunge al mix tutte le operazioni passate con lo stesso peso
+         * @param operations mappa da nome a query delle operazioni
+         * @return l'istanza del workload builder
+         */
+        public WorkloadBuilder addOperations(Map<String, Query> operations) {
+            operations.forEach((name, query) -> addOperation(name, query, 1));
+            return this;
+        }
+
+        /**
+         * @param clients numero di client concorrenti
+         * @return l'istanza del workload builder
+         */
+        public WorkloadBuilder setClients(int clients) {
+            if (clients <= 0)
+                throw new IllegalArgumentException("il numero di client deve essere positivo");
+            this.clients = clients;
+            return this;
+        }
+
+        /**
+         * @param warmup durata iniziale in cui le operazioni vengono eseguite ma non misurate
+         * @return l'istanza del workload builder
+         */
+        public WorkloadBuilder setWarmup(Duration warmup) {
+            if (warmup.isNegative())
+                throw new IllegalArgumentException("il warmup non puo essere negativo");
+            this.warmup = warmup;
+            return this;
+        }
+
+        /**
+         * @param duration durata della misura, dopo il warmup
+         * @return l'istanza del workload builder
+         */
+        public WorkloadBuilder setDuration(Duration duration) {
+            if (duration.isNegative() || duration.isZero())
+                throw new IllegalArgumentException("la durata deve essere positiva");
+            this.duration = duration;
+            return this;
+        }
+
+        /**
+         * imposta il closed loop con il think time indicato
+         * @param thinkTime attesa di ogni client tra la fine di un'operazione e l'inizio della successiva
+         * @return l'istanza del workload builder
+         */
+        public WorkloadBuilder setThinkTime(Duration thinkTime) {
+            if (thinkTime.isNegative())
+                throw new IllegalArgumentException("il think time non puo essere negativo");
+            this.thinkTime = thinkTime;
+            arrivalRate = 0;
+            return this;
+        }
+
+        /**
+         * imposta l'open loop con la frequenza di arrivo indicata, distribuita tra tutti i client
+         * @param operationsPerSecond operazioni che partono ogni secondo
+         * @return l'istanza del workload builder
+         */
+        public WorkloadBuilder setArrivalRate(double operationsPerSecond) {
+            if (operationsPerSecond <= 0)
+                throw new IllegalArgumentException("la frequenza di arrivo deve essere positiva");
+            arrivalRate = operationsPerSecond;
+            return this;
+        }
+
+        /**
+         * @param seed seme con cui i client scelgono le operazioni
+         * @return l'istanza del workload builder
+         */
+        public WorkloadBuilder setSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * metodo terminale build
+         * @return l'istanza del workload driver
+         * @throws IllegalArgumentException se non è stata aggiunta nessuna operazione con peso positivo
+         */
+        public WorkloadDriver build() throws IllegalArgumentException {
+            if (weights.values().stream().noneMatch(w -> w > 0))
+                throw new IllegalArgumentException("serve almeno un'operazione con peso positivo");
+            return new WorkloadDriver(this);
+        }
+    }
+
+    /**
+     * Campi della classe:
+     */
+    private ConnectionFactory factory;
+
+    private String[] names;
+    private Query[] queries;
+    private AliasTable mix;
+
+    private int clients;
+    private long warmup;
+    private long duration;
+    private long thinkTime;
+    private double arrivalRate;
+    private long seed;
+
+    /**
+     * Costruttore della classe che salva i parametri del builder
+     * @param builder prende in input l'istanza del workload builder
+     */
+    private WorkloadDriver(WorkloadBuilder builder) {
+        factory = builder.factory;
+        names = builder.operations.keySet().toArray(new String[0]);
+        queries = builder.operations.values().toArray(new Query[0]);
+        mix = new AliasTable(builder.weights.values().stream().mapToDouble(Double::doubleValue).toArray());
+        clients = builder.clients;
+        warmup = builder.warmup.toNanos();
+        duration = builder.duration.toNanos();
+        thinkTime = builder.thinkTime.toNanos();
+        arrivalRate = builder.arrivalRate;
+        seed = builder.seed;
+    }
+
+    /**
+     * esegue il workload e aspetta che tutti i client abbiano finito
+     * @return il report con le latenze e il throughput di ogni operazione
+     * @throws SQLException se non è stato possibile aprire le connessioni dei client
+     */
+    public WorkloadReport run() throws SQLException {
+        List<Connection> connections = new ArrayList<>();
+        try {
+            for (int i = 0; i < clients; i++)
+                connections.add(factory.open());
+
+            long start = System.nanoTime();
+            long measureStart = start + warmup;
+            long end = measureStart + duration;
+            AtomicLong arrivals = new AtomicLong();
+
+            List<Client> running = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                Client c = new Client(connections.get(i), new Random(seed + i), start, measureStart, end, arrivals);
+                c.setName("workload-client-" + i);
+                running.add(c);
+                c.start();
+            }
+
+            Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+            Map<String, Long> errors = new HashMap<>();
+            for (String name : names)
+                latencies.put(name, new LatencyHistogram());
+            for (Client c : running) {
+                try { c.join(); }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    running.forEach(Thread::interrupt);
+                }
+                for (int op = 0; op < names.length; op++) {
+                    latencies.get(names[op]).merge(c.latencies[op]);
+                    errors.merge(names[op], c.errors[op], Long::sum);
+                }
+            }
+            return new WorkloadReport(latencies, errors, duration / 1e9);
+        }
+        finally {
+            for (Connection c : connections) {
+                try { c.close(); }
+                catch (SQLException e) {}
+            }
+        }
+    }
+
+    /**
+     * Thread di un client: sceglie le operazioni dal mix e le esegue sulla propria connessione
+     */
+    private final class Client extends Thread {
+        private final Connection conn;
+        private final Random random;
+        private final long start;
+        private final long measureStart;
+        private final long end;
+        private final AtomicLong arrivals;
+
+        private final LatencyHistogram[] latencies = new LatencyHistogram[names.length];
+
+        /**
+         * prepared statement delle operazioni con i segnaposto, creati alla prima esecuzione e riusati per tutto il run
+         */
+        private final PreparedStatement[] prepared = new PreparedStatement[names.length];
+        private final long[] errors = new long[names.length];
+
+        private Client(Connection conn, Random random, long start, long measureStart, long end, AtomicLong arrivals) {
+            this.conn = conn;
+            this.random = random;
+            this.start = start;
+            this.measureStart = measureStart;
+            this.end = end;
+            this.arrivals = arrivals;
+            for (int i = 0; i < latencies.length; i++)
+                latencies[i] = new LatencyHistogram();
+        }
+
+        @Override
+        public void run() {
+            try (Statement stmt = conn.createStatement()) {
+                while (!isInterrupted()) {
+                    long scheduled;
+                    if (arrivalRate > 0) {
+                        //open loop: il client prende il prossimo arrivo e aspetta il suo istante di partenza
+                        scheduled = start + (long)(arrivals.getAndIncrement() * 1e9 / arrivalRate);
+                        if (scheduled >= end)
+                            return;
+                        waitUntil(scheduled);
+                    }
+                    else {
+                        scheduled = System.nanoTime();
+                        if (scheduled >= end)
+                            return;
+                    }
+
+                    int op = mix.sample(random);
+                    boolean ok = execute(stmt, op);
+                    long finished = System.nanoTime();
+                    if (scheduled >= measureStart) {
+                        if (ok)
+                            latencies[op].record((finished - scheduled) / 1000);
+                        else
+                            errors[op]++;
+                    }
+
+                    if (arrivalRate == 0 && thinkTime > 0)
+                        waitUntil(finished + thinkTime);
+                }
+            }
+            catch (SQLException e) { e.printStackTrace(); }
+            finally {
+                for (PreparedStatement p : prepared) {
+                    try { if (p != null) p.close(); }
+                    catch (SQLException e) {}
+                }
+            }
+        }
+
+        /**
+         * esegue una query leggendo tutte le righe del risultato, in modo che la latenza comprenda il trasferimento;
+         * le query con i segnaposto vengono eseguite con il loro prepared statement
+         * @return true se la query è stata eseguita correttamente, false altrimenti
+         */
+        private boolean execute(Statement stmt, int op) {
+            Query query = queries[op];
+            try {
+                boolean result;
+                Statement executed = stmt;
+                if (query.isParameterized()) {
+                    if (prepared[op] == null)
+                        prepared[op] = conn.prepareStatement(query.toString());
+                    query.bind(prepared[op]);
+                    result = prepared[op].execute();
+                    executed = prepared[op];
+                }
+                else
+                    result = stmt.execute(query.toString());
+                if (result) {
+                    try (ResultSet out = executed.getResultSet()) {
+                        while (out.next());
+                    }
+                }
+                return true;
+            }
+            catch (SQLException e) { return false; }
+        }
+
+        private void waitUntil(long deadline) {
+            long left;
+            while ((left = deadline - System.nanoTime()) > 0 && !isInterrupted())
+                LockSupport.parkNanos(left);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package workload;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Classe che contiene i risultati di un'esecuzione del WorkloadDriver: per ogni operazione l'istogramma
+ * delle latenze e il numero di errori, misurati solo dopo il warmup.
+ * @author Luca Mattei, Valerio Mezzoprete
+ */
+public final class WorkloadReport {
+    /**
+     * Campi della classe:
+     */
+    private Map<String, LatencyHistogram> latencies;
+
+    private Map<String, Long> errors;
+
+    private double seconds;
+
+    /**
+     * costruttore della classe, utilizzato dal WorkloadDriver
+     * @param latencies istogramma delle latenze di ogni operazione
+     * @param errors numero di errori di ogni operazione
+     * @param seconds durata della misura in secondi, warmup escluso
+     */
+    WorkloadReport(Map<String, LatencyHistogram> latencies, Map<String, Long> errors, double seconds) {
+        this.latencies = Collections.unmodifiableMap(new LinkedHashMap<>(latencies));
+        this.errors = Collections.unmodifiableMap(new LinkedHashMap<>(errors));
+        this.seconds = seconds;
+    }
+
+    /**
+     * metodo getter
+     * @return istogramma delle latenze di ogni operazione
+     */
+    public Map<String, LatencyHistogram> getLatencies() { return latencies; }
+
+    /**
+     * @param operation nome dell'operazione
+     * @return numero di esecuzioni dell'operazione fallite
+     */
+    public long getErrors(String operation) { return errors.getOrDefault(operation, 0L); }
+
+    /**
+     * @param operation nome dell'operazione
+     * @return esecuzioni completate al secondo dell'operazione
+     */
+    public double getThroughput(String operation) {
+        LatencyHistogram h = latencies.get(operation);
+        return h == null ? 0 : h.getCount() / seconds;
+    }
+
+    /**
+     * @return esecuzioni completate al secondo di tutte le operazioni
+     */
+    public double getTotalThroughput() {
+        return latencies.values().stream().mapToLong(LatencyHistogram::getCount).sum() / seconds;
+    }
+
+    /**
+     * metodo getter
+     * @return durata della misura in secondi, warmup escluso
+     */
+    public double getSeconds() { return seconds; }
+
+    /**
+     * @return tabella con throughput, errori e percentili in millisecondi di ogni operazione
+     */
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder(String.format("%-10s %10s %10s %8s %10s %10s %10s %10s%n",
+                "op", "count", "op/s", "errori", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+        LatencyHistogram total = new LatencyHistogram();
+        long totalErrors = 0;
+        for (Map.Entry<String, LatencyHistogram> e : latencies.entrySet()) {
+            append(out, e.getKey(), e.getValue(), getErrors(e.getKey()));
+            total.merge(e.getValue());
+            totalErrors += getErrors(e.getKey());
+        }
+        append(out, "totale", total, totalErrors);
+        return out.toString();
+    }
+
+    private void append(StringBuilder out, String name, LatencyHistogram h, long errors) {
+        out.append(String.format("%-10s %10d %10.1f %8d %10.3f %10.3f %10.3f %10.3f%n", name, h.getCount(), h.getCount() / seconds,
+                errors, h.getPercentile(50) / 1000.0, h.getPercentile(99) / 1000.0, h.getPercentile(99.9) / 1000.0, h.getMax() / 1000.0));
+    }
+}